@@ -31,8 +31,12 @@ public class App extends Application {
 
     @Override
     public void onCreate() {
+        StartupTimeline.begin("App.onCreate");
         super.onCreate();
         FlutterMain.startInitialization(this);
+        SharedPrefsRegistry.preload(this);
+        EncryptionKeyCache.warmUp(this);
+        StartupTimeline.end("App.onCreate");
     }
 
 
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Table driven hex and Base64 codecs. The region based variants read from and write to caller provided arrays
+ * and buffers, so no intermediate strings or arrays are allocated.
+ */
+public class Codec {
+
+    public static class Hex {
+
+        private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+        private static final byte[] VALUES = new byte[128];
+
+        static {
+            for (int i = 0; i < VALUES.length; i++) {
+                VALUES[i] = -1;
+            }
+            for (int i = 0; i < 10; i++) {
+                VALUES['0' + i] = (byte) i;
+            }
+            for (int i = 0; i < 6; i++) {
+                VALUES['a' + i] = (byte) (10 + i);
+                VALUES['A' + i] = (byte) (10 + i);
+            }
+        }
+
+        public static String encode(byte[] bytes) {
+            if (bytes == null) {
+                return null;
+            }
+            char[] chars = new char[bytes.length * 2];
+            encode(bytes, 0, bytes.length, chars, 0);
+            return new String(chars);
+        }
+
+        /**
+         * Writes the lower case hex digits of src[srcOffset, srcOffset + length) to dst starting at dstOffset.
+         * @return the number of written chars
+         */
+        public static int encode(byte[] src, int srcOffset, int length, char[] dst, int dstOffset) {
+            int dstIndex = dstOffset;
+            for (int srcIndex = srcOffset, srcEnd = srcOffset + length; srcIndex < srcEnd; srcIndex++) {
+                int value = src[srcIndex] & 0xFF;
+                dst[dstIndex++] = DIGITS[value >>> 4];
+                dst[dstIndex++] = DIGITS[value & 0x0F];
+            }
+            return dstIndex - dstOffset;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the value has odd length or contains non hex characters
+         */
+        public static byte[] decode(CharSequence value) {
+            if (value == null) {
+                return null;
+            }
+            byte[] bytes = new byte[value.length() / 2];
+            decode(value, 0, value.length(), bytes, 0);
+            return bytes;
+        }
+
+        /**
+         * Decodes value[start, end) to dst starting at dstOffset.
+         * @return the number of written bytes
+         * @throws IllegalArgumentException if the region has odd length or contains non hex characters
+         */
+        public static int decode(CharSequence value, int start, int end, byte[] dst, int dstOffset) {
+            if (((end - start) & 1) != 0) {
+                throw new IllegalArgumentException("Hex string has odd length");
+            }
+            int dstIndex = dstOffset;
+            for (int index = start; index < end; index += 2) {
+                dst[dstIndex++] = (byte) ((digit(value.charAt(index)) << 4) | digit(value.charAt(index + 1)));
+            }
+            return dstIndex - dstOffset;
+        }
+
+        private static int digit(char c) {
+            int value = (c < VALUES.length) ? VALUES[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid hex character: " + c);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Standard alphabet Base64 with padding and without line wrapping, compatible with
+     * {@link android.util.Base64#NO_WRAP}. Decoding skips whitespace and accepts missing padding.
+     */
+    public static class Base64 {
+
+        private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+        private static final byte PAD = '=';
+
+        private static final int INVALID = -1;
+        private static final int SKIP = -2;
+        private static final int PADDING = -3;
+        private static final int[] VALUES = new int[256];
+
+        static {
+            for (int i = 0; i < VALUES.length; i++) {
+                VALUES[i] = INVALID;
+            }
+            for (int i = 0; i < ALPHABET.length; i++) {
+                VALUES[ALPHABET[i]] = i;
+            }
+            VALUES[' '] = SKIP;
+            VALUES['\t'] = SKIP;
+            VALUES['\r'] = SKIP;
+            VALUES['\n'] = SKIP;
+            VALUES[PAD] = PADDING;
+        }
+
+        //region Encode
+
+        public static int encodedLength(int length) {
+            return ((length + 2) / 3) * 4;
+        }
+
+        public static String encode(byte[] bytes) {
+            return (bytes != null) ? encode(bytes, 0, bytes.length) : null;
+        }
+
+        public static String encode(byte[] src, int srcOffset, int length) {
+            char[] chars = new char[encodedLength(length)];
+            int srcIndex = srcOffset;
+            int srcEnd = srcOffset + length;
+            int dstIndex = 0;
+            while (srcEnd - srcIndex >= 3) {
+                int bits = ((src[srcIndex++] & 0xFF) << 16) | ((src[srcIndex++] & 0xFF) << 8) | (src[srcIndex++] & 0xFF);
+                chars[dstIndex++] = (char) ALPHABET[bits >>> 18];
+                chars[dstIndex++] = (char) ALPHABET[(bits >>> 12) & 0x3F];
+                chars[dstIndex++] = (char) ALPHABET[(bits >>> 6) & 0x3F];
+                chars[dstIndex++] = (char) ALPHABET[bits & 0x3F];
+            }
+            int remaining = srcEnd - srcIndex;
+            if (remaining > 0) {
+                int bits = (src[srcIndex] & 0xFF) << 16;
+                if (remaining == 2) {
+                    bits |= (src[srcIndex + 1] & 0xFF) << 8;
+                }
+                chars[dstIndex++] = (char) ALPHABET[bits >>> 18];
+                chars[dstIndex++] = (char) ALPHABET[(bits >>> 12) & 0x3F];
+                chars[dstIndex++] = (remaining == 2) ? (char) ALPHABET[(bits >>> 6) & 0x3F] : (char) PAD;
+                chars[dstIndex] = (char) PAD;
+            }
+            return new String(chars);
+        }
+
+        /**
+         * Writes the ASCII Base64 encoding of src[srcOffset, srcOffset + length) to dst starting at dstOffset.
+         * dst must have room for {@link #encodedLength(int)} bytes.
+         * @return the number of written bytes
+         */
+        public static int encode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+            int srcIndex = srcOffset;
+            int srcEnd = srcOffset + length;
+            int dstIndex = dstOffset;
+            while (srcEnd - srcIndex >= 3) {
+                int bits = ((src[srcIndex++] & 0xFF) << 16) | ((src[srcIndex++] & 0xFF) << 8) | (src[srcIndex++] & 0xFF);
+                dst[dstIndex++] = ALPHABET[bits >>> 18];
+                dst[dstIndex++] = ALPHABET[(bits >>> 12) & 0x3F];
+                dst[dstIndex++] = ALPHABET[(bits >>> 6) & 0x3F];
+                dst[dstIndex++] = ALPHABET[bits & 0x3F];
+            }
+            int remaining = srcEnd - srcIndex;
+            if (remaining > 0) {
+                int bits = (src[srcIndex] & 0xFF) << 16;
+                if (remaining == 2) {
+                    bits |= (src[srcIndex + 1] & 0xFF) << 8;
+                }
+                dst[dstIndex++] = ALPHABET[bits >>> 18];
+                dst[dstIndex++] = ALPHABET[(bits >>> 12) & 0x3F];
+                dst[dstIndex++] = (remaining == 2) ? ALPHABET[(bits >>> 6) & 0x3F] : PAD;
+                dst[dstIndex++] = PAD;
+            }
+            return dstIndex - dstOffset;
+        }
+
+        /**
+         * Encodes the remaining bytes of src into dst, advancing the positions of both buffers.
+         * @throws java.nio.BufferOverflowException if dst has less than {@link #encodedLength(int)} bytes remaining
+         */
+        public static void encode(ByteBuffer src, ByteBuffer dst) {
+            int length = src.remaining();
+            int encodedLength = encodedLength(length);
+            if (dst.remaining() < encodedLength) {
+                throw new java.nio.BufferOverflowException();
+            }
+            if (src.hasArray() && dst.hasArray()) {
+                encode(src.array(), src.arrayOffset() + src.position(), length, dst.array(), dst.arrayOffset() + dst.position());
+                src.position(src.position() + length);
+                dst.position(dst.position() + encodedLength);
+                return;
+            }
+            while (src.remaining() >= 3) {
+                int bits = ((src.get() & 0xFF) << 16) | ((src.get() & 0xFF) << 8) | (src.get() & 0xFF);
+                dst.put(ALPHABET[bits >>> 18]).put(ALPHABET[(bits >>> 12) & 0x3F]).put(ALPHABET[(bits >>> 6) & 0x3F]).put(ALPHABET[bits & 0x3F]);
+            }
+            int remaining = src.remaining();
+            if (remaining > 0) {
+                int bits = (src.get() & 0xFF) << 16;
+                if (remaining == 2) {
+                    bits |= (src.get() & 0xFF) << 8;
+                }
+                dst.put(ALPHABET[bits >>> 18]).put(ALPHABET[(bits >>> 12) & 0x3F]);
+                dst.put((remaining == 2) ? ALPHABET[(bits >>> 6) & 0x3F] : PAD).put(PAD);
+            }
+        }
+
+        //endregion
+
+        //region Decode
+
+        /**
+         * Validates the value and returns the length of its decoded bytes without decoding it.
+         * @return the decoded length or -1 if the value is not valid Base64
+         */
+        public static int decodedLength(CharSequence value) {
+            if (value == null) {
+                return -1;
+            }
+            int symbols = 0;
+            int padding = 0;
+            for (int index = 0; index < value.length(); index++) {
+                char c = value.charAt(index);
+                int decoded = (c < VALUES.length) ? VALUES[c] : INVALID;
+                if (decoded >= 0) {
+                    if (padding > 0) {
+                        return -1;
+                    }
+                    symbols++;
+                } else if (decoded == PADDING) {
+                    padding++;
+                } else if (decoded == INVALID) {
+                    return -1;
+                }
+            }
+            int tail = symbols % 4;
+            if ((tail == 1) || (padding > 2) || ((padding > 0) && (((symbols + padding) % 4) != 0))) {
+                return -1;
+            }
+            return (symbols / 4) * 3 + ((tail > 0) ? (tail - 1) : 0);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the value is not valid Base64
+         */
+        public static byte[] decode(CharSequence value) {
+            if (value == null) {
+                return null;
+            }
+            int decodedLength = decodedLength(value);
+            if (decodedLength < 0) {
+                throw new IllegalArgumentException("bad base-64");
+            }
+            byte[] bytes = new byte[decodedLength];
+            int bits = 0;
+            int bitsCount = 0;
+            int dstIndex = 0;
+            for (int index = 0; index < value.length(); index++) {
+                char c = value.charAt(index);
+                int decoded = VALUES[c];
+                if (decoded < 0) {
+                    continue;
+                }
+                bits = (bits << 6) | decoded;
+                bitsCount += 6;
+                if (bitsCount >= 8) {
+                    bitsCount -= 8;
+                    bytes[dstIndex++] = (byte) (bits >>> bitsCount);
+                }
+            }
+            return bytes;
+        }
+
+        /**
+         * Decodes the ASCII Base64 region src[srcOffset, srcOffset + length) to dst starting at dstOffset.
+         * @return the number of written bytes
+         * @throws IllegalArgumentException if the region is not valid Base64
+         */
+        public static int decode(byte[] src, int srcOffset, int length, byte[] dst, int dstOffset) {
+            int bits = 0;
+            int bitsCount = 0;
+            int symbols = 0;
+            int padding = 0;
+            int dstIndex = dstOffset;
+            for (int srcIndex = srcOffset, srcEnd = srcOffset + length; srcIndex < srcEnd; srcIndex++) {
+                int decoded = VALUES[src[srcIndex] & 0xFF];
+                if (decoded >= 0) {
+                    if (padding > 0) {
+                        throw new IllegalArgumentException("bad base-64");
+                    }
+                    bits = (bits << 6) | decoded;
+                    bitsCount += 6;
+                    symbols++;
+                    if (bitsCount >= 8) {
+                        bitsCount -= 8;
+                        dst[dstIndex++] = (byte) (bits >>> bitsCount);
+                    }
+                } else if (decoded == PADDING) {
+                    padding++;
+                } else if (decoded == INVALID) {
+                    throw new IllegalArgumentException("bad base-64");
+                }
+            }
+            if (((symbols % 4) == 1) || (padding > 2) || ((padding > 0) && (((symbols + padding) % 4) != 0))) {
+                throw new IllegalArgumentException("bad base-64");
+            }
+            return dstIndex - dstOffset;
+        }
+
+        /**
+         * Decodes the remaining ASCII Base64 bytes of src into dst, advancing the positions of both buffers.
+         * @throws IllegalArgumentException if the input is not valid Base64
+         */
+        public static void decode(ByteBuffer src, ByteBuffer dst) {
+            if (src.hasArray() && dst.hasArray()) {
+                int written = decode(src.array(), src.arrayOffset() + src.position(), src.remaining(), dst.array(), dst.arrayOffset() + dst.position());
+                src.position(src.limit());
+                dst.position(dst.position() + written);
+                return;
+            }
+            int bits = 0;
+            int bitsCount = 0;
+            int symbols = 0;
+            int padding = 0;
+            while (src.hasRemaining()) {
+                int decoded = VALUES[src.get() & 0xFF];
+                if (decoded >= 0) {
+                    if (padding > 0) {
+                        throw new IllegalArgumentException("bad base-64");
+                    }
+                    bits = (bits << 6) | decoded;
+                    bitsCount += 6;
+                    symbols++;
+                    if (bitsCount >= 8) {
+                        bitsCount -= 8;
+                        dst.put((byte) (bits >>> bitsCount));
+                    }
+                } else if (decoded == PADDING) {
+                    padding++;
+                } else if (decoded == INVALID) {
+                    throw new IllegalArgumentException("bad base-64");
+                }
+            }
+            if (((symbols % 4) == 1) || (padding > 2) || ((padding > 0) && (((symbols + padding) % 4) != 0))) {
+                throw new IllegalArgumentException("bad base-64");
+            }
+        }
+
+        //endregion
+    }
+}
@@ -24,6 +24,7 @@ public class Constants {
     static final String APP_INIT_KEY = "init";
     static final String MAP_DIRECTIONS_KEY = "directions";
     static final String MAP_KEY = "map";
+    static final String MAP_WARM_UP_KEY = "mapWarmUp";
     static final String SHOW_NOTIFICATION_KEY = "showNotification";
     static final String APP_DISMISS_SAFARI_VC_KEY = "dismissSafariVC";
     static final String APP_DISMISS_LAUNCH_SCREEN_KEY = "dismissLaunchScreen";
@@ -34,9 +35,12 @@ public class Constants {
     static final String APP_BLUETOOTH_AUTHORIZATION = "bluetooth_authorization";
     static final String FIREBASE_INFO = "firebaseInfo";
     static final String DEVICE_ID_KEY = "deviceId";
+    static final String DEVICE_SNAPSHOT_KEY = "deviceSnapshot";
     static final String HEALTH_RSA_PRIVATE_KEY = "healthRSAPrivateKey";
     static final String ENCRYPTION_KEY_KEY = "encryptionKey";
     static final String BARCODE_KEY = "barcode";
+    static final String STARTUP_MARK_KEY = "startupMark";
+    static final String STARTUP_TIMELINE_KEY = "startupTimeline";
 
     //Maps
     public static final LatLng DEFAULT_INITIAL_CAMERA_POSITION = new LatLng(40.102116, -88.227129); //Illinois University: Center of Campus //(40.096230, -88.235899); // State Farm Center
@@ -54,8 +58,46 @@ public class Constants {
 
     //Gallery
     public static final String GALLERY_PLUGIN_METHOD_NAME_STORE = "store";
+    public static final String GALLERY_PLUGIN_METHOD_NAME_STORE_BATCH = "storeBatch";
+    public static final String GALLERY_PLUGIN_METHOD_NAME_STORE_BEGIN = "storeBegin";
+    public static final String GALLERY_PLUGIN_METHOD_NAME_STORE_CHUNK = "storeChunk";
+    public static final String GALLERY_PLUGIN_METHOD_NAME_STORE_END = "storeEnd";
+    public static final String GALLERY_PLUGIN_METHOD_NAME_STORE_PROGRESS = "store.progress";
+    public static final String GALLERY_PLUGIN_METHOD_NAME_STORE_COMPLETE = "store.complete";
+    public static final String GALLERY_PLUGIN_METHOD_NAME_TRANSCODE = "transcode";
     public static final String GALLERY_PLUGIN_PARAM_BYTES = "bytes";
+    public static final String GALLERY_PLUGIN_PARAM_PATH = "path";
     public static final String GALLERY_PLUGIN_PARAM_NAME = "name";
+    public static final String GALLERY_PLUGIN_PARAM_IMAGES = "images";
+    public static final String GALLERY_PLUGIN_PARAM_TRANSFER_ID = "transferId";
+    public static final String GALLERY_PLUGIN_PARAM_WRITTEN = "written";
+    public static final String GALLERY_PLUGIN_PARAM_LENGTH = "length";
+    public static final String GALLERY_PLUGIN_PARAM_SUCCESS = "success";
+    public static final String GALLERY_PLUGIN_PARAM_TRANSCODE = "transcode";
+    public static final String GALLERY_PLUGIN_PARAM_OUTPUT_PATH = "outputPath";
+    public static final String GALLERY_PLUGIN_PARAM_MIN_WIDTH = "minWidth";
+    public static final String GALLERY_PLUGIN_PARAM_MIN_HEIGHT = "minHeight";
+    public static final String GALLERY_PLUGIN_PARAM_MAX_WIDTH = "maxWidth";
+    public static final String GALLERY_PLUGIN_PARAM_MAX_HEIGHT = "maxHeight";
+    public static final String GALLERY_PLUGIN_PARAM_FORMAT = "format";
+    public static final String GALLERY_PLUGIN_PARAM_QUALITY = "quality";
+
+    //Storage
+    public static final String STORAGE_PLUGIN_METHOD_NAME_GET = "get";
+    public static final String STORAGE_PLUGIN_METHOD_NAME_PUT = "put";
+    public static final String STORAGE_PLUGIN_METHOD_NAME_DELETE = "delete";
+    public static final String STORAGE_PLUGIN_METHOD_NAME_BATCH = "batch";
+    public static final String STORAGE_PLUGIN_METHOD_NAME_SCAN = "scan";
+    public static final String STORAGE_PLUGIN_METHOD_NAME_EVICT = "evict";
+    public static final String STORAGE_PLUGIN_PARAM_NAMESPACE = "namespace";
+    public static final String STORAGE_PLUGIN_PARAM_KEY = "key";
+    public static final String STORAGE_PLUGIN_PARAM_KEYS = "keys";
+    public static final String STORAGE_PLUGIN_PARAM_VALUE = "value";
+    public static final String STORAGE_PLUGIN_PARAM_ENTRIES = "entries";
+    public static final String STORAGE_PLUGIN_PARAM_OPERATIONS = "operations";
+    public static final String STORAGE_PLUGIN_PARAM_OPERATION = "op";
+    public static final String STORAGE_PLUGIN_PARAM_PREFIX = "prefix";
+    public static final String STORAGE_PLUGIN_PARAM_MAX_BYTES = "maxBytes";
 
     // Shared Prefs
     static final String DEFAULT_SHARED_PREFS_FILE_NAME = "default_shared_prefs";
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.embedding.engine.plugins.activity.ActivityAware;
+import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Lightweight stand-in for a plugin that is expensive to create. Only the channel name is registered when the engine
+ * starts; the real plugin is created, attached to the engine and to the current activity when the first call arrives.
+ * The real plugin registers its own handler for the same channel in onAttachedToEngine, so later calls reach it directly.
+ */
+public class DeferredPlugin implements FlutterPlugin, ActivityAware, MethodChannel.MethodCallHandler {
+
+    private static final String TAG = "DeferredPlugin";
+
+    public interface Factory {
+        /**
+         * @return a plugin that handles the calls of the deferred channel
+         */
+        MethodChannel.MethodCallHandler create();
+    }
+
+    private final String channelName;
+    private final Factory factory;
+
+    private FlutterPluginBinding engineBinding;
+    private ActivityPluginBinding activityBinding;
+    private MethodChannel methodChannel;
+    private MethodChannel.MethodCallHandler plugin;
+
+    public DeferredPlugin(@NonNull String channelName, @NonNull Factory factory) {
+        this.channelName = channelName;
+        this.factory = factory;
+    }
+
+    @Override
+    public void onMethodCall(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+        MethodChannel.MethodCallHandler handler = getPlugin();
+        if (handler != null) {
+            handler.onMethodCall(call, result);
+        } else {
+            result.notImplemented();
+        }
+    }
+
+    private MethodChannel.MethodCallHandler getPlugin() {
+        if ((plugin == null) && (engineBinding != null)) {
+            long startTime = System.currentTimeMillis();
+            plugin = factory.create();
+            methodChannel = null; // the plugin takes over the channel
+            if (plugin instanceof FlutterPlugin) {
+                ((FlutterPlugin) plugin).onAttachedToEngine(engineBinding);
+            }
+            if ((plugin instanceof ActivityAware) && (activityBinding != null)) {
+                ((ActivityAware) plugin).onAttachedToActivity(activityBinding);
+            }
+            Log.d(TAG, String.format("Created %s plugin in %d ms", channelName, (System.currentTimeMillis() - startTime)));
+        }
+        return plugin;
+    }
+
+    // Flutter Plugin
+
+    @Override
+    public void onAttachedToEngine(@NonNull FlutterPluginBinding binding) {
+        engineBinding = binding;
+        methodChannel = new MethodChannel(binding.getBinaryMessenger(), channelName);
+        methodChannel.setMethodCallHandler(this);
+    }
+
+    @Override
+    public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
+        if (methodChannel != null) {
+            methodChannel.setMethodCallHandler(null);
+            methodChannel = null;
+        }
+        if (plugin instanceof FlutterPlugin) {
+            ((FlutterPlugin) plugin).onDetachedFromEngine(binding);
+        }
+        plugin = null;
+        engineBinding = null;
+    }
+
+    // Activity Aware
+
+    @Override
+    public void onAttachedToActivity(@NonNull ActivityPluginBinding binding) {
+        activityBinding = binding;
+        if (plugin instanceof ActivityAware) {
+            ((ActivityAware) plugin).onAttachedToActivity(binding);
+        }
+    }
+
+    @Override
+    public void onDetachedFromActivityForConfigChanges() {
+        activityBinding = null;
+        if (plugin instanceof ActivityAware) {
+            ((ActivityAware) plugin).onDetachedFromActivityForConfigChanges();
+        }
+    }
+
+    @Override
+    public void onReattachedToActivityForConfigChanges(@NonNull ActivityPluginBinding binding) {
+        activityBinding = binding;
+        if (plugin instanceof ActivityAware) {
+            ((ActivityAware) plugin).onReattachedToActivityForConfigChanges(binding);
+        }
+    }
+
+    @Override
+    public void onDetachedFromActivity() {
+        activityBinding = null;
+        if (plugin instanceof ActivityAware) {
+            ((ActivityAware) plugin).onDetachedFromActivity();
+        }
+    }
+}
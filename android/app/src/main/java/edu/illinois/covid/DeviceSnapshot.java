@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.location.LocationManager;
+import android.os.Build;
+import android.provider.Settings;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import com.google.firebase.FirebaseApp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Device values that Flutter queries on startup, computed once on a background thread and returned in a single response.
+ * The location services status is recomputed when location providers change or the app returns to foreground.
+ */
+public class DeviceSnapshot {
+
+    private static final String TAG = "DeviceSnapshot";
+
+    private static final String KEY_DEVICE_ID = "deviceId";
+    private static final String KEY_FIREBASE_INFO = "firebaseInfo";
+    private static final String KEY_LOCATION_SERVICES = "locationServices";
+    private static final String KEY_NOTIFICATIONS_AUTHORIZATION = "notificationsAuthorization";
+    private static final String KEY_BLUETOOTH_AUTHORIZATION = "bluetoothAuthorization";
+
+    // Background computations run one at a time, in the order they were requested
+    private static final Executor executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, TAG));
+
+    private static volatile String deviceId;
+    private static volatile String firebaseProjectId;
+
+    // Each invalidation starts a new generation, a status computed in an older generation is not published
+    private static final Object locationServicesLock = new Object();
+    private static String locationServicesStatus;
+    private static int locationServicesGeneration;
+
+    /**
+     * Computes all values on a background thread.
+     */
+    public static void prefetch(Context context) {
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> {
+            long startTime = System.currentTimeMillis();
+            getDeviceId(appContext);
+            getFirebaseProjectId();
+            getLocationServicesStatus(appContext);
+            Log.d(TAG, String.format("Prefetched in %d ms", (System.currentTimeMillis() - startTime)));
+        });
+    }
+
+    /**
+     * Drops the cached location services status and recomputes it on a background thread.
+     */
+    public static void invalidateLocationServices(Context context) {
+        synchronized (locationServicesLock) {
+            locationServicesStatus = null;
+            locationServicesGeneration++;
+        }
+        Context appContext = context.getApplicationContext();
+        executor.execute(() -> getLocationServicesStatus(appContext));
+    }
+
+    public static HashMap<String, Object> toMap(Context context) {
+        HashMap<String, Object> snapshot = new HashMap<>();
+        snapshot.put(KEY_DEVICE_ID, getDeviceId(context));
+        snapshot.put(KEY_FIREBASE_INFO, getFirebaseProjectId());
+        snapshot.put(KEY_LOCATION_SERVICES, getLocationServicesStatus(context));
+        snapshot.put(KEY_NOTIFICATIONS_AUTHORIZATION, true); // notifications are allowed in Android by default
+        snapshot.put(KEY_BLUETOOTH_AUTHORIZATION, "allowed"); // bluetooth is always enabled in Android by default
+        return snapshot;
+    }
+
+    //region Values
+
+    public static String getDeviceId(Context context) {
+        String value = deviceId;
+        if (value == null) {
+            value = "";
+            try {
+                final String androidId = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
+                value = UUID.nameUUIDFromBytes(androidId.getBytes(StandardCharsets.UTF_8)).toString();
+                deviceId = value;
+            } catch (Exception e) {
+                Log.d(TAG, "Failed to generate uuid");
+            }
+        }
+        return value;
+    }
+
+    public static String getFirebaseProjectId() {
+        String value = firebaseProjectId;
+        if (value == null) {
+            value = FirebaseApp.getInstance().getOptions().getProjectId();
+            firebaseProjectId = value;
+        }
+        return value;
+    }
+
+    public static String getLocationServicesStatus(Context context) {
+        int generation;
+        synchronized (locationServicesLock) {
+            if (locationServicesStatus != null) {
+                return locationServicesStatus;
+            }
+            generation = locationServicesGeneration;
+        }
+        String value = queryLocationServicesStatus(context);
+        synchronized (locationServicesLock) {
+            if (generation == locationServicesGeneration) {
+                locationServicesStatus = value;
+            }
+        }
+        return value;
+    }
+
+    private static String queryLocationServicesStatus(Context context) {
+        boolean locationServicesEnabled;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            // This is new method provided in API 28
+            LocationManager lm = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+            locationServicesEnabled = ((lm != null) && lm.isLocationEnabled());
+        } else {
+            // This is Deprecated in API 28
+            int mode = Settings.Secure.getInt(context.getContentResolver(), Settings.Secure.LOCATION_MODE,
+                    Settings.Secure.LOCATION_MODE_OFF);
+            locationServicesEnabled = (mode != Settings.Secure.LOCATION_MODE_OFF);
+        }
+        if (locationServicesEnabled) {
+            if ((ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED &&
+                    ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED)) {
+                return "allowed";
+            } else {
+                boolean locationPermissionRequested = Utils.AppSharedPrefs.getBool(context, Constants.LOCATION_PERMISSIONS_REQUESTED_KEY, false);
+                return locationPermissionRequested ? "denied" : "not_determined";
+            }
+        } else {
+            return "disabled";
+        }
+    }
+
+    //endregion
+
+    //region Invalidation
+
+    public static BroadcastReceiver registerInvalidationReceiver(Context context) {
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidateLocationServices(context);
+            }
+        };
+        IntentFilter filter = new IntentFilter(LocationManager.PROVIDERS_CHANGED_ACTION);
+        filter.addAction(LocationManager.MODE_CHANGED_ACTION);
+        context.registerReceiver(receiver, filter);
+        return receiver;
+    }
+
+    //endregion
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory cache of the encryption keys stored in {@link Constants#ENCRYPTION_SHARED_PREFS_FILE_NAME}.
+ * Keys are validated once and then served from memory for the life of the process.
+ */
+public class EncryptionKeyCache {
+
+    private static final String TAG = "EncryptionKeyCache";
+
+    private static final Map<String, CachedKey> keys = new ConcurrentHashMap<>();
+    private static SecureRandom secureRandom;
+
+    /**
+     * Loads all stored keys on a background thread so that the first
+     * {@link #getKey(Context, String, int)} call does not have to touch the disk.
+     */
+    public static void warmUp(Context context) {
+        if (context == null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        Thread warmUpThread = new Thread(() -> loadStoredKeys(appContext), TAG);
+        warmUpThread.setPriority(Thread.MIN_PRIORITY);
+        warmUpThread.start();
+    }
+
+    /**
+     * Returns the Base64 value of the key with the given name and size, generating and storing a new one
+     * if there is no valid stored key.
+     */
+    public static String getKey(Context context, String name, int keySize) {
+        if (Utils.Str.isEmpty(name) || (keySize <= 0)) {
+            return null;
+        }
+        CachedKey cachedKey = keys.get(name);
+        if ((cachedKey != null) && (cachedKey.size == keySize)) {
+            return cachedKey.base64Value;
+        }
+        return loadOrGenerateKey(context, name, keySize);
+    }
+
+    private static synchronized String loadOrGenerateKey(Context context, String name, int keySize) {
+        CachedKey cachedKey = keys.get(name);
+        if ((cachedKey == null) || (cachedKey.size != keySize)) {
+            String base64KeyValue = Utils.BackupStorage.getString(context, Constants.ENCRYPTION_SHARED_PREFS_FILE_NAME, name);
+            cachedKey = CachedKey.fromBase64(base64KeyValue);
+            if ((cachedKey == null) || (cachedKey.size != keySize)) {
+                byte[] keyBytes = new byte[keySize];
+                getSecureRandom().nextBytes(keyBytes);
+                base64KeyValue = Codec.Base64.encode(keyBytes);
+                Utils.BackupStorage.saveString(context, Constants.ENCRYPTION_SHARED_PREFS_FILE_NAME, name, base64KeyValue);
+                cachedKey = new CachedKey(base64KeyValue, keySize);
+            }
+            keys.put(name, cachedKey);
+        }
+        return cachedKey.base64Value;
+    }
+
+    private static void loadStoredKeys(Context context) {
+        long startTime = System.currentTimeMillis();
+        SharedPreferences sharedPreferences = SharedPrefsRegistry.getEncryptionPrefs(context);
+        Map<String, ?> storedValues = sharedPreferences.getAll();
+        if (storedValues != null) {
+            for (Map.Entry<String, ?> entry : storedValues.entrySet()) {
+                Object value = entry.getValue();
+                CachedKey cachedKey = (value instanceof String) ? CachedKey.fromBase64((String) value) : null;
+                if (cachedKey != null) {
+                    cacheIfAbsent(entry.getKey(), cachedKey);
+                }
+            }
+        }
+        Log.d(TAG, String.format("Loaded %d keys in %d ms", keys.size(), (System.currentTimeMillis() - startTime)));
+    }
+
+    private static synchronized void cacheIfAbsent(String name, CachedKey cachedKey) {
+        // A key generated on the main thread while warming up takes precedence over the stored one.
+        if (!keys.containsKey(name)) {
+            keys.put(name, cachedKey);
+        }
+    }
+
+    private static synchronized SecureRandom getSecureRandom() {
+        if (secureRandom == null) {
+            secureRandom = new SecureRandom();
+        }
+        return secureRandom;
+    }
+
+    private static class CachedKey {
+        private final String base64Value;
+        private final int size;
+
+        private CachedKey(String base64Value, int size) {
+            this.base64Value = base64Value;
+            this.size = size;
+        }
+
+        private static CachedKey fromBase64(String base64Value) {
+            if (Utils.Str.isEmpty(base64Value)) {
+                return null;
+            }
+            // Only the key length is needed, so the value is validated without decoding it.
+            int keySize = Codec.Base64.decodedLength(base64Value);
+            if (keySize < 0) {
+                Log.e(TAG, "Failed to decode stored key");
+                return null;
+            }
+            return new CachedKey(base64Value, keySize);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import android.content.Context;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Formats event start times for marker snippets ("Today at 5 PM", "Tomorrow at 10:30 AM", "Friday at 9 AM", "Sep 12 4 PM").
+ * The reference days are computed once when the formatter is created, so one instance should be used for a whole batch
+ * of markers. Not thread safe - create one formatter per batch and thread.
+ */
+public class EventTimeFormatter {
+
+    private static final long DAYS_IN_WEEK = 7;
+
+    private final String todayPrefix;
+    private final String tomorrowPrefix;
+    private final String atSuffix;
+
+    private final long now;
+    private final long todayStart;
+    private final long tomorrowStart;
+    private final long dayAfterTomorrowStart;
+    private final long nextWeekStart;
+    private final long yearStart;
+    private final long nextYearStart;
+
+    private final Calendar calendar = Calendar.getInstance();
+    private final Map<String, String> formattedValues = new HashMap<>();
+
+    public EventTimeFormatter(Context context) {
+        todayPrefix = context.getString(R.string.today);
+        tomorrowPrefix = context.getString(R.string.tomorrow);
+        atSuffix = context.getString(R.string.at);
+
+        now = System.currentTimeMillis();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        todayStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_YEAR, 1);
+        tomorrowStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_YEAR, 1);
+        dayAfterTomorrowStart = calendar.getTimeInMillis();
+        calendar.setTimeInMillis(todayStart);
+        calendar.add(Calendar.DAY_OF_YEAR, (int) DAYS_IN_WEEK);
+        nextWeekStart = calendar.getTimeInMillis();
+        calendar.setTimeInMillis(todayStart);
+        calendar.set(Calendar.DAY_OF_YEAR, 1);
+        yearStart = calendar.getTimeInMillis();
+        calendar.add(Calendar.YEAR, 1);
+        nextYearStart = calendar.getTimeInMillis();
+    }
+
+    /**
+     * Formats the local date time string of an event ("yyyy-MM-dd'T'HH:mm:ss").
+     * Events starting at the same time are parsed and formatted only once per batch.
+     */
+    public String format(String dateTimeString) {
+        if (Utils.Str.isEmpty(dateTimeString)) {
+            return null;
+        }
+        String formattedValue = formattedValues.get(dateTimeString);
+        if ((formattedValue == null) && !formattedValues.containsKey(dateTimeString)) {
+            formattedValue = format(Utils.DateTime.getDateTime(dateTimeString));
+            formattedValues.put(dateTimeString, formattedValue);
+        }
+        return formattedValue;
+    }
+
+    public String format(Date dateTime) {
+        if (dateTime == null) {
+            return null;
+        }
+        long time = dateTime.getTime();
+        calendar.setTimeInMillis(time);
+        boolean zeroMins = (calendar.get(Calendar.MINUTE) == 0);
+        boolean currentYear = (yearStart <= time) && (time < nextYearStart);
+        String timeSuffix = Utils.DateTime.getDateFormat(zeroMins ? "h a" : "h:mm a").format(dateTime);
+        String datePrefix;
+        if ((todayStart <= time) && (time < tomorrowStart)) {
+            datePrefix = todayPrefix + " " + atSuffix;
+        } else if ((now < time) && (time < dayAfterTomorrowStart) && currentYear) {
+            datePrefix = tomorrowPrefix + " " + atSuffix;
+        } else if ((now < time) && (time < nextWeekStart) && currentYear) {
+            datePrefix = Utils.DateTime.getDateFormat("EEEE").format(dateTime) + " " + atSuffix;
+        } else {
+            String defaultFormat = String.format("%sMMM dd h%s a", (currentYear ? "" : "yy, "), (zeroMins ? "" : ":mm"));
+            return Utils.DateTime.getDateFormat(defaultFormat).format(dateTime);
+        }
+        return datePrefix + " " + timeSuffix;
+    }
+}
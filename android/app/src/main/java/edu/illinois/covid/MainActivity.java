@@ -18,23 +18,20 @@ package edu.illinois.covid;
 
 import android.Manifest;
 import android.app.Application;
-import android.content.Context;
+import android.content.BroadcastReceiver;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.location.LocationManager;
-import android.os.Build;
 import android.os.Bundle;
-import android.provider.Settings;
-import android.util.Base64;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
-import com.google.firebase.FirebaseApp;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.MultiFormatWriter;
 import com.google.zxing.WriterException;
@@ -42,7 +39,6 @@ import com.google.zxing.common.BitMatrix;
 import com.journeyapps.barcodescanner.BarcodeEncoder;
 
 import java.io.ByteArrayOutputStream;
-import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -50,13 +46,19 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.UUID;
 
 import edu.illinois.covid.gallery.GalleryPlugin;
 
 import edu.illinois.covid.maps.MapActivity;
 import edu.illinois.covid.maps.MapDirectionsActivity;
+import edu.illinois.covid.maps.MapExplore;
+import edu.illinois.covid.maps.MapMarker;
+import edu.illinois.covid.maps.MapOptions;
+import edu.illinois.covid.maps.MapPayload;
+import edu.illinois.covid.maps.MapTarget;
 import edu.illinois.covid.maps.MapViewFactory;
+import edu.illinois.covid.maps.MapWarmUp;
+import edu.illinois.covid.storage.StoragePlugin;
 import io.flutter.embedding.android.FlutterActivity;
 import io.flutter.embedding.engine.FlutterEngine;
 import io.flutter.plugin.common.MethodCall;
@@ -80,15 +82,48 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
 
     private RequestLocationCallback rlCallback;
 
-    // Gallery Plugin
-    private GalleryPlugin galleryPlugin;
+    private BroadcastReceiver deviceSnapshotReceiver;
+    private boolean resumedOnce;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTimeline.begin("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
 
         instance = this;
         initScreenOrientation();
+        DeviceSnapshot.prefetch(this);
+        deviceSnapshotReceiver = DeviceSnapshot.registerInvalidationReceiver(this);
+        StartupTimeline.end("MainActivity.onCreate");
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Location permission could have been changed from the system settings while the app was in background
+        if (resumedOnce) {
+            DeviceSnapshot.invalidateLocationServices(this);
+        }
+        resumedOnce = true;
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (deviceSnapshotReceiver != null) {
+            unregisterReceiver(deviceSnapshotReceiver);
+            deviceSnapshotReceiver = null;
+        }
+        super.onDestroy();
+        if (instance == this) {
+            instance = null;
+        }
+    }
+
+    @Override
+    public void onFlutterUiDisplayed() {
+        super.onFlutterUiDisplayed();
+        StartupTimeline.mark("firstFrame");
+        StartupTimeline.log();
     }
 
     public static MainActivity getInstance() {
@@ -101,8 +136,9 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
     }
 
     public static void invokeFlutterMethod(String methodName, Object arguments) {
-        if (METHOD_CHANNEL != null) {
-            getInstance().runOnUiThread(() -> METHOD_CHANNEL.invokeMethod(methodName, arguments));
+        MethodChannel methodChannel = METHOD_CHANNEL;
+        if (methodChannel != null) {
+            new Handler(Looper.getMainLooper()).post(() -> methodChannel.invokeMethod(methodName, arguments));
         }
     }
 
@@ -111,6 +147,7 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
 
         if (requestCode == REQUEST_LOCATION_PERMISSION_CODE) {
+            DeviceSnapshot.invalidateLocationServices(this);
             boolean granted;
             if (grantResults.length > 1 &&
                     grantResults[0] == PackageManager.PERMISSION_GRANTED && grantResults[1] == PackageManager.PERMISSION_GRANTED) {
@@ -124,13 +161,12 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
                 rlCallback.onResult(granted);
                 rlCallback = null;
             }
-        } else if(requestCode == GalleryPlugin.STORAGE_PERMISSION_REQUEST_CODE){
-            galleryPlugin.onRequestPermissionsResult(requestCode, permissions, grantResults);
         }
     }
 
     @Override
     public void configureFlutterEngine(@NonNull FlutterEngine flutterEngine) {
+        StartupTimeline.begin("configureFlutterEngine");
         super.configureFlutterEngine(flutterEngine);
         METHOD_CHANNEL = new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), NATIVE_CHANNEL);
         METHOD_CHANNEL.setMethodCallHandler(this);
@@ -140,8 +176,10 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
                 .getRegistry()
                 .registerViewFactory("mapview", new MapViewFactory(this, flutterEngine.getDartExecutor().getBinaryMessenger()));
 
-        galleryPlugin = new GalleryPlugin(this);
-        flutterEngine.getPlugins().add(galleryPlugin);
+        // Plugin threads, executors and databases are created on the first call of their channel
+        flutterEngine.getPlugins().add(new DeferredPlugin(GalleryPlugin.CHANNEL_NAME, GalleryPlugin::new));
+        flutterEngine.getPlugins().add(new DeferredPlugin(StoragePlugin.CHANNEL_NAME, StoragePlugin::new));
+        StartupTimeline.end("configureFlutterEngine");
     }
 
     private void initScreenOrientation() {
@@ -160,33 +198,25 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
         this.keys = keysMap;
     }
 
+    /**
+     * @throws IllegalArgumentException if the explore or the options are malformed
+     */
     private void launchMapsDirections(Object explore, Object options) {
+        ArrayList<MapExplore> explores = MapExplore.listFromArgument(explore);
+        MapOptions mapOptions = MapOptions.fromArgument(options);
         Intent intent = new Intent(this, MapDirectionsActivity.class);
-        if (explore instanceof HashMap) {
-            HashMap singleExplore = (HashMap) explore;
-            intent.putExtra("explore", singleExplore);
-        } else if (explore instanceof ArrayList) {
-            ArrayList exploreList = (ArrayList) explore;
-            intent.putExtra("explore", exploreList);
-        }
-        HashMap optionsMap = (options instanceof HashMap) ? (HashMap) options : null;
-        if (optionsMap != null) {
-            intent.putExtra("options", optionsMap);
-        }
-        startActivity(intent);
+        startActivity(new MapPayload(null, mapOptions, null, explores).attachTo(intent));
     }
 
+    /**
+     * @throws IllegalArgumentException if the target, the options or the markers are malformed
+     */
     private void launchMap(Object target, Object options, Object markers) {
-        HashMap targetMap = (target instanceof HashMap) ? (HashMap) target : null;
-        HashMap optionsMap = (options instanceof HashMap) ? (HashMap) options : null;
-        ArrayList<HashMap> markersValues = (markers instanceof  ArrayList) ? ( ArrayList<HashMap>) markers : null;
+        MapTarget mapTarget = MapTarget.fromArgument(target);
+        MapOptions mapOptions = MapOptions.fromArgument(options);
+        ArrayList<MapMarker> mapMarkers = MapMarker.listFromArgument(markers);
         Intent intent = new Intent(this, MapActivity.class);
-        Bundle serializableExtras = new Bundle();
-        serializableExtras.putSerializable("target", targetMap);
-        serializableExtras.putSerializable("options", optionsMap);
-        serializableExtras.putSerializable("markers", markersValues);
-        intent.putExtras(serializableExtras);
-        startActivity(intent);
+        startActivity(new MapPayload(mapTarget, mapOptions, mapMarkers, null).attachTo(intent));
     }
 
     private void launchNotification(MethodCall methodCall) {
@@ -200,6 +230,7 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
 
     private void requestLocationPermission(MethodChannel.Result result) {
         Utils.AppSharedPrefs.saveBool(this, Constants.LOCATION_PERMISSIONS_REQUESTED_KEY, true);
+        DeviceSnapshot.invalidateLocationServices(this);
         //check if granted
         if (ContextCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_COARSE_LOCATION) != PackageManager.PERMISSION_GRANTED  ||
                 ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
@@ -225,31 +256,6 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
         }
     }
 
-    private String getLocationServicesStatus() {
-        boolean locationServicesEnabled;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-            // This is new method provided in API 28
-            LocationManager lm = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
-            locationServicesEnabled = ((lm != null) && lm.isLocationEnabled());
-        } else {
-            // This is Deprecated in API 28
-            int mode = Settings.Secure.getInt(getContentResolver(), Settings.Secure.LOCATION_MODE,
-                    Settings.Secure.LOCATION_MODE_OFF);
-            locationServicesEnabled = (mode != Settings.Secure.LOCATION_MODE_OFF);
-        }
-        if (locationServicesEnabled) {
-            if ((ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED &&
-                    ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED)) {
-                return "allowed";
-            } else {
-                boolean locationPermissionRequested = Utils.AppSharedPrefs.getBool(this, Constants.LOCATION_PERMISSIONS_REQUESTED_KEY, false);
-                return locationPermissionRequested ? "denied" : "not_determined";
-            }
-        } else {
-            return "disabled";
-        }
-    }
-
     private List<String> handleEnabledOrientations(Object orientations) {
         List<String> resultList = new ArrayList<>();
         if (preferredScreenOrientation != ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED) {
@@ -305,22 +311,6 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
         }
     }
 
-    private String getDeviceId(){
-        String deviceId = "";
-        try
-        {
-            UUID uuid;
-            final String androidId = Settings.Secure.getString(getContentResolver(), Settings.Secure.ANDROID_ID);
-            uuid = UUID.nameUUIDFromBytes(androidId.getBytes("utf8"));
-            deviceId = uuid.toString();
-        }
-        catch (Exception e)
-        {
-            Log.d(TAG, "Failed to generate uuid");
-        }
-        return deviceId;
-    }
-
     private int getScreenOrientationFromString(String orientationString) {
         if (Utils.Str.isEmpty(orientationString)) {
             return ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED;
@@ -416,12 +406,9 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
                 e.printStackTrace();
             }
             if (bitmap != null) {
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream);
-                byte[] byteArray = byteArrayOutputStream.toByteArray();
-                if (byteArray != null) {
-                    barcodeImageData = Base64.encodeToString(byteArray, Base64.NO_WRAP);
-                }
+                ImageOutputStream imageOutputStream = new ImageOutputStream(bitmap.getByteCount() / 8);
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, imageOutputStream);
+                barcodeImageData = imageOutputStream.toBase64();
             }
         }
         return barcodeImageData;
@@ -510,18 +497,7 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
         if (keySize <= 0) {
             return null;
         }
-        String base64KeyValue = Utils.BackupStorage.getString(this, Constants.ENCRYPTION_SHARED_PREFS_FILE_NAME, name);
-        byte[] encryptionKey = Utils.Base64.decode(base64KeyValue);
-        if ((encryptionKey != null) && (encryptionKey.length == keySize)) {
-            return base64KeyValue;
-        } else {
-            byte[] keyBytes = new byte[keySize];
-            SecureRandom secRandom = new SecureRandom();
-            secRandom.nextBytes(keyBytes);
-            base64KeyValue = Utils.Base64.encode(keyBytes);
-            Utils.BackupStorage.saveString(this, Constants.ENCRYPTION_SHARED_PREFS_FILE_NAME, name, base64KeyValue);
-            return base64KeyValue;
-        }
+        return EncryptionKeyCache.getKey(this, name, keySize);
     }
 
     //endregion
@@ -535,9 +511,10 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
         try {
             switch (method) {
                 case Constants.APP_INIT_KEY:
-                    StringBuilder builder = new StringBuilder();
+                    StartupTimeline.begin("init");
                     Object keysObject = methodCall.argument("keys");
                     initWithParams(keysObject);
+                    StartupTimeline.end("init");
                     result.success(true);
                     break;
                 case Constants.MAP_DIRECTIONS_KEY:
@@ -573,7 +550,7 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
                 case Constants.APP_LOCATION_SERVICES_PERMISSION:
                     String locationServicesMethod = Utils.Map.getValueFromPath(methodCall.arguments, "method", null);
                     if ("query".equals(locationServicesMethod)) {
-                        String locationServicesStatus = getLocationServicesStatus();
+                        String locationServicesStatus = DeviceSnapshot.getLocationServicesStatus(this);
                         result.success(locationServicesStatus);
                     } else if ("request".equals(locationServicesMethod)) {
                         requestLocationPermission(result);
@@ -583,13 +560,16 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
                     result.success("allowed"); // bluetooth is always enabled in Android by default
                     break;
                 case Constants.FIREBASE_INFO:
-                    String projectId = FirebaseApp.getInstance().getOptions().getProjectId();
+                    String projectId = DeviceSnapshot.getFirebaseProjectId();
                     result.success(projectId);
                     break;
                 case Constants.DEVICE_ID_KEY:
-                    String deviceId = getDeviceId();
+                    String deviceId = DeviceSnapshot.getDeviceId(this);
                     result.success(deviceId);
                     break;
+                case Constants.DEVICE_SNAPSHOT_KEY:
+                    result.success(DeviceSnapshot.toMap(this));
+                    break;
                 case Constants.HEALTH_RSA_PRIVATE_KEY:
                     Object healthRsaPrivateKeyResult = handleHealthRsaPrivateKey(methodCall.arguments);
                     result.success(healthRsaPrivateKeyResult);
@@ -598,6 +578,21 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
                     Object encryptionKey = handleEncryptionKey(methodCall.arguments);
                     result.success(encryptionKey);
                     break;
+                case Constants.STARTUP_MARK_KEY:
+                    String markName = methodCall.argument("name");
+                    if (Utils.Str.isEmpty(markName)) {
+                        throw new IllegalArgumentException("name is required");
+                    }
+                    StartupTimeline.mark("dart:" + markName);
+                    result.success(true);
+                    break;
+                case Constants.STARTUP_TIMELINE_KEY:
+                    result.success(StartupTimeline.toList());
+                    break;
+                case Constants.MAP_WARM_UP_KEY:
+                    MapWarmUp.scheduleIfEnabled(this);
+                    result.success(true);
+                    break;
                 case Constants.BARCODE_KEY:
                     String barcodeImageData = handleBarcode(methodCall.arguments);
                     result.success(barcodeImageData);
@@ -611,6 +606,9 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
             String errorMsg = String.format("Ignoring exception '%s'. See https://github.com/flutter/flutter/issues/29092 for details.", exception.toString());
             Log.e(TAG, errorMsg);
             exception.printStackTrace();
+        } catch (IllegalArgumentException exception) {
+            Log.e(TAG, String.format("Invalid arguments for '%s': %s", method, exception.getMessage()));
+            result.error(TAG, exception.getMessage(), null);
         }
     }
 
@@ -619,6 +617,21 @@ public class MainActivity extends FlutterActivity implements MethodChannel.Metho
 
     }
 
+    // ImageOutputStream
+
+    /**
+     * Encodes the written image straight from its internal buffer, without copying it first.
+     */
+    private static class ImageOutputStream extends ByteArrayOutputStream {
+        private ImageOutputStream(int initialSize) {
+            super(Math.max(initialSize, 1024));
+        }
+
+        private synchronized String toBase64() {
+            return Codec.Base64.encode(buf, 0, count);
+        }
+    }
+
     // RequestLocationCallback
 
     public static class RequestLocationCallback {
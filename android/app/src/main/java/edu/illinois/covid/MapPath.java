@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-compiled dotted path (e.g. "options.location.latitude") for reading values from nested maps.
+ * Paths are split once and cached, so lookups do not allocate. Any {@link java.util.Map} implementation is walked,
+ * platform specific values ({"android": value, "ios": value}) are resolved to the Android value.
+ */
+public final class MapPath {
+
+    private static final String PLATFORM_KEY = "android";
+
+    // Paths are string literals in practice, the limit only protects against unexpected dynamic paths.
+    private static final int MAX_CACHED_PATHS = 512;
+    private static final Map<String, MapPath> compiledPaths = new ConcurrentHashMap<>();
+
+    private final String path;
+    private final String[] segments;
+
+    private MapPath(String path) {
+        this.path = path;
+        this.segments = split(path);
+    }
+
+    /**
+     * Returns the compiled path, compiling and caching it on first use.
+     */
+    public static MapPath compile(String path) {
+        if ((path == null) || path.isEmpty()) {
+            return null;
+        }
+        MapPath mapPath = compiledPaths.get(path);
+        if (mapPath == null) {
+            mapPath = new MapPath(path);
+            if (compiledPaths.size() < MAX_CACHED_PATHS) {
+                compiledPaths.put(path, mapPath);
+            }
+        }
+        return mapPath;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    //region Lookup
+
+    public Object get(Object object) {
+        return getLeaf(object);
+    }
+
+    public String getString(Object object, String defaultValue) {
+        Object value = getLeaf(object);
+        return (value instanceof String) ? (String) value : defaultValue;
+    }
+
+    public int getInt(Object object, int defaultValue) {
+        Object value = getLeaf(object);
+        return (value instanceof Integer) ? ((Integer) value).intValue() : defaultValue;
+    }
+
+    // The standard message codec sends integers that fit in 32 bits as Integer
+    public long getLong(Object object, long defaultValue) {
+        Object value = getLeaf(object);
+        return ((value instanceof Long) || (value instanceof Integer)) ? ((Number) value).longValue() : defaultValue;
+    }
+
+    // Dart number literals without a fraction arrive as Integer or Long
+    public double getDouble(Object object, double defaultValue) {
+        Object value = getLeaf(object);
+        return ((value instanceof Double) || (value instanceof Integer) || (value instanceof Long)) ? ((Number) value).doubleValue() : defaultValue;
+    }
+
+    public boolean getBoolean(Object object, boolean defaultValue) {
+        Object value = getLeaf(object);
+        return (value instanceof Boolean) ? ((Boolean) value).booleanValue() : defaultValue;
+    }
+
+    //endregion
+
+    //region Helpers
+
+    // Walks the segments and resolves a platform specific leaf, the leaf value is returned as stored in the map
+    private Object getLeaf(Object object) {
+        Object current = object;
+        for (int index = 0; index < segments.length; index++) {
+            if (!(current instanceof Map)) {
+                return null;
+            }
+            current = ((Map) current).get(segments[index]);
+        }
+        return (current instanceof Map) ? ((Map) current).get(PLATFORM_KEY) : current;
+    }
+
+    private static String[] split(String path) {
+        int segmentsCount = 1;
+        for (int index = path.indexOf('.'); index != -1; index = path.indexOf('.', index + 1)) {
+            segmentsCount++;
+        }
+        String[] segments = new String[segmentsCount];
+        int segmentStart = 0;
+        for (int segmentIndex = 0; segmentIndex < segmentsCount; segmentIndex++) {
+            int segmentEnd = (segmentIndex < segmentsCount - 1) ? path.indexOf('.', segmentStart) : path.length();
+            segments[segmentIndex] = path.substring(segmentStart, segmentEnd);
+            segmentStart = segmentEnd + 1;
+        }
+        return segments;
+    }
+
+    //endregion
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the {@link SharedPreferences} handles used by the native side of the app.
+ * The first read from a SharedPreferences file blocks until Android has parsed its XML,
+ * so {@link #preload(Context)} loads the known files on a background thread at application start.
+ */
+public class SharedPrefsRegistry {
+
+    private static final String TAG = "SharedPrefsRegistry";
+
+    private static final String[] PRELOADED_FILE_NAMES = {
+            Constants.DEFAULT_SHARED_PREFS_FILE_NAME,
+            Constants.HEALTH_SHARED_PREFS_FILE_NAME,
+            Constants.ENCRYPTION_SHARED_PREFS_FILE_NAME
+    };
+
+    private static final Map<String, SharedPreferences> handles = new ConcurrentHashMap<>();
+    private static final Set<String> loadedFileNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final Set<String> accessedFileNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static long preloadStartTime;
+
+    public static void preload(Context context) {
+        if (context == null) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        preloadStartTime = SystemClock.elapsedRealtime();
+        Thread preloadThread = new Thread(() -> {
+            for (String fileName : PRELOADED_FILE_NAMES) {
+                long startTime = SystemClock.elapsedRealtime();
+                // getAll() waits for the XML to be parsed, so the file is in memory once it returns.
+                get(appContext, fileName).getAll();
+                loadedFileNames.add(fileName);
+                Log.d(TAG, String.format("Preloaded %s in %d ms", fileName, (SystemClock.elapsedRealtime() - startTime)));
+            }
+        }, TAG);
+        preloadThread.start();
+    }
+
+    public static SharedPreferences get(Context context, String fileName) {
+        if ((context == null) || Utils.Str.isEmpty(fileName)) {
+            return null;
+        }
+        SharedPreferences sharedPreferences = handles.get(fileName);
+        if (sharedPreferences == null) {
+            sharedPreferences = context.getApplicationContext().getSharedPreferences(fileName, Context.MODE_PRIVATE);
+            handles.put(fileName, sharedPreferences);
+        }
+        if ((Looper.myLooper() == Looper.getMainLooper()) && accessedFileNames.add(fileName)) {
+            Log.d(TAG, String.format("First main thread access to %s at %d ms after start, preloaded: %b", fileName,
+                    (SystemClock.elapsedRealtime() - preloadStartTime), loadedFileNames.contains(fileName)));
+        }
+        return sharedPreferences;
+    }
+
+    public static SharedPreferences getDefaultPrefs(Context context) {
+        return get(context, Constants.DEFAULT_SHARED_PREFS_FILE_NAME);
+    }
+
+    public static SharedPreferences getHealthPrefs(Context context) {
+        return get(context, Constants.HEALTH_SHARED_PREFS_FILE_NAME);
+    }
+
+    public static SharedPreferences getEncryptionPrefs(Context context) {
+        return get(context, Constants.ENCRYPTION_SHARED_PREFS_FILE_NAME);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records monotonic timestamps of the cold start phases and emits a systrace section for each of them.
+ * Only the first occurrence of a phase is recorded, so phases that repeat (activity recreation, map views) do not
+ * grow the timeline. Times are in milliseconds since process start.
+ */
+public class StartupTimeline {
+
+    private static final String TAG = "StartupTimeline";
+
+    private static final String TRACE_PREFIX = "startup:";
+    private static final int TRACE_NAME_MAX_LENGTH = 127;
+    private static final int MAX_ENTRIES = 64;
+
+    private static final String KEY_NAME = "name";
+    private static final String KEY_START = "start";
+    private static final String KEY_DURATION = "duration";
+
+    private static final long processStartTime = getProcessStartTime();
+    private static final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Starts a phase on the current thread. Must be balanced with {@link #end(String)} on the same thread.
+     */
+    public static void begin(String phase) {
+        Trace.beginSection(traceName(phase));
+        long now = SystemClock.elapsedRealtime();
+        synchronized (entries) {
+            if (!entries.containsKey(phase) && (entries.size() < MAX_ENTRIES)) {
+                entries.put(phase, new Entry(phase, now - processStartTime));
+            }
+        }
+    }
+
+    public static void end(String phase) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (entries) {
+            Entry entry = entries.get(phase);
+            if ((entry != null) && (entry.duration < 0)) {
+                entry.duration = Math.max(0, (now - processStartTime) - entry.start);
+            }
+        }
+        Trace.endSection();
+    }
+
+    /**
+     * Records a point in time that is not bound to a section on the current thread (first map ready, Dart marks).
+     */
+    public static void mark(String name) {
+        begin(name);
+        end(name);
+    }
+
+    public static List<Map<String, Object>> toList() {
+        List<Map<String, Object>> timeline = new ArrayList<>();
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                Map<String, Object> entryMap = new LinkedHashMap<>();
+                entryMap.put(KEY_NAME, entry.name);
+                entryMap.put(KEY_START, entry.start);
+                entryMap.put(KEY_DURATION, Math.max(0, entry.duration));
+                timeline.add(entryMap);
+            }
+        }
+        return timeline;
+    }
+
+    public static void log() {
+        for (Map<String, Object> entryMap : toList()) {
+            Log.d(TAG, String.format("%6d ms +%d ms %s", entryMap.get(KEY_START), entryMap.get(KEY_DURATION), entryMap.get(KEY_NAME)));
+        }
+    }
+
+    //region Helpers
+
+    private static long getProcessStartTime() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return Process.getStartElapsedRealtime();
+        }
+        // Class is loaded from App.onCreate, which is close enough on older platforms
+        return SystemClock.elapsedRealtime();
+    }
+
+    private static String traceName(String phase) {
+        String name = TRACE_PREFIX + phase;
+        return (name.length() > TRACE_NAME_MAX_LENGTH) ? name.substring(0, TRACE_NAME_MAX_LENGTH) : name;
+    }
+
+    private static class Entry {
+        private final String name;
+        private final long start;
+        private long duration = -1;
+
+        private Entry(String name, long start) {
+            this.name = name;
+            this.start = start;
+        }
+    }
+
+    //endregion
+}
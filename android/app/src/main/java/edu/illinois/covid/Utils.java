@@ -21,9 +21,9 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
+import android.graphics.Color;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
-import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.View;
 import android.widget.FrameLayout;
@@ -34,6 +34,7 @@ import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.PolygonOptions;
 import com.google.maps.android.ui.IconGenerator;
 
 import org.json.JSONException;
@@ -42,9 +43,7 @@ import org.json.JSONObject;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.Formatter;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -78,11 +77,31 @@ public class Utils {
 
     public static class DateTime {
 
+        // SimpleDateFormat is not thread safe and expensive to create, so formatters are cached per thread, pattern and locale.
+        private static final ThreadLocal<HashMap<String, SimpleDateFormat>> dateFormats = new ThreadLocal<HashMap<String, SimpleDateFormat>>() {
+            @Override
+            protected HashMap<String, SimpleDateFormat> initialValue() {
+                return new HashMap<>();
+            }
+        };
+
+        static SimpleDateFormat getDateFormat(String pattern) {
+            Locale locale = Locale.getDefault();
+            String formatKey = pattern + "|" + locale.toString();
+            HashMap<String, SimpleDateFormat> threadDateFormats = dateFormats.get();
+            SimpleDateFormat dateFormat = threadDateFormats.get(formatKey);
+            if (dateFormat == null) {
+                dateFormat = new SimpleDateFormat(pattern, locale);
+                threadDateFormats.put(formatKey, dateFormat);
+            }
+            return dateFormat;
+        }
+
         static Date getDateTime(String dateTimeString) {
             if (dateTimeString == null || dateTimeString.isEmpty()) {
                 return null;
             }
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.getDefault());
+            SimpleDateFormat dateFormat = getDateFormat("yyyy-MM-dd'T'HH:mm:ss");
             Date dateTime = null;
             try {
                 dateTime = dateFormat.parse(dateTimeString);
@@ -94,43 +113,7 @@ public class Utils {
         }
 
         static String formatEventTime(Context context, Date dateTime) {
-            if (dateTime == null) {
-                return null;
-            }
-            Calendar calendarDate = Calendar.getInstance();
-            int minutes = calendarDate.get(Calendar.MINUTE);
-            Calendar today = Calendar.getInstance();
-            calendarDate.setTime(dateTime);
-            boolean zeroMins = (minutes == 0);
-            boolean currentYear = calendarDate.get(Calendar.YEAR) == today.get(Calendar.YEAR);
-            final String defaultStringFormat = String.format("%sMMM dd h%s a", (currentYear ? "" : "yy, "), (zeroMins ? "" : ":mm"));
-            String defaultValue = new SimpleDateFormat(defaultStringFormat, Locale.getDefault()).format(dateTime);
-            SimpleDateFormat dateFormat;
-            String datePrefix;
-            String timeSuffix;
-            String format = zeroMins ? "h a" : "h:mm a";
-            dateFormat = new SimpleDateFormat(format, Locale.getDefault());
-            timeSuffix = dateFormat.format(dateTime);
-            boolean isToday = DateUtils.isToday(dateTime.getTime());
-            if (isToday) {
-                datePrefix = context.getString(R.string.today) + " " + context.getString(R.string.at);
-            } else if (calendarDate.after(today)) {
-                int dateDayOfYear = calendarDate.get(Calendar.DAY_OF_YEAR);
-                int todayDateOfYear = today.get(Calendar.DAY_OF_YEAR);
-                int dateDiff = (dateDayOfYear - todayDateOfYear);
-                boolean sameYear = (today.get(Calendar.YEAR) == calendarDate.get(Calendar.YEAR));
-                if ((dateDiff == 1) && sameYear) {
-                    datePrefix = context.getString(R.string.tomorrow) + " " + context.getString(R.string.at);
-                } else if ((dateDiff < 7) && sameYear) {
-                    dateFormat = new SimpleDateFormat("EEEE", Locale.getDefault());
-                    datePrefix = dateFormat.format(dateTime) + " " + context.getString(R.string.at);
-                } else {
-                    return defaultValue;
-                }
-            } else {
-                return defaultValue;
-            }
-            return String.format("%s %s", datePrefix, timeSuffix);
+            return new EventTimeFormatter(context).format(dateTime);
         }
 
         public static long getCurrentTimeMillisSince1970() {
@@ -229,6 +212,13 @@ public class Utils {
         }
 
         public static MarkerOptions constructMarkerOptions(Context context, Object markerRawObject, View markerLayoutView, View markerGroupLayoutView, IconGenerator iconGenerator) {
+            return constructMarkerOptions(context, markerRawObject, markerLayoutView, markerGroupLayoutView, iconGenerator, null);
+        }
+
+        /**
+         * @param eventTimeFormatter formatter shared by a batch of markers, a new one is created when null
+         */
+        public static MarkerOptions constructMarkerOptions(Context context, Object markerRawObject, View markerLayoutView, View markerGroupLayoutView, IconGenerator iconGenerator, EventTimeFormatter eventTimeFormatter) {
             if (markerRawObject == null || markerLayoutView == null || markerGroupLayoutView == null || iconGenerator == null) {
                 return null;
             }
@@ -263,7 +253,7 @@ public class Utils {
             ExploreType exploreType = getExploreType(markerRawObject);
             Bitmap markerIcon;
             if (mapMarkerViewType == MapMarkerViewType.SINGLE) {
-                String markerSnippet = getMarkerSnippet(context, singleExploreMap);
+                String markerSnippet = getMarkerSnippet(context, singleExploreMap, eventTimeFormatter);
                 if (markerSnippet != null && !markerSnippet.isEmpty()) {
                     markerOptions.snippet(markerSnippet);
                 }
@@ -441,27 +431,65 @@ public class Utils {
             }
         }
 
-        public static List<LatLng> getExplorePolygon(Object explore) {
-            if (getExploreType(explore) != ExploreType.PARKING) {
-                return null;
+        public static PolygonOptions constructPolygonOptions(Context context, Object explore, List<LatLng> points) {
+            int strokeColor = context.getResources().getColor(getExplorePolygonColorResource(explore));
+            int fillColor = Color.argb(10, 0, 0, 0);
+            return new PolygonOptions().addAll(points).
+                    clickable(false).strokeColor(strokeColor).strokeWidth(5.0f).fillColor(fillColor).zIndex(1.0f);
+        }
+
+        public static int getExplorePolygonColorResource(Object explore) {
+            ExploreType exploreType = getExploreType(explore);
+            if ((exploreType == ExploreType.PARKING) && (explore instanceof HashMap)) {
+                // Full lots are outlined in orange
+                HashMap parkingLot = (HashMap) explore;
+                int totalSpots = optSpotsCount(parkingLot.get("total_spots"));
+                int spotsSold = optSpotsCount(parkingLot.get("spots_sold"));
+                if ((totalSpots > 0) && (spotsSold >= totalSpots)) {
+                    return R.color.illinois_orange;
+                }
             }
-            HashMap parkingLot = (HashMap) explore;
-            Object polygonObject = parkingLot.get("polygon");
-            if (!(polygonObject instanceof List)) {
+            return getExploreColorResource(exploreType);
+        }
+
+        /**
+         * @return the id of a single explore, null if it has none
+         */
+        public static String getExploreId(Object explore) {
+            if (!(explore instanceof HashMap)) {
                 return null;
             }
-            List<HashMap> polygonMaps = (List) polygonObject;
-            if (polygonMaps.isEmpty()) {
-                return null;
+            HashMap singleExplore = (HashMap) explore;
+            Object idObject;
+            switch (getExploreType(singleExplore)) {
+                case EVENT:
+                    idObject = (singleExplore.get("id") != null) ? singleExplore.get("id") : singleExplore.get("eventId");
+                    break;
+                case DINING:
+                    idObject = singleExplore.get("DiningOptionID");
+                    break;
+                case PARKING:
+                    idObject = singleExplore.get("lot_id");
+                    break;
+                default:
+                    idObject = singleExplore.get("id");
+                    break;
             }
-            List<LatLng> polygonPoints = new ArrayList<>();
-            for (HashMap point : polygonMaps) {
-                double latitude = Utils.Map.getValueFromPath(point, "latitude", 0.0d);
-                double longitude = Utils.Map.getValueFromPath(point, "longitude", 0.0d);
-                LatLng latLng = new LatLng(latitude, longitude);
-                polygonPoints.add(latLng);
+            return (idObject != null) ? idObject.toString() : null;
+        }
+
+        // Parking inventory sends spot counts either as numbers or as strings
+        private static int optSpotsCount(Object value) {
+            if (value instanceof Number) {
+                return ((Number) value).intValue();
+            } else if (value instanceof String) {
+                try {
+                    return Integer.parseInt((String) value);
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
             }
-            return polygonPoints;
+            return -1;
         }
 
         public static int getExploreColorResource(ExploreType exploreType) {
@@ -497,15 +525,15 @@ public class Utils {
             return markerTitle;
         }
 
-        private static String getMarkerSnippet(Context context, HashMap exploreMap) {
+        private static String getMarkerSnippet(Context context, HashMap exploreMap, EventTimeFormatter eventTimeFormatter) {
             if (exploreMap == null) {
                 return null;
             }
             String markerSnippet;
             String startDateToString = (String) exploreMap.get("startDateLocal");
             if (startDateToString != null && !startDateToString.isEmpty()) {
-                Date eventStartDate = DateTime.getDateTime(startDateToString);
-                markerSnippet = DateTime.formatEventTime(context, eventStartDate);
+                EventTimeFormatter formatter = (eventTimeFormatter != null) ? eventTimeFormatter : new EventTimeFormatter(context);
+                markerSnippet = formatter.format(startDateToString);
             } else {
                 markerSnippet = (String) exploreMap.get("status");
             }
@@ -586,54 +614,28 @@ public class Utils {
     public static class Map {
 
         public static String getValueFromPath(Object object, String path, String defaultValue) {
-            Object valueObject = getValueFromPath(object, path);
-            return (valueObject instanceof String) ? (String)valueObject : defaultValue;
+            MapPath mapPath = MapPath.compile(path);
+            return (mapPath != null) ? mapPath.getString(object, defaultValue) : defaultValue;
         }
 
         public static int getValueFromPath(Object object, String path, int defaultValue) {
-            Object valueObject = getValueFromPath(object, path);
-            return (valueObject instanceof Integer) ? (Integer) valueObject : defaultValue;
+            MapPath mapPath = MapPath.compile(path);
+            return (mapPath != null) ? mapPath.getInt(object, defaultValue) : defaultValue;
         }
 
         public static long getValueFromPath(Object object, String path, long defaultValue) {
-            Object valueObject = getValueFromPath(object, path);
-            return (valueObject instanceof Long) ? (Long) valueObject : defaultValue;
+            MapPath mapPath = MapPath.compile(path);
+            return (mapPath != null) ? mapPath.getLong(object, defaultValue) : defaultValue;
         }
 
         public static double getValueFromPath(Object object, String path, double defaultValue) {
-            Object valueObject = getValueFromPath(object, path);
-            return (valueObject instanceof Double) ? (Double) valueObject : defaultValue;
+            MapPath mapPath = MapPath.compile(path);
+            return (mapPath != null) ? mapPath.getDouble(object, defaultValue) : defaultValue;
         }
 
         public static boolean getValueFromPath(Object object, String path, boolean defaultValue) {
-            Object valueObject = getValueFromPath(object, path);
-            return (valueObject instanceof Boolean) ? (Boolean) valueObject : defaultValue;
-        }
-
-        private static Object getValueFromPath(Object object, String path) {
-            if (!(object instanceof java.util.Map) || Str.isEmpty(path)) {
-                return null;
-            }
-            java.util.Map map = (java.util.Map) object;
-            int dotFirstIndex = path.indexOf(".");
-            while (dotFirstIndex != -1) {
-                String subPath = path.substring(0, dotFirstIndex);
-                path = path.substring(dotFirstIndex + 1);
-                Object innerObject = (map != null) ? map.get(subPath) : null;
-                map = (innerObject instanceof HashMap) ? (HashMap) innerObject : null;
-                dotFirstIndex = path.indexOf(".");
-            }
-            Object generalValue = (map != null) ? map.get(path) : null;
-            return getPlatformValue(generalValue);
-        }
-
-        private static Object getPlatformValue(Object object) {
-            if (object instanceof HashMap) {
-                HashMap hashMap = (HashMap) object;
-                return hashMap.get("android");
-            } else {
-                return object;
-            }
+            MapPath mapPath = MapPath.compile(path);
+            return (mapPath != null) ? mapPath.getBoolean(object, defaultValue) : defaultValue;
         }
     }
 
@@ -657,27 +659,11 @@ public class Utils {
         }
 
         public static byte[] hexStringToByteArray(String s) {
-            if(s != null) {
-                int len = s.length();
-                byte[] data = new byte[len / 2];
-                for (int i = 0; i < len; i += 2) {
-                    data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4)
-                            + Character.digit(s.charAt(i + 1), 16));
-                }
-                return data;
-            }
-            return null;
+            return Codec.Hex.decode(s);
         }
 
         public static String byteArrayToHexString(byte[] bytes){
-            if(bytes != null) {
-                Formatter formatter = new Formatter();
-                for (byte b : bytes) {
-                    formatter.format("%02x", b);
-                }
-                return formatter.toString();
-            }
-            return null;
+            return Codec.Hex.encode(bytes);
         }
 
     }
@@ -685,19 +671,11 @@ public class Utils {
     public static class Base64 {
 
         public static byte[] decode(String value) {
-            if (value != null) {
-                return android.util.Base64.decode(value, android.util.Base64.NO_WRAP);
-            } else {
-                return null;
-            }
+            return Codec.Base64.decode(value);
         }
 
         public static String encode(byte[] bytes) {
-            if (bytes != null) {
-                return android.util.Base64.encodeToString(bytes, android.util.Base64.NO_WRAP);
-            } else {
-                return null;
-            }
+            return Codec.Base64.encode(bytes);
         }
     }
 
@@ -707,7 +685,7 @@ public class Utils {
             if ((context == null) || Str.isEmpty(key)) {
                 return defaults;
             }
-            SharedPreferences sharedPreferences = context.getSharedPreferences(Constants.DEFAULT_SHARED_PREFS_FILE_NAME, Context.MODE_PRIVATE);
+            SharedPreferences sharedPreferences = SharedPrefsRegistry.getDefaultPrefs(context);
             return sharedPreferences.getBoolean(key, defaults);
         }
 
@@ -715,11 +693,29 @@ public class Utils {
             if ((context == null) || Str.isEmpty(key)) {
                 return;
             }
-            SharedPreferences sharedPreferences = context.getSharedPreferences(Constants.DEFAULT_SHARED_PREFS_FILE_NAME, Context.MODE_PRIVATE);
+            SharedPreferences sharedPreferences = SharedPrefsRegistry.getDefaultPrefs(context);
             SharedPreferences.Editor editor = sharedPreferences.edit();
             editor.putBoolean(key, value);
             editor.apply();
         }
+
+        public static String getString(Context context, String key, String defaults) {
+            if ((context == null) || Str.isEmpty(key)) {
+                return defaults;
+            }
+            SharedPreferences sharedPreferences = SharedPrefsRegistry.getDefaultPrefs(context);
+            return sharedPreferences.getString(key, defaults);
+        }
+
+        public static void saveString(Context context, String key, String value) {
+            if ((context == null) || Str.isEmpty(key)) {
+                return;
+            }
+            SharedPreferences sharedPreferences = SharedPrefsRegistry.getDefaultPrefs(context);
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            editor.putString(key, value);
+            editor.apply();
+        }
     }
 
     public static class BackupStorage {
@@ -740,7 +736,7 @@ public class Utils {
             if ((context == null) || Str.isEmpty(fileName) || Str.isEmpty(key)) {
                 return null;
             }
-            SharedPreferences sharedPreferences = context.getSharedPreferences(fileName, Context.MODE_PRIVATE);
+            SharedPreferences sharedPreferences = SharedPrefsRegistry.get(context, fileName);
             return sharedPreferences.getString(key, null);
         }
 
@@ -748,7 +744,7 @@ public class Utils {
             if ((context == null) || Str.isEmpty(fileName) || Str.isEmpty(key)) {
                 return;
             }
-            SharedPreferences sharedPreferences = context.getSharedPreferences(fileName, Context.MODE_PRIVATE);
+            SharedPreferences sharedPreferences = SharedPrefsRegistry.get(context, fileName);
             SharedPreferences.Editor editor = sharedPreferences.edit();
             editor.putString(key, value);
             editor.apply();
@@ -759,7 +755,7 @@ public class Utils {
             if ((context == null) || Str.isEmpty(fileName) || Str.isEmpty(key)) {
                 return;
             }
-            SharedPreferences sharedPreferences = context.getSharedPreferences(fileName, Context.MODE_PRIVATE);
+            SharedPreferences sharedPreferences = SharedPrefsRegistry.get(context, fileName);
             SharedPreferences.Editor editor = sharedPreferences.edit();
             editor.remove(key);
             editor.apply();
@@ -17,88 +17,142 @@
 package edu.illinois.covid.gallery;
 
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import edu.illinois.covid.Constants;
-import edu.illinois.covid.MainActivity;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.embedding.engine.plugins.activity.ActivityAware;
+import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
 import io.flutter.plugin.common.BinaryMessenger;
-import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.PluginRegistry;
 
-public class GalleryPlugin implements MethodChannel.MethodCallHandler, FlutterPlugin {
+public class GalleryPlugin implements MethodChannel.MethodCallHandler, FlutterPlugin, ActivityAware, PluginRegistry.RequestPermissionsResultListener {
 
     private static final String TAG = "GalleryPlugin";
+    public static final String CHANNEL_NAME = "edu.illinois.covid/gallery";
     public static final int STORAGE_PERMISSION_REQUEST_CODE = 100;
 
-    private final MainActivity activityContext;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final String TRANSFERS_DIRECTORY_NAME = "gallery_transfers";
+    private static final int MAX_CONCURRENT_WRITES = 4;
+
+    // The plugin can be attached to an engine before any activity exists, storage access uses the application context
+    // and only the permission request needs the activity.
+    private Context applicationContext;
+    private ActivityPluginBinding activityBinding;
     private MethodChannel methodChannel;
 
-    // Temp storage between permission request
-    private byte[] bytes;
-    private String name;
-    private MethodChannel.Result channelResult;
+    // All file and MediaStore I/O runs on this executor, chunks of a transfer are written in the order they arrive.
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    // Bounded pool for writing the images of a batch concurrently
+    private final ExecutorService writeExecutor = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_CONCURRENT_WRITES, Runtime.getRuntime().availableProcessors())));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-    public GalleryPlugin(MainActivity activity) {
-        this.activityContext = activity;
-    }
+    private final ImageProcessor imageProcessor = new ImageProcessor();
+
+    // Chunked transfers in progress, accessed on the I/O executor
+    private final Map<String, ChunkedTransfer> transfers = new ConcurrentHashMap<>();
+
+    // Requests waiting for the storage permission, all of them are handled after a single permission request
+    private final List<StoreRequest> pendingRequests = new ArrayList<>();
+
+    //region Store
 
     private void handleStore() {
-        try {
-            if (hasWriteStoragePermission()) {
-                handleStore(this.bytes, this.name, this.channelResult, false);
-            }
-        } finally {
-            clearCache();
+        List<StoreRequest> requests = new ArrayList<>(pendingRequests);
+        pendingRequests.clear();
+        for (StoreRequest request : requests) {
+            handleStore(request, false);
         }
     }
 
-    private void handleStore(byte[] bytes, String name, @NonNull MethodChannel.Result result) {
-        handleStore(bytes, name, result, true);
-    }
-
-    private void handleStore(byte[] bytes, String name, @NonNull MethodChannel.Result result, boolean performedPermissionCheck) {
+    private void handleStore(@NonNull StoreRequest request, boolean performedPermissionCheck) {
         if (performedPermissionCheck) {
             if(!hasWriteStoragePermission()) {
-                this.bytes = bytes;
-                this.name = name;
-                this.channelResult = result;
-                requestWriteStoragePermission();
+                boolean permissionRequested = !pendingRequests.isEmpty();
+                pendingRequests.add(request);
+                if (!permissionRequested) {
+                    requestWriteStoragePermission();
+                }
                 return;
             }
         }
         else {
             if(!hasWriteStoragePermission()){
-                result.success(Boolean.FALSE);
+                request.discard();
+                completeStore(request, new boolean[request.items.size()]);
                 return;
             }
         }
+        ioExecutor.execute(() -> {
+            boolean[] results = new boolean[request.items.size()];
+            try {
+                storeToGallery(request.items, results);
+            } catch (Exception e) {
+                Log.e(TAG, "Error on store", e);
+            } finally {
+                request.discard();
+            }
+            mainHandler.post(() -> completeStore(request, results));
+        });
+    }
 
+    /**
+     * Stores all items with two MediaStore round-trips: the rows are inserted with a single applyBatch call,
+     * the images are written concurrently and then {@link #publishItems} clears their IS_PENDING flags.
+     * Called on the I/O executor.
+     */
+    private void storeToGallery(List<StoreItem> items, boolean[] results) throws Exception {
+        ContentResolver contentResolver = applicationContext.getContentResolver();
+        int itemsCount = items.size();
+        Uri[] uris = new Uri[itemsCount];
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
         if (android.os.Build.VERSION.SDK_INT >= 29) {
-            ContentValues values = new ContentValues();
-            values.put(MediaStore.Images.Media.RELATIVE_PATH, "Pictures/");
-            values.put(MediaStore.Images.Media.IS_PENDING, true);
-            Uri uri = activityContext.getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-            if (uri != null) {
-                saveBytesToUri(bytes, uri);
-                values.put(MediaStore.Images.Media.IS_PENDING, false);
-                activityContext.getContentResolver().update(uri, values, null, null);
-                result.success(Boolean.TRUE);
-                return;
+            for (int i = 0; i < itemsCount; i++) {
+                ContentValues values = new ContentValues();
+                values.put(MediaStore.Images.Media.RELATIVE_PATH, "Pictures/");
+                values.put(MediaStore.Images.Media.IS_PENDING, true);
+                operations.add(ContentProviderOperation.newInsert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI).withValues(values).build());
+            }
+            ContentProviderResult[] insertResults = contentResolver.applyBatch(MediaStore.AUTHORITY, operations);
+            for (int i = 0; (i < itemsCount) && (i < insertResults.length); i++) {
+                uris[i] = insertResults[i].uri;
             }
         } else {
             String storagePath = Environment.getExternalStorageDirectory().toString();
@@ -107,71 +161,357 @@ public class GalleryPlugin implements MethodChannel.MethodCallHandler, FlutterPl
             if (!directory.exists()) {
                 directory.mkdirs();
             }
-            String fileName = System.currentTimeMillis() + ".png";
-            File file = new File(directory, fileName);
-            saveBytesToUri(bytes, Uri.fromFile(file));
-            if (file.getAbsolutePath() != null) {
-                ContentValues values = new ContentValues();
-                values.put(MediaStore.Images.Media.DATA, file.getAbsolutePath());
-                activityContext.getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-                result.success(Boolean.TRUE);
-                return;
+            long timestamp = System.currentTimeMillis();
+            for (int i = 0; i < itemsCount; i++) {
+                String extension = items.get(i).getFileExtension();
+                String fileName = (itemsCount > 1) ? String.format(Locale.US, "%d_%d.%s", timestamp, i, extension) : (timestamp + "." + extension);
+                uris[i] = Uri.fromFile(new File(directory, fileName));
+            }
+        }
+
+        try {
+            writeItems(items, uris, results);
+        } catch (InterruptedException e) {
+            Arrays.fill(results, false);
+            Thread.currentThread().interrupt();
+        }
+        publishItems(contentResolver, uris, results);
+    }
+
+    /**
+     * Clears the IS_PENDING flags of the written items with a single applyBatch call on API 29+, or registers the
+     * written files on older versions. Items that failed to be written or published are removed and reported as failed.
+     * Called on the I/O executor.
+     */
+    private void publishItems(ContentResolver contentResolver, Uri[] uris, boolean[] results) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        List<Integer> publishedIndexes = new ArrayList<>();
+        for (int i = 0; i < uris.length; i++) {
+            Uri uri = uris[i];
+            if (uri == null) {
+                continue;
             }
+            if (!results[i]) {
+                discardItem(contentResolver, uri);
+            } else if (android.os.Build.VERSION.SDK_INT >= 29) {
+                operations.add(ContentProviderOperation.newUpdate(uri).withValue(MediaStore.Images.Media.IS_PENDING, false).build());
+                publishedIndexes.add(i);
+            } else {
+                operations.add(ContentProviderOperation.newInsert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI)
+                        .withValue(MediaStore.Images.Media.DATA, uri.getPath()).build());
+                publishedIndexes.add(i);
+            }
+        }
+        if (operations.isEmpty()) {
+            return;
+        }
+        ContentProviderResult[] operationResults = null;
+        try {
+            operationResults = contentResolver.applyBatch(MediaStore.AUTHORITY, operations);
+        } catch (Exception e) {
+            Log.e(TAG, "Error on publish", e);
+        }
+        for (int index = 0; index < publishedIndexes.size(); index++) {
+            ContentProviderResult operationResult = ((operationResults != null) && (index < operationResults.length)) ? operationResults[index] : null;
+            boolean published = (operationResult != null) &&
+                    ((operationResult.uri != null) || ((operationResult.count != null) && (operationResult.count > 0)));
+            if (!published) {
+                int i = publishedIndexes.get(index);
+                results[i] = false;
+                discardItem(contentResolver, uris[i]);
+            }
+        }
+    }
+
+    // Removes the pending MediaStore row on API 29+, or the written file on older versions
+    private static void discardItem(ContentResolver contentResolver, Uri uri) {
+        try {
+            if (android.os.Build.VERSION.SDK_INT >= 29) {
+                contentResolver.delete(uri, null, null);
+            } else if (uri.getPath() != null) {
+                new File(uri.getPath()).delete();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, String.format("Error on discard %s", uri.toString()), e);
         }
-        result.success(Boolean.FALSE);
     }
 
-    private void saveBytesToUri(byte[] bytes, Uri uri){
-        if(bytes != null && uri != null) {
-            OutputStream out = null;
+    // Called on the I/O executor
+    private void writeItems(List<StoreItem> items, Uri[] uris, boolean[] results) throws InterruptedException {
+        int itemsCount = items.size();
+        if (itemsCount == 1) {
+            results[0] = writeItem(items.get(0), uris[0]);
+            return;
+        }
+        List<Future<Boolean>> futures = new ArrayList<>(itemsCount);
+        for (int i = 0; i < itemsCount; i++) {
+            StoreItem item = items.get(i);
+            Uri uri = uris[i];
+            futures.add(writeExecutor.submit(() -> writeItem(item, uri)));
+        }
+        for (int i = 0; i < itemsCount; i++) {
             try {
-                out = activityContext.getContentResolver().openOutputStream(uri);
-                if (out != null) {
-                    out.write(bytes);
+                results[i] = futures.get(i).get();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Error on store", e);
+            }
+        }
+    }
+
+    private boolean writeItem(StoreItem item, Uri uri) {
+        if (uri == null) {
+            return false;
+        }
+        try {
+            writeToUri(transcodeIfNeeded(item), uri);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, String.format("Error on write %s", uri.toString()), e);
+            return false;
+        }
+    }
+
+    private void writeToUri(StoreItem item, Uri uri) throws IOException {
+        ParcelFileDescriptor fileDescriptor = applicationContext.getContentResolver().openFileDescriptor(uri, "w");
+        if (fileDescriptor == null) {
+            throw new IOException(String.format("Error on write %s", uri.toString()));
+        }
+        FileOutputStream outputStream = new FileOutputStream(fileDescriptor.getFileDescriptor());
+        FileChannel outputChannel = outputStream.getChannel();
+        try {
+            long totalLength = item.getLength();
+            long written = 0;
+            if (item.bytes != null) {
+                ByteBuffer buffer = ByteBuffer.wrap(item.bytes);
+                while (buffer.hasRemaining()) {
+                    buffer.limit(Math.min(buffer.position() + WRITE_BUFFER_SIZE, buffer.capacity()));
+                    written += outputChannel.write(buffer);
+                    notifyProgress(item, written, totalLength);
                 }
-            } catch (Exception e) {
-                Log.e(TAG, String.format("Error on write %s", uri.toString()), e);
-            }
-            finally {
-                if(out != null){
-                    try {
-                        out.flush();
-                    } catch (IOException e) {
-                        Log.e(TAG, String.format("Error on write %s", uri.toString()), e);
-                    }
-                    try {
-                        out.close();
-                    } catch (IOException e) {
-                        Log.e(TAG, String.format("Error on write %s", uri.toString()), e);
+            } else if (item.file != null) {
+                FileInputStream inputStream = new FileInputStream(item.file);
+                FileChannel inputChannel = inputStream.getChannel();
+                try {
+                    while (written < totalLength) {
+                        long transferred = inputChannel.transferTo(written, Math.min(WRITE_BUFFER_SIZE * 4, totalLength - written), outputChannel);
+                        if (transferred <= 0) {
+                            break;
+                        }
+                        written += transferred;
+                        notifyProgress(item, written, totalLength);
                     }
+                } finally {
+                    inputChannel.close();
+                    inputStream.close();
+                }
+            }
+        } finally {
+            outputChannel.close();
+            outputStream.close();
+            fileDescriptor.close();
+        }
+    }
+
+    private StoreItem transcodeIfNeeded(StoreItem item) throws IOException {
+        if ((item.transcodeOptions == null) || (item.bytes == null)) {
+            return item;
+        }
+        byte[] transcodedBytes = imageProcessor.transcode(item.bytes, item.transcodeOptions);
+        return new StoreItem(transcodedBytes, null, item.name, item.transferId, null);
+    }
+
+    private void completeStore(StoreRequest request, boolean[] results) {
+        for (int i = 0; i < request.items.size(); i++) {
+            StoreItem item = request.items.get(i);
+            if (item.transferId != null) {
+                HashMap<String, Object> arguments = new HashMap<>();
+                arguments.put(Constants.GALLERY_PLUGIN_PARAM_TRANSFER_ID, item.transferId);
+                arguments.put(Constants.GALLERY_PLUGIN_PARAM_SUCCESS, results[i]);
+                invokeFlutterMethod(Constants.GALLERY_PLUGIN_METHOD_NAME_STORE_COMPLETE, arguments);
+            }
+        }
+        if (request.result != null) {
+            if (request.batch) {
+                ArrayList<Boolean> resultList = new ArrayList<>(results.length);
+                for (boolean itemResult : results) {
+                    resultList.add(itemResult);
+                }
+                request.result.success(resultList);
+            } else {
+                request.result.success((results.length > 0) && results[0]);
+            }
+        }
+    }
+
+    private void notifyProgress(StoreItem item, long written, long total) {
+        if (item.transferId != null) {
+            HashMap<String, Object> arguments = new HashMap<>();
+            arguments.put(Constants.GALLERY_PLUGIN_PARAM_TRANSFER_ID, item.transferId);
+            arguments.put(Constants.GALLERY_PLUGIN_PARAM_WRITTEN, written);
+            arguments.put(Constants.GALLERY_PLUGIN_PARAM_LENGTH, total);
+            mainHandler.post(() -> invokeFlutterMethod(Constants.GALLERY_PLUGIN_METHOD_NAME_STORE_PROGRESS, arguments));
+        }
+    }
+
+    private void handleStoreBatch(Object images, ImageProcessor.Options transcodeOptions, @NonNull MethodChannel.Result result) {
+        List<StoreItem> items = new ArrayList<>();
+        if (images instanceof List) {
+            for (Object image : (List) images) {
+                Object bytes = (image instanceof Map) ? ((Map) image).get(Constants.GALLERY_PLUGIN_PARAM_BYTES) : null;
+                Object name = (image instanceof Map) ? ((Map) image).get(Constants.GALLERY_PLUGIN_PARAM_NAME) : null;
+                items.add(new StoreItem((bytes instanceof byte[]) ? (byte[]) bytes : null, null,
+                        (name instanceof String) ? (String) name : null, null, transcodeOptions));
+            }
+        }
+        if (items.isEmpty()) {
+            result.success(new ArrayList<Boolean>());
+            return;
+        }
+        handleStore(new StoreRequest(items, true, result), true); // Result is handled on a latter step
+    }
+
+    //endregion
+
+    //region Chunked transfer
+
+    private void handleStoreBegin(String name, @NonNull MethodChannel.Result result) {
+        String transferId = UUID.randomUUID().toString();
+        ioExecutor.execute(() -> {
+            try {
+                File directory = new File(applicationContext.getCacheDir(), TRANSFERS_DIRECTORY_NAME);
+                if (!directory.exists()) {
+                    directory.mkdirs();
+                }
+                transfers.put(transferId, new ChunkedTransfer(new File(directory, transferId), name));
+                mainHandler.post(() -> result.success(transferId));
+            } catch (IOException e) {
+                Log.e(TAG, "Error on store begin", e);
+                mainHandler.post(() -> result.success(null));
+            }
+        });
+    }
+
+    private void handleStoreChunk(String transferId, byte[] chunk, @NonNull MethodChannel.Result result) {
+        ioExecutor.execute(() -> {
+            ChunkedTransfer transfer = (transferId != null) ? transfers.get(transferId) : null;
+            boolean success = false;
+            if ((transfer != null) && (chunk != null)) {
+                try {
+                    transfer.write(chunk);
+                    success = true;
+                } catch (IOException e) {
+                    Log.e(TAG, "Error on store chunk", e);
+                    transfers.remove(transferId);
+                    transfer.discard();
                 }
             }
+            boolean chunkResult = success;
+            mainHandler.post(() -> result.success(chunkResult));
+        });
+    }
+
+    private void handleStoreEnd(String transferId, @NonNull MethodChannel.Result result) {
+        ioExecutor.execute(() -> {
+            ChunkedTransfer transfer = (transferId != null) ? transfers.remove(transferId) : null;
+            StoreRequest request = null;
+            if (transfer != null) {
+                try {
+                    transfer.finish();
+                    StoreItem item = new StoreItem(null, transfer.file, transfer.name, transferId, null);
+                    request = new StoreRequest(Collections.singletonList(item), false, result);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error on store end", e);
+                    transfer.discard();
+                }
+            }
+            StoreRequest storeRequest = request;
+            mainHandler.post(() -> {
+                if (storeRequest != null) {
+                    handleStore(storeRequest, true);
+                } else {
+                    result.success(Boolean.FALSE);
+                }
+            });
+        });
+    }
+
+    //endregion
+
+    //region Transcode
+
+    /**
+     * Downscales and re-encodes an image on the write pool, so that neither the main thread nor the Dart isolate
+     * has to decode camera sized images. Used for images that are about to be uploaded.
+     * Files are passed by path, so that their content does not go through the channel.
+     */
+    private void handleTranscode(byte[] bytes, String path, String outputPath, ImageProcessor.Options options, @NonNull MethodChannel.Result result) {
+        if ((path != null) && (outputPath != null)) {
+            handleTranscodeFile(path, outputPath, options, result);
+            return;
         }
+        writeExecutor.execute(() -> {
+            byte[] transcodedBytes = null;
+            try {
+                long startTime = System.currentTimeMillis();
+                transcodedBytes = (path != null) ? imageProcessor.transcodeFile(path, options) : imageProcessor.transcode(bytes, options);
+                Log.d(TAG, String.format(Locale.US, "Transcoded image to %d bytes in %d ms", transcodedBytes.length, (System.currentTimeMillis() - startTime)));
+            } catch (IOException e) {
+                Log.e(TAG, "Error on transcode", e);
+            }
+            byte[] transcodeResult = transcodedBytes;
+            mainHandler.post(() -> result.success(transcodeResult));
+        });
     }
 
-    private void clearCache(){
-        this.bytes = null;
-        this.name = null;
-        this.channelResult = null;
+    private void handleTranscodeFile(String path, String outputPath, ImageProcessor.Options options, @NonNull MethodChannel.Result result) {
+        writeExecutor.execute(() -> {
+            boolean transcoded = false;
+            try {
+                long startTime = System.currentTimeMillis();
+                imageProcessor.transcodeFile(path, outputPath, options);
+                transcoded = true;
+                Log.d(TAG, String.format(Locale.US, "Transcoded image file in %d ms", (System.currentTimeMillis() - startTime)));
+            } catch (IOException e) {
+                Log.e(TAG, "Error on transcode", e);
+            }
+            boolean transcodeResult = transcoded;
+            mainHandler.post(() -> result.success(transcodeResult));
+        });
     }
 
+    private static ImageProcessor.Options optTranscodeOptions(MethodCall call) {
+        Object optionsMap = call.argument(Constants.GALLERY_PLUGIN_PARAM_TRANSCODE);
+        return (optionsMap instanceof Map) ? ImageProcessor.Options.fromMap(optionsMap) : null;
+    }
+
+    //endregion
+
     private boolean hasWriteStoragePermission() {
-        return activityContext.checkSelfPermission(android.Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED;
+        return applicationContext.checkSelfPermission(android.Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED;
     }
 
     private void requestWriteStoragePermission() {
-        activityContext.requestPermissions(new String[] {android.Manifest.permission.WRITE_EXTERNAL_STORAGE}, STORAGE_PERMISSION_REQUEST_CODE);
+        if (activityBinding != null) {
+            activityBinding.getActivity().requestPermissions(new String[] {android.Manifest.permission.WRITE_EXTERNAL_STORAGE}, STORAGE_PERMISSION_REQUEST_CODE);
+        } else {
+            // No activity to ask from, pending requests fail the permission check
+            handleStore();
+        }
     }
 
-    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+    @Override
+    public boolean onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
         if(requestCode == STORAGE_PERMISSION_REQUEST_CODE) {
-            for (int i = 0; i < permissions.length && i < grantResults.length; i++) {
-                String permission = permissions[i];
-                int result = grantResults[i];
-                if (android.Manifest.permission.WRITE_EXTERNAL_STORAGE.equals(permission)){
-                    handleStore();
-                }
-            }
+            // Interrupted requests deliver empty arrays, the pending requests check the permission themselves
+            handleStore();
+            return true;
+        }
+        return false;
+    }
+
+    private void invokeFlutterMethod(String method, Object arguments) {
+        if (methodChannel != null) {
+            methodChannel.invokeMethod(method, arguments);
         }
     }
 
@@ -183,7 +523,38 @@ public class GalleryPlugin implements MethodChannel.MethodCallHandler, FlutterPl
                 case Constants.GALLERY_PLUGIN_METHOD_NAME_STORE:
                     byte[] bytes = call.argument(Constants.GALLERY_PLUGIN_PARAM_BYTES);
                     String name = call.argument(Constants.GALLERY_PLUGIN_PARAM_NAME);
-                    handleStore(bytes, name, result); // Result is handled on a latter step
+                    StoreItem item = new StoreItem(bytes, null, name, null, optTranscodeOptions(call));
+                    handleStore(new StoreRequest(Collections.singletonList(item), false, result), true); // Result is handled on a latter step
+                    break;
+                case Constants.GALLERY_PLUGIN_METHOD_NAME_STORE_BATCH:
+                    Object images = call.argument(Constants.GALLERY_PLUGIN_PARAM_IMAGES);
+                    handleStoreBatch(images, optTranscodeOptions(call), result);
+                    break;
+                case Constants.GALLERY_PLUGIN_METHOD_NAME_STORE_BEGIN:
+                    String transferName = call.argument(Constants.GALLERY_PLUGIN_PARAM_NAME);
+                    handleStoreBegin(transferName, result);
+                    break;
+                case Constants.GALLERY_PLUGIN_METHOD_NAME_STORE_CHUNK:
+                    String chunkTransferId = call.argument(Constants.GALLERY_PLUGIN_PARAM_TRANSFER_ID);
+                    byte[] chunk = call.argument(Constants.GALLERY_PLUGIN_PARAM_BYTES);
+                    handleStoreChunk(chunkTransferId, chunk, result);
+                    break;
+                case Constants.GALLERY_PLUGIN_METHOD_NAME_STORE_END:
+                    String endTransferId = call.argument(Constants.GALLERY_PLUGIN_PARAM_TRANSFER_ID);
+                    handleStoreEnd(endTransferId, result); // Result is handled on a latter step
+                    break;
+                case Constants.GALLERY_PLUGIN_METHOD_NAME_TRANSCODE:
+                    byte[] sourceBytes = call.argument(Constants.GALLERY_PLUGIN_PARAM_BYTES);
+                    String sourcePath = call.argument(Constants.GALLERY_PLUGIN_PARAM_PATH);
+                    if ((sourceBytes == null) && (sourcePath == null)) {
+                        result.success(null);
+                    } else {
+                        String outputPath = call.argument(Constants.GALLERY_PLUGIN_PARAM_OUTPUT_PATH);
+                        handleTranscode(sourceBytes, sourcePath, outputPath, ImageProcessor.Options.fromMap(call.arguments), result);
+                    }
+                    break;
+                default:
+                    result.notImplemented();
                     break;
             }
         } catch (Exception e){
@@ -203,13 +574,147 @@ public class GalleryPlugin implements MethodChannel.MethodCallHandler, FlutterPl
         disposeChannels();
     }
 
+    // Activity Aware
+
+    @Override
+    public void onAttachedToActivity(@NonNull ActivityPluginBinding binding) {
+        activityBinding = binding;
+        binding.addRequestPermissionsResultListener(this);
+    }
+
+    @Override
+    public void onDetachedFromActivityForConfigChanges() {
+        // The permission result is delivered to the recreated activity, keep the pending requests
+        detachFromActivity();
+    }
+
+    @Override
+    public void onReattachedToActivityForConfigChanges(@NonNull ActivityPluginBinding binding) {
+        onAttachedToActivity(binding);
+    }
+
+    @Override
+    public void onDetachedFromActivity() {
+        detachFromActivity();
+        // No permission result will come anymore
+        handleStore();
+    }
+
+    private void detachFromActivity() {
+        if (activityBinding != null) {
+            activityBinding.removeRequestPermissionsResultListener(this);
+            activityBinding = null;
+        }
+    }
+
     private void setupChannels(BinaryMessenger messenger, Context context) {
-        methodChannel = new MethodChannel(messenger, "edu.illinois.covid/gallery");
+        applicationContext = context;
+        methodChannel = new MethodChannel(messenger, CHANNEL_NAME);
         methodChannel.setMethodCallHandler(this);
     }
 
     private void disposeChannels() {
         methodChannel.setMethodCallHandler(null);
         methodChannel = null;
+        imageProcessor.trimMemory();
+    }
+
+    //region StoreRequest
+
+    private static class StoreRequest {
+        private final List<StoreItem> items;
+        private final boolean batch;
+        private final MethodChannel.Result result;
+
+        private StoreRequest(List<StoreItem> items, boolean batch, MethodChannel.Result result) {
+            this.items = items;
+            this.batch = batch;
+            this.result = result;
+        }
+
+        private void discard() {
+            for (StoreItem item : items) {
+                item.discard();
+            }
+        }
+    }
+
+    private static class StoreItem {
+        private final byte[] bytes;
+        private final File file;
+        private final String name;
+        private final String transferId;
+        private final ImageProcessor.Options transcodeOptions;
+
+        private StoreItem(byte[] bytes, File file, String name, String transferId, ImageProcessor.Options transcodeOptions) {
+            this.bytes = bytes;
+            this.file = file;
+            this.name = name;
+            this.transferId = transferId;
+            this.transcodeOptions = transcodeOptions;
+        }
+
+        private String getFileExtension() {
+            return (transcodeOptions != null) ? transcodeOptions.getFileExtension() : "png";
+        }
+
+        private long getLength() {
+            if (bytes != null) {
+                return bytes.length;
+            } else if (file != null) {
+                return file.length();
+            } else {
+                return 0;
+            }
+        }
+
+        private void discard() {
+            if ((file != null) && file.exists() && !file.delete()) {
+                Log.w(TAG, String.format("Failed to delete %s", file.getAbsolutePath()));
+            }
+        }
     }
-}
\ No newline at end of file
+
+    //endregion
+
+    //region ChunkedTransfer
+
+    private static class ChunkedTransfer {
+        private final File file;
+        private final String name;
+        private final FileOutputStream outputStream;
+        private final FileChannel channel;
+
+        private ChunkedTransfer(File file, String name) throws IOException {
+            this.file = file;
+            this.name = name;
+            this.outputStream = new FileOutputStream(file);
+            this.channel = outputStream.getChannel();
+        }
+
+        private void write(byte[] chunk) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private void finish() throws IOException {
+            channel.close();
+            outputStream.close();
+        }
+
+        private void discard() {
+            try {
+                finish();
+            } catch (IOException e) {
+                Log.e(TAG, "Error on close", e);
+            }
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, String.format("Failed to delete %s", file.getAbsolutePath()));
+            }
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.gallery;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.illinois.covid.Constants;
+import edu.illinois.covid.Utils;
+
+/**
+ * Decodes, downsamples and re-encodes images.
+ * Only the image bounds are decoded up front, pixels are decoded already scaled to the output size into a reused bitmap
+ * when possible, so memory use depends on the requested size rather than on the size of the input.
+ * The EXIF orientation is applied to the output, so camera photos come out upright.
+ */
+class ImageProcessor {
+
+    private static final String TAG = "ImageProcessor";
+
+    private static final int DEFAULT_MAX_DIMENSION = 2048;
+    private static final int DEFAULT_QUALITY = 90;
+    private static final int MAX_REUSABLE_BYTE_COUNT = 12 * 1024 * 1024; // one 1280 x 2048 ARGB_8888 bitmap fits
+
+    private final List<Bitmap> reusableBitmaps = new ArrayList<>();
+
+    byte[] transcode(byte[] source, Options options) throws IOException {
+        if ((source == null) || (source.length == 0)) {
+            throw new IOException("Missing image data");
+        }
+        int orientation = ExifInterface.ORIENTATION_UNDEFINED;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            try {
+                orientation = readOrientation(new ExifInterface(new ByteArrayInputStream(source)));
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read EXIF data", e);
+            }
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(64 * 1024);
+        transcode(decodeOptions -> BitmapFactory.decodeByteArray(source, 0, source.length, decodeOptions), orientation, options, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Decodes the image straight from the file, so that the encoded image is never held in memory.
+     */
+    byte[] transcodeFile(String path, Options options) throws IOException {
+        int orientation = readFileOrientation(path);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(64 * 1024);
+        transcode(decodeOptions -> BitmapFactory.decodeFile(path, decodeOptions), orientation, options, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Transcodes the image file into outputPath, so that neither image passes through memory as a whole.
+     * The output is written next to outputPath first and only replaces it once complete.
+     */
+    void transcodeFile(String path, String outputPath, Options options) throws IOException {
+        int orientation = readFileOrientation(path);
+        File outputFile = new File(outputPath);
+        File partialFile = new File(outputPath + ".part");
+        try (FileOutputStream outputStream = new FileOutputStream(partialFile)) {
+            transcode(decodeOptions -> BitmapFactory.decodeFile(path, decodeOptions), orientation, options, outputStream);
+        } catch (IOException e) {
+            partialFile.delete();
+            throw e;
+        }
+        if (!partialFile.renameTo(outputFile)) {
+            partialFile.delete();
+            throw new IOException("Failed to write image file");
+        }
+    }
+
+    private int readFileOrientation(String path) throws IOException {
+        if ((path == null) || !new File(path).isFile()) {
+            throw new IOException("Missing image file");
+        }
+        try {
+            return readOrientation(new ExifInterface(path));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read EXIF data", e);
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        }
+    }
+
+    private void transcode(Decoder decoder, int orientation, Options options, OutputStream outputStream) throws IOException {
+        // Limits apply to the upright image
+        boolean transposed = isTransposed(orientation);
+        int maxWidth = transposed ? options.maxHeight : options.maxWidth;
+        int maxHeight = transposed ? options.maxWidth : options.maxHeight;
+
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inJustDecodeBounds = true;
+        decoder.decode(decodeOptions);
+        int sourceWidth = decodeOptions.outWidth;
+        int sourceHeight = decodeOptions.outHeight;
+        if ((sourceWidth <= 0) || (sourceHeight <= 0)) {
+            throw new IOException("Unsupported image format");
+        }
+
+        // Output size before the orientation is applied
+        int targetWidth = sourceWidth;
+        int targetHeight = sourceHeight;
+        if ((options.minWidth > 0) && (options.minHeight > 0)) {
+            // Same rule as flutter_image_compress: shrink the stored image until one side reaches its minimum, never enlarge it
+            float minScale = Math.max(1.0f, Math.min((float) sourceWidth / options.minWidth, (float) sourceHeight / options.minHeight));
+            targetWidth = Math.max(1, (int) (sourceWidth / minScale));
+            targetHeight = Math.max(1, (int) (sourceHeight / minScale));
+        }
+        float scale = Math.min(1.0f, Math.min((float) maxWidth / targetWidth, (float) maxHeight / targetHeight));
+        targetWidth = Math.max(1, Math.min(maxWidth, Math.round(targetWidth * scale)));
+        targetHeight = Math.max(1, Math.min(maxHeight, Math.round(targetHeight * scale)));
+
+        // Subsample as far as the target size allows, then let the decoder scale the rest of the way,
+        // so the decoded bitmap is never larger than the output
+        decodeOptions.inJustDecodeBounds = false;
+        decodeOptions.inSampleSize = calculateInSampleSize(sourceWidth, sourceHeight, targetWidth, targetHeight);
+        decodeOptions.inMutable = true;
+        int sampledWidth = divideRoundingUp(sourceWidth, decodeOptions.inSampleSize);
+        if (sampledWidth > targetWidth) {
+            decodeOptions.inScaled = true;
+            decodeOptions.inDensity = sampledWidth;
+            decodeOptions.inTargetDensity = targetWidth;
+        }
+        decodeOptions.inBitmap = takeReusableBitmap(targetWidth, targetHeight);
+
+        Bitmap decodedBitmap;
+        try {
+            decodedBitmap = decoder.decode(decodeOptions);
+        } catch (IllegalArgumentException e) {
+            // The reused bitmap did not fit the decoded image after all
+            decodeOptions.inBitmap = null;
+            decodedBitmap = decoder.decode(decodeOptions);
+        }
+        if (decodedBitmap == null) {
+            throw new IOException("Failed to decode image");
+        }
+
+        Bitmap outputBitmap = transform(decodedBitmap, targetWidth, targetHeight, orientation);
+        try {
+            if (!outputBitmap.compress(options.format, options.quality, outputStream)) {
+                throw new IOException("Failed to encode image");
+            }
+        } finally {
+            if (outputBitmap != decodedBitmap) {
+                outputBitmap.recycle();
+            }
+            recycleBitmap(decodedBitmap);
+        }
+    }
+
+    private interface Decoder {
+        Bitmap decode(BitmapFactory.Options decodeOptions);
+    }
+
+    //region Sizing
+
+    // The largest power of two that keeps the subsampled image at least as large as the target
+    private static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        while (((width / (inSampleSize * 2)) >= targetWidth) && ((height / (inSampleSize * 2)) >= targetHeight)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    // Corrects the decoder's rounding to targetWidth x targetHeight and applies the EXIF orientation in a single pass
+    private static Bitmap transform(Bitmap bitmap, int targetWidth, int targetHeight, int orientation) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        Matrix matrix = new Matrix();
+        if ((width != targetWidth) || (height != targetHeight)) {
+            matrix.setScale((float) targetWidth / width, (float) targetHeight / height);
+        }
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.postScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.postRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.postRotate(-90);
+                break;
+            default:
+                break;
+        }
+        if (matrix.isIdentity()) {
+            return bitmap;
+        }
+        return Bitmap.createBitmap(bitmap, 0, 0, width, height, matrix, true);
+    }
+
+    private static int readOrientation(ExifInterface exifInterface) {
+        return exifInterface.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+    }
+
+    private static boolean isTransposed(int orientation) {
+        return (orientation == ExifInterface.ORIENTATION_TRANSPOSE) || (orientation == ExifInterface.ORIENTATION_ROTATE_90) ||
+                (orientation == ExifInterface.ORIENTATION_TRANSVERSE) || (orientation == ExifInterface.ORIENTATION_ROTATE_270);
+    }
+
+    private static int divideRoundingUp(int value, int divider) {
+        return (value + divider - 1) / divider;
+    }
+
+    //endregion
+
+    //region Bitmap reuse
+
+    private synchronized Bitmap takeReusableBitmap(int width, int height) {
+        int requiredByteCount = width * height * 4; // ARGB_8888
+        Iterator<Bitmap> iterator = reusableBitmaps.iterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.isRecycled()) {
+                iterator.remove();
+            } else if (bitmap.getAllocationByteCount() >= requiredByteCount) {
+                iterator.remove();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    // Keeps bitmaps for reuse only as long as they all fit in MAX_REUSABLE_BYTE_COUNT
+    private synchronized void recycleBitmap(Bitmap bitmap) {
+        int byteCount = bitmap.getAllocationByteCount();
+        for (Bitmap reusableBitmap : reusableBitmaps) {
+            byteCount += reusableBitmap.isRecycled() ? 0 : reusableBitmap.getAllocationByteCount();
+        }
+        if (bitmap.isMutable() && (bitmap.getConfig() == Bitmap.Config.ARGB_8888) && (byteCount <= MAX_REUSABLE_BYTE_COUNT)) {
+            reusableBitmaps.add(bitmap);
+        } else {
+            bitmap.recycle();
+        }
+    }
+
+    synchronized void trimMemory() {
+        for (Bitmap bitmap : reusableBitmaps) {
+            bitmap.recycle();
+        }
+        reusableBitmaps.clear();
+        Log.d(TAG, "Released reusable bitmaps");
+    }
+
+    //endregion
+
+    //region Options
+
+    static class Options {
+        final int minWidth;
+        final int minHeight;
+        final int maxWidth;
+        final int maxHeight;
+        final Bitmap.CompressFormat format;
+        final int quality;
+
+        private Options(int minWidth, int minHeight, int maxWidth, int maxHeight, Bitmap.CompressFormat format, int quality) {
+            this.minWidth = minWidth;
+            this.minHeight = minHeight;
+            this.maxWidth = maxWidth;
+            this.maxHeight = maxHeight;
+            this.format = format;
+            this.quality = quality;
+        }
+
+        String getFileExtension() {
+            switch (format) {
+                case JPEG: return "jpg";
+                case WEBP: return "webp";
+                default: return "png";
+            }
+        }
+
+        /**
+         * Options example: {"maxWidth": 1024, "maxHeight": 1024, "format": "webp", "quality": 80}
+         * minWidth and minHeight, when both given, size the image the way flutter_image_compress does, still within the maximums.
+         */
+        static Options fromMap(Object optionsMap) {
+            int minWidth = Utils.Map.getValueFromPath(optionsMap, Constants.GALLERY_PLUGIN_PARAM_MIN_WIDTH, 0);
+            int minHeight = Utils.Map.getValueFromPath(optionsMap, Constants.GALLERY_PLUGIN_PARAM_MIN_HEIGHT, 0);
+            int maxWidth = Utils.Map.getValueFromPath(optionsMap, Constants.GALLERY_PLUGIN_PARAM_MAX_WIDTH, DEFAULT_MAX_DIMENSION);
+            int maxHeight = Utils.Map.getValueFromPath(optionsMap, Constants.GALLERY_PLUGIN_PARAM_MAX_HEIGHT, DEFAULT_MAX_DIMENSION);
+            int quality = Utils.Map.getValueFromPath(optionsMap, Constants.GALLERY_PLUGIN_PARAM_QUALITY, DEFAULT_QUALITY);
+            String formatName = Utils.Map.getValueFromPath(optionsMap, Constants.GALLERY_PLUGIN_PARAM_FORMAT, null);
+            Bitmap.CompressFormat format;
+            if ("webp".equals(formatName)) {
+                format = Bitmap.CompressFormat.WEBP;
+            } else if ("png".equals(formatName)) {
+                format = Bitmap.CompressFormat.PNG;
+            } else {
+                format = Bitmap.CompressFormat.JPEG;
+            }
+            return new Options(Math.max(0, minWidth), Math.max(0, minHeight), (maxWidth > 0) ? maxWidth : DEFAULT_MAX_DIMENSION, (maxHeight > 0) ? maxHeight : DEFAULT_MAX_DIMENSION,
+                    format, Math.max(0, Math.min(100, quality)));
+        }
+    }
+
+    //endregion
+}
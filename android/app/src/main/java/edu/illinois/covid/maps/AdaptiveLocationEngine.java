@@ -0,0 +1,233 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.List;
+
+/**
+ * Fused location updates with a sampling profile chosen from the navigation state and from whether the user moves.
+ * High accuracy fast sampling is used until the first fix, for as long as the client waits for an accurate fix,
+ * and while navigating; browsing the map uses balanced accuracy, and both back off further when the user stays
+ * in place. Main thread only.
+ */
+class AdaptiveLocationEngine {
+
+    private static final String TAG = "AdaptiveLocationEngine";
+
+    private static final long FIRST_FIX_TIMEOUT = 4000; // ms
+    // The user is stationary when all fixes stay within this radius for the profile's stationary duration
+    private static final float STATIONARY_RADIUS = 25.0f; // meters
+    private static final long NAVIGATING_STATIONARY_DURATION = 30000; // ms
+    private static final long BROWSING_STATIONARY_DURATION = 120000; // ms
+
+    enum Profile {
+        ACQUIRING(LocationRequest.PRIORITY_HIGH_ACCURACY, 1000, 500, 0),
+        NAVIGATING(LocationRequest.PRIORITY_HIGH_ACCURACY, 2000, 1000, 0),
+        NAVIGATING_STATIONARY(LocationRequest.PRIORITY_HIGH_ACCURACY, 10000, 5000, 0),
+        BROWSING(LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY, 60000, 30000, 0),
+        // Batching is intended here, the user has not moved for a while
+        BROWSING_STATIONARY(LocationRequest.PRIORITY_LOW_POWER, 300000, 60000, 600000);
+
+        private final int priority;
+        private final long interval;
+        private final long fastestInterval;
+        // Fixes are delivered in batches up to this delay, 0 delivers each fix as soon as it is available.
+        // Batching only takes effect from twice the interval.
+        private final long maxWaitTime;
+
+        Profile(int priority, long interval, long fastestInterval, long maxWaitTime) {
+            this.priority = priority;
+            this.interval = interval;
+            this.fastestInterval = fastestInterval;
+            this.maxWaitTime = maxWaitTime;
+        }
+
+        private LocationRequest toLocationRequest() {
+            LocationRequest locationRequest = LocationRequest.create();
+            locationRequest.setPriority(priority);
+            locationRequest.setInterval(interval);
+            locationRequest.setFastestInterval(fastestInterval);
+            if (maxWaitTime > 0) {
+                locationRequest.setMaxWaitTime(maxWaitTime);
+            }
+            return locationRequest;
+        }
+    }
+
+    interface Listener {
+        /**
+         * @param location the most recent fix of the delivered batch
+         */
+        void onLocationUpdate(Location location);
+
+        void onFirstFixTimeout();
+    }
+
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable firstFixTimeoutRunnable = this::onFirstFixTimeout;
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult locationResult) {
+            if (locationResult != null) {
+                onLocations(locationResult.getLocations());
+            }
+        }
+    };
+
+    private boolean running;
+    private boolean navigating;
+    private boolean stationary;
+    private boolean firstFixReceived;
+    private boolean accurateFixRequired;
+    private Profile profile;
+
+    private Location anchorLocation;
+    private long anchorTime;
+
+    AdaptiveLocationEngine(Context context, Listener listener) {
+        this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(context);
+        this.listener = listener;
+    }
+
+    void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        firstFixReceived = false;
+        profile = null;
+        updateProfile();
+        mainHandler.postDelayed(firstFixTimeoutRunnable, FIRST_FIX_TIMEOUT);
+    }
+
+    void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        mainHandler.removeCallbacks(firstFixTimeoutRunnable);
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+    }
+
+    void setNavigating(boolean navigating) {
+        if (this.navigating != navigating) {
+            this.navigating = navigating;
+            resetStationary();
+            updateProfile();
+        }
+    }
+
+    /**
+     * Keeps the high accuracy sampling of the first fix after it is received, e.g. until a route origin is taken
+     * from the current location.
+     */
+    void setAccurateFixRequired(boolean accurateFixRequired) {
+        if (this.accurateFixRequired != accurateFixRequired) {
+            this.accurateFixRequired = accurateFixRequired;
+            updateProfile();
+        }
+    }
+
+    Profile getProfile() {
+        return profile;
+    }
+
+    //region Implementation
+
+    private void onLocations(List<Location> locations) {
+        if ((locations == null) || locations.isEmpty()) {
+            return;
+        }
+        if (!firstFixReceived) {
+            firstFixReceived = true;
+            mainHandler.removeCallbacks(firstFixTimeoutRunnable);
+        }
+        for (Location location : locations) {
+            updateStationary(location);
+        }
+        updateProfile();
+        listener.onLocationUpdate(locations.get(locations.size() - 1));
+    }
+
+    private void onFirstFixTimeout() {
+        if (running && !firstFixReceived) {
+            listener.onFirstFixTimeout();
+        }
+    }
+
+    private void updateStationary(Location location) {
+        long locationTime = location.getElapsedRealtimeNanos() / 1000000;
+        if (locationTime == 0) {
+            locationTime = SystemClock.elapsedRealtime();
+        }
+        float radius = Math.max(STATIONARY_RADIUS, location.hasAccuracy() ? location.getAccuracy() : 0.0f);
+        if ((anchorLocation == null) || (anchorLocation.distanceTo(location) > radius)) {
+            anchorLocation = location;
+            anchorTime = locationTime;
+            stationary = false;
+        } else {
+            long stationaryDuration = navigating ? NAVIGATING_STATIONARY_DURATION : BROWSING_STATIONARY_DURATION;
+            stationary = ((locationTime - anchorTime) >= stationaryDuration);
+        }
+    }
+
+    private void resetStationary() {
+        anchorLocation = null;
+        anchorTime = 0;
+        stationary = false;
+    }
+
+    // Location permission is checked on the Flutter side before maps are opened
+    @SuppressLint("MissingPermission")
+    private void updateProfile() {
+        if (!running) {
+            return;
+        }
+        Profile newProfile;
+        if (navigating) {
+            newProfile = stationary ? Profile.NAVIGATING_STATIONARY : Profile.NAVIGATING;
+        } else if (!firstFixReceived || accurateFixRequired) {
+            newProfile = Profile.ACQUIRING;
+        } else {
+            newProfile = stationary ? Profile.BROWSING_STATIONARY : Profile.BROWSING;
+        }
+        if (newProfile != profile) {
+            Log.d(TAG, String.format("Sampling profile %s -> %s", profile, newProfile));
+            profile = newProfile;
+            // Replaces the previous request registered for the same callback
+            fusedLocationClient.requestLocationUpdates(newProfile.toLocationRequest(), locationCallback, Looper.getMainLooper());
+        }
+    }
+
+    //endregion
+}
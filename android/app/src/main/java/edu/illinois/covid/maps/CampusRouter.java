@@ -0,0 +1,460 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.illinois.covid.R;
+
+/**
+ * On-device walking and cycling directions over the campus graph bundled as the "campus_routing.graph" asset.
+ * The asset is stored uncompressed and memory-mapped, queries are answered with A*.
+ * It is generated from an OpenStreetMap export with scripts/campus_routing_graph.py, without it all directions
+ * come from the Directions API.
+ * <p>
+ * Graph format, little endian:
+ * <pre>
+ * int32 magic 'CRG1', int32 version (1), int32 nodeCount, int32 edgeCount
+ * int32[nodeCount * 2]  node latitude and longitude in microdegrees
+ * int32[nodeCount + 1]  first edge of each node (edges are grouped by source node)
+ * int32[edgeCount]      edge target node
+ * float32[edgeCount]    edge length in meters
+ * int8[edgeCount]       edge travel modes, bit 0 walking, bit 1 bicycling
+ * </pre>
+ */
+class CampusRouter {
+
+    private static final String TAG = "CampusRouter";
+
+    static final String ASSET_NAME = "campus_routing.graph";
+
+    private static final int MAGIC = 0x31475243; // "CRG1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private static final int MODE_WALKING = 1;
+    private static final int MODE_BICYCLING = 2;
+    private static final float WALKING_SPEED = 1.4f; // m/s
+    private static final float BICYCLING_SPEED = 4.5f; // m/s
+
+    private static final double METERS_PER_DEGREE = 111320.0d;
+    // Keeps the equirectangular estimate below the real distance, so that the heuristic stays admissible
+    private static final double HEURISTIC_SCALE = 0.99d;
+    private static final double SLIGHT_TURN_ANGLE = 30.0d;
+    private static final double TURN_ANGLE = 60.0d;
+
+    private static CampusRouter instance;
+    private static boolean instanceLoaded;
+
+    private final int nodeCount;
+    private final IntBuffer nodeCoordinates;
+    private final IntBuffer edgeOffsets;
+    private final IntBuffer edgeTargets;
+    private final FloatBuffer edgeLengths;
+    private final ByteBuffer edgeModes;
+    private final double longitudeScale;
+
+    // Search state reused by all queries, entries are valid only when their stamp equals the current query stamp
+    private final float[] costs;
+    private final int[] parents;
+    private final int[] stamps;
+    private final boolean[] closed;
+    private int stamp;
+    private int[] heapNodes = new int[256];
+    private float[] heapKeys = new float[256];
+    private int heapSize;
+
+    /**
+     * @return the router of the bundled campus graph, or null if the asset is missing or invalid.
+     * Maps the asset on the first call, must not be called on the main thread.
+     */
+    static synchronized CampusRouter getInstance(Context context) {
+        if (!instanceLoaded) {
+            instanceLoaded = true;
+            long startTime = System.currentTimeMillis();
+            try {
+                instance = new CampusRouter(mapAsset(context, ASSET_NAME));
+                Log.d(TAG, String.format("Loaded %d nodes in %d ms", instance.nodeCount, (System.currentTimeMillis() - startTime)));
+            } catch (IOException | IllegalArgumentException e) {
+                Log.d(TAG, "Campus graph not available: " + e.getMessage());
+            }
+        }
+        return instance;
+    }
+
+    private static ByteBuffer mapAsset(Context context, String assetName) throws IOException {
+        // openFd works only for uncompressed assets, see aaptOptions.noCompress
+        AssetFileDescriptor fileDescriptor = context.getAssets().openFd(assetName);
+        FileInputStream inputStream = fileDescriptor.createInputStream();
+        try {
+            FileChannel channel = inputStream.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, fileDescriptor.getStartOffset(), fileDescriptor.getDeclaredLength());
+        } finally {
+            inputStream.close();
+            fileDescriptor.close();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the graph is malformed
+     */
+    CampusRouter(ByteBuffer graph) {
+        ByteBuffer buffer = graph.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if ((buffer.remaining() < HEADER_SIZE) || (buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION)) {
+            throw new IllegalArgumentException("unsupported graph format");
+        }
+        nodeCount = buffer.getInt(8);
+        int edgeCount = buffer.getInt(12);
+        long expectedSize = HEADER_SIZE + 4L * (nodeCount * 2L + nodeCount + 1 + edgeCount * 2L) + edgeCount;
+        if ((nodeCount <= 0) || (edgeCount < 0) || (buffer.remaining() < expectedSize)) {
+            throw new IllegalArgumentException("truncated graph");
+        }
+        int position = HEADER_SIZE;
+        nodeCoordinates = slice(buffer, position, nodeCount * 2 * 4).asIntBuffer();
+        position += nodeCount * 2 * 4;
+        edgeOffsets = slice(buffer, position, (nodeCount + 1) * 4).asIntBuffer();
+        position += (nodeCount + 1) * 4;
+        edgeTargets = slice(buffer, position, edgeCount * 4).asIntBuffer();
+        position += edgeCount * 4;
+        edgeLengths = slice(buffer, position, edgeCount * 4).asFloatBuffer();
+        position += edgeCount * 4;
+        edgeModes = slice(buffer, position, edgeCount);
+
+        longitudeScale = Math.cos(Math.toRadians(getLatitude(0)));
+        costs = new float[nodeCount];
+        parents = new int[nodeCount];
+        stamps = new int[nodeCount];
+        closed = new boolean[nodeCount];
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(position);
+        duplicate.limit(position + length);
+        return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static boolean supportsTravelMode(String travelMode) {
+        return (travelModeMask(travelMode) != 0);
+    }
+
+    /**
+     * @return a single leg route from the origin to the destination, or null if the travel mode is not supported
+     * or the destination cannot be reached
+     */
+    synchronized NavRoute findRoute(double originLatitude, double originLongitude, double destinationLatitude, double destinationLongitude,
+                                    String travelMode, Resources resources) {
+        long startTime = System.nanoTime();
+        int[] path = findNodePath(originLatitude, originLongitude, destinationLatitude, destinationLongitude, travelMode);
+        Log.d(TAG, String.format("%s query in %.2f ms", travelMode, (System.nanoTime() - startTime) / 1000000.0d));
+        if (path == null) {
+            return null;
+        }
+        int modeMask = travelModeMask(travelMode);
+        double[] points = new double[(path.length + 2) * 2];
+        points[0] = originLatitude;
+        points[1] = originLongitude;
+        for (int index = 0; index < path.length; index++) {
+            points[(index + 1) * 2] = getLatitude(path[index]);
+            points[(index + 1) * 2 + 1] = getLongitude(path[index]);
+        }
+        points[points.length - 2] = destinationLatitude;
+        points[points.length - 1] = destinationLongitude;
+        float speed = ((modeMask & MODE_BICYCLING) != 0) ? BICYCLING_SPEED : WALKING_SPEED;
+        return buildRoute(points, travelMode, speed, resources);
+    }
+
+    /**
+     * @return the graph nodes of the shortest path between the nodes nearest to the origin and the destination,
+     * or null if the travel mode is not supported or the destination cannot be reached
+     */
+    synchronized int[] findNodePath(double originLatitude, double originLongitude, double destinationLatitude, double destinationLongitude,
+                                    String travelMode) {
+        int modeMask = travelModeMask(travelMode);
+        if (modeMask == 0) {
+            return null;
+        }
+        int originNode = findNearestNode(originLatitude, originLongitude, modeMask);
+        int destinationNode = findNearestNode(destinationLatitude, destinationLongitude, modeMask);
+        if ((originNode < 0) || (destinationNode < 0)) {
+            return null;
+        }
+        return findPath(originNode, destinationNode, modeMask);
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    //region A*
+
+    private int[] findPath(int originNode, int destinationNode, int modeMask) {
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        heapSize = 0;
+        double destinationLatitude = getLatitude(destinationNode);
+        double destinationLongitude = getLongitude(destinationNode);
+
+        visit(originNode, 0.0f, -1);
+        heapPush(originNode, (float) heuristic(originNode, destinationLatitude, destinationLongitude));
+        while (heapSize > 0) {
+            int node = heapPop();
+            if (closed[node]) {
+                continue; // stale heap entry
+            }
+            if (node == destinationNode) {
+                return buildPath(destinationNode);
+            }
+            closed[node] = true;
+            float nodeCost = costs[node];
+            int lastEdge = edgeOffsets.get(node + 1);
+            for (int edge = edgeOffsets.get(node); edge < lastEdge; edge++) {
+                if ((edgeModes.get(edge) & modeMask) == 0) {
+                    continue;
+                }
+                int target = edgeTargets.get(edge);
+                float targetCost = nodeCost + edgeLengths.get(edge);
+                if ((stamps[target] != stamp) || (!closed[target] && (targetCost < costs[target]))) {
+                    visit(target, targetCost, node);
+                    heapPush(target, targetCost + (float) heuristic(target, destinationLatitude, destinationLongitude));
+                }
+            }
+        }
+        return null;
+    }
+
+    private void visit(int node, float cost, int parent) {
+        if (stamps[node] != stamp) {
+            stamps[node] = stamp;
+            closed[node] = false;
+        }
+        costs[node] = cost;
+        parents[node] = parent;
+    }
+
+    private int[] buildPath(int destinationNode) {
+        int length = 0;
+        for (int node = destinationNode; node >= 0; node = parents[node]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int node = destinationNode, index = length - 1; node >= 0; node = parents[node], index--) {
+            path[index] = node;
+        }
+        return path;
+    }
+
+    private double heuristic(int node, double latitude, double longitude) {
+        double dx = (getLongitude(node) - longitude) * longitudeScale;
+        double dy = getLatitude(node) - latitude;
+        return Math.sqrt(dx * dx + dy * dy) * METERS_PER_DEGREE * HEURISTIC_SCALE;
+    }
+
+    private void heapPush(int node, float key) {
+        if (heapSize == heapNodes.length) {
+            heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+        int index = heapSize++;
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heapKeys[parent] <= key) {
+                break;
+            }
+            heapNodes[index] = heapNodes[parent];
+            heapKeys[index] = heapKeys[parent];
+            index = parent;
+        }
+        heapNodes[index] = node;
+        heapKeys[index] = key;
+    }
+
+    private int heapPop() {
+        int result = heapNodes[0];
+        int lastNode = heapNodes[--heapSize];
+        float lastKey = heapKeys[heapSize];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if ((child + 1 < heapSize) && (heapKeys[child + 1] < heapKeys[child])) {
+                child++;
+            }
+            if (lastKey <= heapKeys[child]) {
+                break;
+            }
+            heapNodes[index] = heapNodes[child];
+            heapKeys[index] = heapKeys[child];
+            index = child;
+        }
+        heapNodes[index] = lastNode;
+        heapKeys[index] = lastKey;
+        return result;
+    }
+
+    //endregion
+
+    //region Route
+
+    private NavRoute buildRoute(double[] points, String travelMode, float speed, Resources resources) {
+        int pointCount = points.length / 2;
+        // Steps start at the origin and at every point where the path turns
+        List<Integer> stepStarts = new ArrayList<>();
+        List<Integer> maneuvers = new ArrayList<>();
+        stepStarts.add(0);
+        maneuvers.add(0);
+        for (int index = 1; index < pointCount - 1; index++) {
+            double turn = normalizeAngle(bearing(points, index, index + 1) - bearing(points, index - 1, index));
+            if (Math.abs(turn) >= SLIGHT_TURN_ANGLE) {
+                stepStarts.add(index);
+                maneuvers.add((int) Math.signum(turn) * ((Math.abs(turn) >= TURN_ANGLE) ? 2 : 1));
+            }
+        }
+
+        List<NavRoute.Step> steps = new ArrayList<>(stepStarts.size() + 1);
+        int routeDistance = 0;
+        for (int stepIndex = 0; stepIndex < stepStarts.size(); stepIndex++) {
+            int first = stepStarts.get(stepIndex);
+            int last = (stepIndex + 1 < stepStarts.size()) ? stepStarts.get(stepIndex + 1) : (pointCount - 1);
+            double[] coordinates = Arrays.copyOfRange(points, first * 2, (last + 1) * 2);
+            double distance = 0.0d;
+            for (int index = first; index < last; index++) {
+                distance += distance(points, index, index + 1);
+            }
+            int stepDistance = (int) Math.round(distance);
+            routeDistance += stepDistance;
+            String instruction = formatInstruction(resources, (stepIndex == 0) ? null : maneuvers.get(stepIndex), stepDistance);
+            steps.add(new NavRoute.Step(instruction, coordinates, stepDistance, Math.round(stepDistance / speed)));
+        }
+        double[] destination = Arrays.copyOfRange(points, points.length - 2, points.length);
+        steps.add(new NavRoute.Step(resources.getString(R.string.routeInstructionArrive), destination, 0, 0));
+
+        NavRoute.Leg leg = new NavRoute.Leg(steps, routeDistance, Math.round(routeDistance / speed));
+        return new NavRoute(travelMode, Collections.singletonList(leg));
+    }
+
+    private static String formatInstruction(Resources resources, Integer maneuver, int distance) {
+        int resourceId;
+        if (maneuver == null) {
+            resourceId = R.string.routeInstructionDepart;
+        } else if (maneuver <= -2) {
+            resourceId = R.string.routeInstructionTurnLeft;
+        } else if (maneuver == -1) {
+            resourceId = R.string.routeInstructionSlightLeft;
+        } else if (maneuver == 1) {
+            resourceId = R.string.routeInstructionSlightRight;
+        } else {
+            resourceId = R.string.routeInstructionTurnRight;
+        }
+        return resources.getString(resourceId, distance);
+    }
+
+    //endregion
+
+    //region Helpers
+
+    private int findNearestNode(double latitude, double longitude, int modeMask) {
+        int nearestNode = -1;
+        double nearestDistance = Double.MAX_VALUE;
+        for (int node = 0; node < nodeCount; node++) {
+            if (!hasEdge(node, modeMask)) {
+                continue;
+            }
+            double dx = (getLongitude(node) - longitude) * longitudeScale;
+            double dy = getLatitude(node) - latitude;
+            double distance = dx * dx + dy * dy;
+            if (distance < nearestDistance) {
+                nearestDistance = distance;
+                nearestNode = node;
+            }
+        }
+        return nearestNode;
+    }
+
+    private boolean hasEdge(int node, int modeMask) {
+        int lastEdge = edgeOffsets.get(node + 1);
+        for (int edge = edgeOffsets.get(node); edge < lastEdge; edge++) {
+            if ((edgeModes.get(edge) & modeMask) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private double getLatitude(int node) {
+        return nodeCoordinates.get(node * 2) / 1000000.0d;
+    }
+
+    private double getLongitude(int node) {
+        return nodeCoordinates.get(node * 2 + 1) / 1000000.0d;
+    }
+
+    private double distance(double[] points, int from, int to) {
+        double dx = (points[to * 2 + 1] - points[from * 2 + 1]) * longitudeScale;
+        double dy = points[to * 2] - points[from * 2];
+        return Math.sqrt(dx * dx + dy * dy) * METERS_PER_DEGREE;
+    }
+
+    // Degrees clockwise from north
+    private double bearing(double[] points, int from, int to) {
+        double dx = (points[to * 2 + 1] - points[from * 2 + 1]) * longitudeScale;
+        double dy = points[to * 2] - points[from * 2];
+        return Math.toDegrees(Math.atan2(dx, dy));
+    }
+
+    private static double normalizeAngle(double angle) {
+        while (angle > 180.0d) {
+            angle -= 360.0d;
+        }
+        while (angle <= -180.0d) {
+            angle += 360.0d;
+        }
+        return angle;
+    }
+
+    private static int travelModeMask(String travelMode) {
+        if ("WALKING".equals(travelMode)) {
+            return MODE_WALKING;
+        } else if ("BICYCLING".equals(travelMode)) {
+            return MODE_BICYCLING;
+        } else {
+            return 0;
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Client of the Google Directions API. The response is read with a streaming {@link JsonReader} straight into a
+ * {@link NavRoute}: only the first route is kept, everything else is skipped without being materialized, and step
+ * polylines are decoded into a shared coordinate buffer. Requests block, call them on a background thread.
+ */
+final class DirectionsClient {
+
+    private static final String TAG = "DirectionsClient";
+
+    static final String DEFAULT_BASE_URL = "https://maps.googleapis.com/maps/api/directions/json";
+    // Server key restricted to the Directions API, the Maps SDK key is restricted to the app and must not be sent to web services
+    private static final String META_DATA_API_KEY = "edu.illinois.covid.maps.DIRECTIONS_API_KEY";
+    private static final int CONNECT_TIMEOUT = 10000; // ms
+    private static final int READ_TIMEOUT = 15000; // ms
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final String baseUrl;
+    private final String apiKey;
+
+    DirectionsClient(String baseUrl, String apiKey) {
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+    }
+
+    /**
+     * @return client of the Directions API that uses the Directions API key from the manifest, null if no key is configured
+     */
+    static DirectionsClient fromManifest(Context context) {
+        String apiKey = null;
+        try {
+            ApplicationInfo applicationInfo = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+            Bundle metaData = applicationInfo.metaData;
+            apiKey = (metaData != null) ? metaData.getString(META_DATA_API_KEY) : null;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "Failed to read meta-data", e);
+        }
+        if ((apiKey == null) || apiKey.isEmpty() || "null".equals(apiKey)) {
+            Log.d(TAG, "No Directions API key, only offline routes are available");
+            return null;
+        }
+        return new DirectionsClient(DEFAULT_BASE_URL, apiKey);
+    }
+
+    /**
+     * @param travelMode WALKING, BICYCLING, DRIVING or TRANSIT
+     * @return the first route of the response, null if the request failed or there is no route
+     */
+    NavRoute findRoute(double originLatitude, double originLongitude, double destinationLatitude, double destinationLongitude, String travelMode) {
+        long startTime = SystemClock.elapsedRealtime();
+        HttpURLConnection connection = null;
+        try {
+            StringBuilder urlBuilder = new StringBuilder(baseUrl);
+            appendQueryParameter(urlBuilder, "origin", formatLocation(originLatitude, originLongitude));
+            appendQueryParameter(urlBuilder, "destination", formatLocation(destinationLatitude, destinationLongitude));
+            appendQueryParameter(urlBuilder, "mode", travelMode.toLowerCase(Locale.US));
+            appendQueryParameter(urlBuilder, "language", Locale.getDefault().getLanguage());
+            if (apiKey != null) {
+                appendQueryParameter(urlBuilder, "key", apiKey);
+            }
+            connection = (HttpURLConnection) new URL(urlBuilder.toString()).openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                Log.e(TAG, "Directions request failed with response code " + responseCode);
+                return null;
+            }
+            try (Reader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"), READ_BUFFER_SIZE)) {
+                NavRoute route = parse(reader, travelMode);
+                Log.d(TAG, String.format("%s route loaded in %d ms", travelMode, (SystemClock.elapsedRealtime() - startTime)));
+                return route;
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Directions request failed", e);
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    //region Parsing
+
+    /**
+     * Parses a Directions API JSON response.
+     * @return the first route, null if the status is not OK or there is no route
+     */
+    static NavRoute parse(Reader reader, String travelMode) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        PolylineBuffer polylineBuffer = new PolylineBuffer();
+        String status = null;
+        List<NavRoute.Leg> legs = null;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "status":
+                    status = jsonReader.nextString();
+                    break;
+                case "routes":
+                    jsonReader.beginArray();
+                    if (jsonReader.hasNext()) {
+                        legs = readRouteLegs(jsonReader, polylineBuffer);
+                    }
+                    while (jsonReader.hasNext()) {
+                        jsonReader.skipValue();
+                    }
+                    jsonReader.endArray();
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        jsonReader.endObject();
+        if (!"OK".equals(status)) {
+            Log.d(TAG, "Directions status: " + status);
+            return null;
+        }
+        return ((legs != null) && !legs.isEmpty()) ? new NavRoute(travelMode, legs) : null;
+    }
+
+    private static List<NavRoute.Leg> readRouteLegs(JsonReader jsonReader, PolylineBuffer polylineBuffer) throws IOException {
+        List<NavRoute.Leg> legs = new ArrayList<>();
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if ("legs".equals(jsonReader.nextName())) {
+                jsonReader.beginArray();
+                while (jsonReader.hasNext()) {
+                    legs.add(readLeg(jsonReader, polylineBuffer));
+                }
+                jsonReader.endArray();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        return legs;
+    }
+
+    private static NavRoute.Leg readLeg(JsonReader jsonReader, PolylineBuffer polylineBuffer) throws IOException {
+        List<NavRoute.Step> steps = new ArrayList<>();
+        int distance = 0;
+        int duration = 0;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "distance":
+                    distance = readValue(jsonReader);
+                    break;
+                case "duration":
+                    duration = readValue(jsonReader);
+                    break;
+                case "steps":
+                    jsonReader.beginArray();
+                    while (jsonReader.hasNext()) {
+                        NavRoute.Step step = readStep(jsonReader, polylineBuffer);
+                        if (step != null) {
+                            steps.add(step);
+                        }
+                    }
+                    jsonReader.endArray();
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        jsonReader.endObject();
+        return new NavRoute.Leg(steps, distance, duration);
+    }
+
+    private static NavRoute.Step readStep(JsonReader jsonReader, PolylineBuffer polylineBuffer) throws IOException {
+        String instruction = null;
+        double[] coordinates = null;
+        int distance = 0;
+        int duration = 0;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "html_instructions":
+                    instruction = jsonReader.nextString();
+                    break;
+                case "distance":
+                    distance = readValue(jsonReader);
+                    break;
+                case "duration":
+                    duration = readValue(jsonReader);
+                    break;
+                case "polyline":
+                    coordinates = readPolyline(jsonReader, polylineBuffer);
+                    break;
+                default:
+                    // includes the walking sub-steps of transit steps
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+        jsonReader.endObject();
+        return (coordinates != null) ? new NavRoute.Step(instruction, coordinates, distance, duration) : null;
+    }
+
+    // {"text": "...", "value": 123}
+    private static int readValue(JsonReader jsonReader) throws IOException {
+        int value = 0;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if ("value".equals(jsonReader.nextName()) && (jsonReader.peek() == JsonToken.NUMBER)) {
+                value = jsonReader.nextInt();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        return value;
+    }
+
+    // {"points": "<encoded polyline>"}
+    private static double[] readPolyline(JsonReader jsonReader, PolylineBuffer polylineBuffer) throws IOException {
+        double[] coordinates = null;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if ("points".equals(jsonReader.nextName())) {
+                coordinates = polylineBuffer.decode(jsonReader.nextString());
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        return coordinates;
+    }
+
+    //endregion
+
+    //region PolylineBuffer
+
+    /**
+     * Decoder of the encoded polyline algorithm format. Decodes into a growable buffer that is reused for all steps
+     * of a response, so each step costs a single right-sized coordinates array.
+     */
+    static final class PolylineBuffer {
+        private double[] buffer = new double[256];
+
+        /**
+         * @return the coordinates as [lat0, lng0, lat1, lng1, ...], an empty array for malformed input
+         */
+        double[] decode(String encoded) {
+            int length = encoded.length();
+            int size = 0;
+            int index = 0;
+            int latitude = 0;
+            int longitude = 0;
+            while (index < length) {
+                int result = 0;
+                int shift = 0;
+                int b;
+                do {
+                    if (index >= length) {
+                        return new double[0];
+                    }
+                    b = encoded.charAt(index++) - 63;
+                    result |= (b & 0x1f) << shift;
+                    shift += 5;
+                } while (b >= 0x20);
+                latitude += ((result & 1) != 0) ? ~(result >> 1) : (result >> 1);
+
+                result = 0;
+                shift = 0;
+                do {
+                    if (index >= length) {
+                        return new double[0];
+                    }
+                    b = encoded.charAt(index++) - 63;
+                    result |= (b & 0x1f) << shift;
+                    shift += 5;
+                } while (b >= 0x20);
+                longitude += ((result & 1) != 0) ? ~(result >> 1) : (result >> 1);
+
+                if (size + 2 > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                buffer[size++] = latitude * 1e-5;
+                buffer[size++] = longitude * 1e-5;
+            }
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    //endregion
+
+    //region Helpers
+
+    private static String formatLocation(double latitude, double longitude) {
+        return String.format(Locale.US, "%.6f,%.6f", latitude, longitude);
+    }
+
+    // Plain java.net encoding instead of android.net.Uri, so that requests can be built in JVM unit tests
+    private static void appendQueryParameter(StringBuilder urlBuilder, String name, String value) throws IOException {
+        urlBuilder.append((urlBuilder.indexOf("?") < 0) ? '?' : '&')
+                .append(URLEncoder.encode(name, "UTF-8"))
+                .append('=')
+                .append(URLEncoder.encode(value, "UTF-8"));
+    }
+
+    //endregion
+}
@@ -19,7 +19,6 @@ package edu.illinois.covid.maps;
 import android.graphics.Color;
 import android.location.Location;
 import android.os.Bundle;
-import android.os.Looper;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.TextView;
@@ -27,28 +26,16 @@ import android.widget.TextView;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
 
-import com.google.android.gms.location.FusedLocationProviderClient;
-import com.google.android.gms.location.LocationCallback;
-import com.google.android.gms.location.LocationResult;
-import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.CameraPosition;
-import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.MarkerOptions;
 
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
 
 import edu.illinois.covid.Constants;
 import edu.illinois.covid.R;
-import edu.illinois.covid.Utils;
 
 public class MapActivity extends AppCompatActivity {
     //region Class fields
@@ -58,20 +45,17 @@ public class MapActivity extends AppCompatActivity {
     protected GoogleMap googleMap;
 
     //Android Location
-    private FusedLocationProviderClient fusedLocationClient;
+    private AdaptiveLocationEngine locationEngine;
     protected Location coreLocation;
-    private com.google.android.gms.location.LocationRequest coreLocationRequest;
-    private LocationCallback coreLocationCallback;
-
-    //Location timer
-    private Timer locationTimer;
     protected long locationTimestamp;
 
     private boolean isRunning;
     private boolean firstLocationUpdatePassed;
-    private HashMap target;
-    private HashMap options;
-    private ArrayList<HashMap> markers;
+    private MapPayload payload;
+    private MapTarget target;
+    protected MapOptions options = MapOptions.DEFAULT;
+    private List<MapMarker> markers;
+    private MapMarkerLoader markerLoader;
     private TextView debugStatusView;
     private boolean showDebugLocation;
 
@@ -85,7 +69,7 @@ public class MapActivity extends AppCompatActivity {
         setContentView(R.layout.map_layout);
 
         initHeaderBar();
-        initParameters();
+        initParameters(savedInstanceState);
         initUiViews();
         initCoreLocation();
         initMap();
@@ -103,6 +87,26 @@ public class MapActivity extends AppCompatActivity {
         stopMonitor();
     }
 
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (payload != null) {
+            payload.saveState(outState, getIntent());
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (markerLoader != null) {
+            markerLoader.cancel();
+            markerLoader = null;
+        }
+        if (isFinishing()) {
+            MapPayload.release(getIntent());
+        }
+        super.onDestroy();
+    }
+
     /**
      * Handle up (back) navigation button clicked
      */
@@ -126,23 +130,19 @@ public class MapActivity extends AppCompatActivity {
         }
     }
 
-    private void initParameters() {
-        Serializable targetSerializable = getIntent().getSerializableExtra("target");
-        if (targetSerializable instanceof HashMap) {
-            this.target = (HashMap) targetSerializable;
-        }
-        Serializable optionsSerializable = getIntent().getSerializableExtra("options");
-        if (optionsSerializable instanceof HashMap) {
-            this.options = (HashMap) optionsSerializable;
-        }
-        Serializable markersSerializable = getIntent().getSerializableExtra("markers");
-        if (markersSerializable instanceof List) {
-            this.markers = (ArrayList<HashMap>) markersSerializable;
-        }
+    private void initParameters(Bundle savedInstanceState) {
+        payload = MapPayload.obtain(getIntent(), savedInstanceState);
+        this.target = payload.target;
+        this.options = payload.options;
+        this.markers = payload.markers;
+    }
+
+    protected MapPayload getPayload() {
+        return payload;
     }
 
     protected void initUiViews() {
-        showDebugLocation = Utils.Map.getValueFromPath(options, "showDebugLocation", false);
+        showDebugLocation = options.showDebugLocation;
         if (showDebugLocation) {
             debugStatusView = findViewById(R.id.debugStatusTextView);
             debugStatusView.setVisibility(View.VISIBLE);
@@ -162,10 +162,9 @@ public class MapActivity extends AppCompatActivity {
 
     private void didGetMapAsync(GoogleMap map) {
         googleMap = map;
-        double latitude = Utils.Map.getValueFromPath(target, "latitude", Constants.DEFAULT_INITIAL_CAMERA_POSITION.latitude);
-        double longitude = Utils.Map.getValueFromPath(target, "longitude", Constants.DEFAULT_INITIAL_CAMERA_POSITION.longitude);
-        double zoom = Utils.Map.getValueFromPath(target, "zoom", Constants.DEFAULT_CAMERA_ZOOM);
-        googleMap.moveCamera(CameraUpdateFactory.newCameraPosition(CameraPosition.fromLatLngZoom(new LatLng(latitude, longitude), (float)zoom)));
+        CameraPosition cameraPosition = (target != null) ? target.toCameraPosition() :
+                CameraPosition.fromLatLngZoom(Constants.DEFAULT_INITIAL_CAMERA_POSITION, Constants.DEFAULT_CAMERA_ZOOM);
+        googleMap.moveCamera(CameraUpdateFactory.newCameraPosition(cameraPosition));
         afterMapInitialized();
     }
 
@@ -175,30 +174,26 @@ public class MapActivity extends AppCompatActivity {
 
     private void fillMarkers(){
         if(markers!=null && !markers.isEmpty()){
-            for(HashMap markerData: markers){
-                Object latVal =  markerData.get("latitude");
-                Object lngVal =  markerData.get("longitude");
-
-                double lat = latVal instanceof Double? (double)latVal :
-                        latVal instanceof Integer? Double.valueOf((int)latVal) : 0;
-                double lng = lngVal instanceof Double? (double)lngVal :
-                        lngVal instanceof Integer? Double.valueOf((int)lngVal) : 0;
-                String name = markerData.containsKey("name")?(String) markerData.get("name") : "";
-                String description = markerData.containsKey("description") && markerData.get("description")!=null?(String) markerData.get("description") : "";
-
-                googleMap.addMarker(new MarkerOptions()
-                        .position(new LatLng(lat, lng))
-                        .title(name).snippet(description)).showInfoWindow();
-            }
+            markerLoader = new MapMarkerLoader(this, googleMap);
+            markerLoader.load(markers);
         }
     }
 
     //endregion
 
     private void initCoreLocation() {
-        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
-        createCoreLocationCallback();
-        createCoreLocationRequest();
+        locationEngine = new AdaptiveLocationEngine(this, new AdaptiveLocationEngine.Listener() {
+            @Override
+            public void onLocationUpdate(Location location) {
+                coreLocation = location;
+                notifyCoreLocationUpdate();
+            }
+
+            @Override
+            public void onFirstFixTimeout() {
+                onLocationTimerTimeout();
+            }
+        });
     }
 
     private void notifyCoreLocationUpdate() {
@@ -207,26 +202,22 @@ public class MapActivity extends AppCompatActivity {
         }
     }
 
-    private void createCoreLocationRequest() {
-        coreLocationRequest = com.google.android.gms.location.LocationRequest.create();
-        coreLocationRequest.setInterval(60000); //in millis
-        coreLocationRequest.setFastestInterval(30000); //in millis
-        coreLocationRequest.setPriority(com.google.android.gms.location.LocationRequest.PRIORITY_HIGH_ACCURACY);
+    /**
+     * Samples location with high accuracy and short intervals only while navigation is in progress.
+     */
+    protected void setLocationNavigating(boolean navigating) {
+        if (locationEngine != null) {
+            locationEngine.setNavigating(navigating);
+        }
     }
 
-    private void createCoreLocationCallback() {
-        coreLocationCallback = new LocationCallback() {
-            @Override
-            public void onLocationResult(LocationResult locationResult) {
-                if (locationResult == null) {
-                    return;
-                }
-                for (Location location : locationResult.getLocations()) {
-                    coreLocation = location;
-                }
-                notifyCoreLocationUpdate();
-            }
-        };
+    /**
+     * Keeps sampling location with high accuracy after the first fix while the activity waits for an accurate location.
+     */
+    protected void setLocationAccurateFixRequired(boolean required) {
+        if (locationEngine != null) {
+            locationEngine.setAccurateFixRequired(required);
+        }
     }
 
     //endregion
@@ -260,44 +251,26 @@ public class MapActivity extends AppCompatActivity {
 
     private void startMonitor() {
         if (!isRunning) {
-            if (fusedLocationClient != null) {
-                fusedLocationClient.requestLocationUpdates(coreLocationRequest, coreLocationCallback, Looper.getMainLooper());
+            if (locationEngine != null) {
+                locationEngine.start();
             }
             isRunning = true;
-            startLocationTimer();
         }
     }
 
     private void stopMonitor() {
         if (isRunning) {
-            stopLocationTimer();
-            if (fusedLocationClient != null) {
-                fusedLocationClient.removeLocationUpdates(coreLocationCallback);
+            if (locationEngine != null) {
+                locationEngine.stop();
             }
             isRunning = false;
         }
     }
 
-    private void startLocationTimer() {
-        stopLocationTimer();
-        locationTimer = new Timer();
-        locationTimer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                onLocationTimerTimeout();
-            }
-        }, (4000)); //4 secs
-    }
-
-    private void stopLocationTimer() {
-        if (locationTimer != null) {
-            locationTimer.cancel();
-            locationTimer = null;
-        }
-    }
-
+    /**
+     * Called on the main thread when no location has been received within 4 seconds after the monitor started.
+     */
     protected void onLocationTimerTimeout() {
-        stopLocationTimer();
     }
 
     //endregion
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helpers for decoding map channel arguments into the typed map models.
+ * Malformed values are reported with {@link IllegalArgumentException} naming the offending argument.
+ * List decoders catch it per item, so that one malformed item does not drop the whole list.
+ */
+class MapArguments {
+
+    static Map optMap(Object value, String name) {
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException(String.format("'%s' must be a map", name));
+        }
+        return (Map) value;
+    }
+
+    static List optList(Object value, String name) {
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException(String.format("'%s' must be a list", name));
+        }
+        return (List) value;
+    }
+
+    static double optDouble(Map map, String key, double defaultValue, String name) {
+        Object value = (map != null) ? map.get(key) : null;
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException(String.format("'%s.%s' must be a number", name, key));
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    static boolean optBoolean(Map map, String key, boolean defaultValue, String name) {
+        Object value = (map != null) ? map.get(key) : null;
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof Boolean)) {
+            throw new IllegalArgumentException(String.format("'%s.%s' must be a boolean", name, key));
+        }
+        return (Boolean) value;
+    }
+
+    static String optString(Map map, String key, String name) {
+        Object value = (map != null) ? map.get(key) : null;
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof String)) {
+            throw new IllegalArgumentException(String.format("'%s.%s' must be a string", name, key));
+        }
+        return (String) value;
+    }
+
+    static void validateCoordinates(double latitude, double longitude, String name) {
+        if ((latitude < -90.0d) || (latitude > 90.0d) || (longitude < -180.0d) || (longitude > 180.0d)) {
+            throw new IllegalArgumentException(String.format("'%s' has invalid coordinates [%f, %f]", name, latitude, longitude));
+        }
+    }
+}
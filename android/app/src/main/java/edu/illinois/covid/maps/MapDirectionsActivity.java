@@ -17,10 +17,10 @@
 package edu.illinois.covid.maps;
 
 import android.content.Context;
-import android.graphics.Color;
 import android.os.Build;
 import android.os.Bundle;
 import android.text.Html;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.TextView;
@@ -33,18 +33,22 @@ import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
-import com.google.android.gms.maps.model.PolygonOptions;
 import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
 import com.google.maps.android.ui.IconGenerator;
 
 import org.json.JSONObject;
 
-import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import edu.illinois.covid.MainActivity;
 import edu.illinois.covid.R;
@@ -55,8 +59,10 @@ public class MapDirectionsActivity extends MapActivity {
     //region Class fields
 
     //Explores - could be Event, Dining, Laundry or ParkingLotInventory
-    private Object explore;
-    private HashMap exploreLocation;
+    private List<MapExplore> explores;
+    private Object exploreMarkerData;
+    private MapExplore primaryExplore;
+    private ParkingLotIndex parkingLotIndex;
     private Marker exploreMarker;
     private IconGenerator iconGenerator;
     private View markerLayoutView;
@@ -65,14 +71,29 @@ public class MapDirectionsActivity extends MapActivity {
 
     //Navigation
     private CameraPosition cameraPosition;
-    private List<Integer> mpRouteStepCoordCounts;
+    private NavRoute route;
+    private RouteGeometryIndex routeIndex;
+    private final RouteGeometryIndex.Match routeMatch = new RouteGeometryIndex.Match();
     private Polyline routePolyline;
+    private int routePolylineLevel;
     private NavStatus navStatus = NavStatus.UNKNOWN;
     private boolean navAutoUpdate;
     private int currentLegIndex = 0;
     private int currentStepIndex = -1;
     private boolean buildRouteAfterInitialization;
 
+    //Routing
+    private static final String TAG = "MapDirectionsActivity";
+    private static final String DEFAULT_TRAVEL_MODE = "WALKING";
+    private static final float NAV_STEP_ZOOM = 18.0f;
+    private static final String[] TRAVEL_MODES = {"WALKING", "BICYCLING", "DRIVING", "TRANSIT"};
+    private final ExecutorService routeExecutor = Executors.newFixedThreadPool(TRAVEL_MODES.length);
+    private int routeRequestId;
+    private double[] routeEndpoints; // origin and destination of the current request
+    private final Set<String> pendingTravelModes = new HashSet<>();
+    private final Map<String, NavRoute> travelModeRoutes = new HashMap<>(); // routes of the current request, null if there is no route
+    private DirectionsClient directionsClient; // null if the Directions API fallback is not configured
+
     //Navigation UI
     private static final String TRAVEL_MODE_PREFS_KEY = "directions.travelMode";
     private String selectedTravelMode;
@@ -94,6 +115,15 @@ public class MapDirectionsActivity extends MapActivity {
         super.onCreate(savedInstanceState);
         initExplore();
         buildTravelModes();
+        directionsClient = DirectionsClient.fromManifest(this);
+        // The route starts from the current location, do not settle for a coarse fix
+        setLocationAccurateFixRequired(true);
+    }
+
+    @Override
+    protected void onDestroy() {
+        routeExecutor.shutdownNow();
+        super.onDestroy();
     }
 
     //endregion
@@ -105,6 +135,7 @@ public class MapDirectionsActivity extends MapActivity {
         super.afterMapInitialized();
         buildExploreMarker();
         buildPolygon();
+        googleMap.setOnCameraIdleListener(this::updateRoutePolylineLevel);
         if (buildRouteAfterInitialization) {
             buildRouteAfterInitialization = false;
             buildRoute();
@@ -133,12 +164,10 @@ public class MapDirectionsActivity extends MapActivity {
     protected void onLocationTimerTimeout() {
         super.onLocationTimerTimeout();
         if (coreLocation == null) {
-            runOnUiThread(() -> {
-                enableView(navPrevButton, false);
-                enableView(navNextButton, false);
-                showLoadingFrame(false);
-                showAlert(getString(R.string.locationFailedMsg));
-            });
+            enableView(navPrevButton, false);
+            enableView(navNextButton, false);
+            showLoadingFrame(false);
+            showAlert(getString(R.string.locationFailedMsg));
         }
     }
 
@@ -147,23 +176,14 @@ public class MapDirectionsActivity extends MapActivity {
     //region Explores
 
     private void initExplore() {
-        Serializable exploreSeriazible = getIntent().getSerializableExtra("explore");
-        if (exploreSeriazible == null) {
+        List<MapExplore> payloadExplores = getPayload().explores;
+        if ((payloadExplores == null) || payloadExplores.isEmpty()) {
             return;
         }
-        if (exploreSeriazible instanceof HashMap) {
-            HashMap singleExplore;
-            singleExplore = (HashMap) exploreSeriazible;
-            this.explore = singleExplore;
-            initExploreLocation(singleExplore);
-        } else if (exploreSeriazible instanceof ArrayList) {
-            ArrayList explores = (ArrayList) exploreSeriazible;
-            this.explore = explores;
-            Object firstExplore = (explores.size() > 0) ? explores.get(0) : null;
-            if (firstExplore instanceof HashMap) {
-                initExploreLocation((HashMap) firstExplore);
-            }
-        }
+        this.explores = payloadExplores;
+        this.exploreMarkerData = MapExplore.toMarkerData(explores);
+        this.primaryExplore = explores.get(0);
+        this.parkingLotIndex = ParkingLotIndex.build(explores);
     }
 
     @Override
@@ -198,11 +218,11 @@ public class MapDirectionsActivity extends MapActivity {
     }
 
     private void buildExploreMarker() {
-        if (exploreLocation != null) {
-            MarkerOptions markerOptions = Utils.Explore.constructMarkerOptions(this, explore, markerLayoutView, markerGroupLayoutView, iconGenerator);
+        if ((primaryExplore != null) && primaryExplore.hasLocation) {
+            MarkerOptions markerOptions = Utils.Explore.constructMarkerOptions(this, exploreMarkerData, markerLayoutView, markerGroupLayoutView, iconGenerator);
             if (markerOptions != null) {
                 exploreMarker = googleMap.addMarker(markerOptions);
-                JSONObject tagJson = Utils.Explore.constructMarkerTagJson(this, exploreMarker.getTitle(), explore);
+                JSONObject tagJson = Utils.Explore.constructMarkerTagJson(this, exploreMarker.getTitle(), exploreMarkerData);
                 exploreMarker.setTag(tagJson);
             }
             updateExploreMarkerAppearance();
@@ -219,31 +239,15 @@ public class MapDirectionsActivity extends MapActivity {
         cameraZoom = currentCameraZoom;
     }
 
-    private void initExploreLocation(HashMap singleExplore) {
-        Utils.ExploreType exploreType = Utils.Explore.getExploreType(singleExplore);
-        if (exploreType == Utils.ExploreType.PARKING) {
-            LatLng latLng = Utils.Explore.optLocationLatLng(singleExplore);
-            if (latLng != null) {
-                this.exploreLocation = Utils.Explore.createLocationMap(latLng);
-            }
-        } else {
-            this.exploreLocation = Utils.Explore.optLocation(singleExplore);
-        }
-    }
-
     private void buildPolygon() {
-        if (googleMap == null) {
+        if ((googleMap == null) || (explores == null) || (explores.size() != 1)) {
             return;
         }
-        List<LatLng> polygonPoints = Utils.Explore.getExplorePolygon(explore);
-        if ((polygonPoints == null) || polygonPoints.isEmpty()) {
+        if ((parkingLotIndex == null) || (parkingLotIndex.getLotCount() == 0)) {
             return;
         }
-        Utils.ExploreType exploreType = Utils.Explore.getExploreType(explore);
-        int strokeColor = getResources().getColor(Utils.Explore.getExploreColorResource(exploreType));
-        int fillColor = Color.argb(10, 0, 0, 0);
-        googleMap.addPolygon(new PolygonOptions().addAll(polygonPoints).
-                clickable(false).strokeColor(strokeColor).strokeWidth(5.0f).fillColor(fillColor).zIndex(1.0f));
+        List<LatLng> polygonPoints = parkingLotIndex.getOutline(0, PolylineLevels.getLevelCount() - 1);
+        googleMap.addPolygon(Utils.Explore.constructPolygonOptions(this, primaryExplore.getRawData(), polygonPoints));
     }
 
     //endregion
@@ -251,12 +255,17 @@ public class MapDirectionsActivity extends MapActivity {
     //region Navigation
 
     public void onRefreshNavClicked(View view) {
+        resetNav();
+        buildRoute();
+    }
+
+    private void resetNav() {
         if (routePolyline != null) {
             routePolyline.remove();
             routePolyline = null;
         }
-        mpRouteStepCoordCounts = null;
-        navStatus = NavStatus.UNKNOWN;
+        setRoute(null);
+        setNavStatus(NavStatus.UNKNOWN);
         navAutoUpdate = false;
 
         if (cameraPosition != null && googleMap != null) {
@@ -265,7 +274,6 @@ public class MapDirectionsActivity extends MapActivity {
         cameraPosition = null;
 
         updateNav();
-        buildRoute();
     }
 
     public void onAutoUpdateNavClicked(View view) {
@@ -297,29 +305,275 @@ public class MapDirectionsActivity extends MapActivity {
     }
 
     public void onPrevNavClicked(View view) {
+        if (route == null) {
+            return;
+        }
+        if (navStatus == NavStatus.FINISHED) {
+            setNavStatus(NavStatus.PROGRESS);
+        } else if (navStatus == NavStatus.PROGRESS) {
+            if (currentStepIndex > 0) {
+                currentStepIndex--;
+            } else if (currentLegIndex > 0) {
+                currentLegIndex--;
+                currentStepIndex = route.legs.get(currentLegIndex).steps.size() - 1;
+            } else {
+                setNavStatus(NavStatus.START);
+                currentStepIndex = -1;
+            }
+        }
+        updateNavAutoUpdate();
+        updateNav();
+        moveCameraToCurrentStep();
     }
 
     public void onNextNavClicked(View view) {
+        if (route == null) {
+            return;
+        }
+        if (navStatus == NavStatus.START) {
+            setNavStatus(NavStatus.PROGRESS);
+            currentLegIndex = 0;
+            currentStepIndex = 0;
+            if (googleMap != null) {
+                cameraPosition = googleMap.getCameraPosition();
+            }
+            notifyRouteStart();
+        } else if (navStatus == NavStatus.PROGRESS) {
+            if (currentStepIndex + 1 < route.legs.get(currentLegIndex).steps.size()) {
+                currentStepIndex++;
+            } else if (currentLegIndex + 1 < route.legs.size()) {
+                currentLegIndex++;
+                currentStepIndex = 0;
+            } else {
+                setNavStatus(NavStatus.FINISHED);
+                notifyRouteFinish();
+            }
+        }
+        updateNavAutoUpdate();
+        updateNav();
+        moveCameraToCurrentStep();
     }
 
     private void buildTravelModes() {
+        selectedTravelMode = Utils.AppSharedPrefs.getString(this, TRAVEL_MODE_PREFS_KEY, DEFAULT_TRAVEL_MODE);
+        travelModesMap = new HashMap<>();
+        travelModesMap.put("WALKING", findViewById(R.id.walkTravelModeButton));
+        travelModesMap.put("BICYCLING", findViewById(R.id.bikeTravelModeButton));
+        travelModesMap.put("DRIVING", findViewById(R.id.driveTravelModeButton));
+        travelModesMap.put("TRANSIT", findViewById(R.id.transitTravelModeButton));
+        updateTravelModes();
+    }
+
+    private void updateTravelModes() {
+        for (Map.Entry<String, View> entry : travelModesMap.entrySet()) {
+            View travelModeView = entry.getValue();
+            if (travelModeView != null) {
+                boolean selected = entry.getKey().equals(selectedTravelMode);
+                travelModeView.setSelected(selected);
+                travelModeView.setAlpha(selected ? 1.0f : 0.5f);
+            }
+        }
     }
 
     private void buildRoute() {
+        if (googleMap == null) {
+            buildRouteAfterInitialization = true;
+        } else if (coreLocation != null) {
+            buildRoutes();
+        }
+        // else the route is built on the first location update
     }
 
-    private void buildRoute(String travelModeValue) {
+    /**
+     * Computes the routes of all travel modes concurrently, so switching the travel mode does not wait for routing.
+     * Other travel modes than the selected one come only from the route cache and the offline campus router,
+     * the Directions API is requested for a travel mode once it is selected.
+     */
+    private void buildRoutes() {
+        if ((primaryExplore == null) || !primaryExplore.hasLocation || (coreLocation == null)) {
+            return;
+        }
+        showLoadingFrame(true);
+        setLocationAccurateFixRequired(false); // the origin is taken
+        int requestId = ++routeRequestId;
+        travelModeRoutes.clear();
+        pendingTravelModes.clear();
+        routeEndpoints = new double[]{coreLocation.getLatitude(), coreLocation.getLongitude(), primaryExplore.latitude, primaryExplore.longitude};
+        List<String> travelModes = new ArrayList<>(Arrays.asList(TRAVEL_MODES));
+        if (travelModes.remove(selectedTravelMode)) {
+            travelModes.add(0, selectedTravelMode);
+        }
+        for (String travelMode : travelModes) {
+            submitRoute(requestId, travelMode, travelMode.equals(selectedTravelMode));
+        }
     }
 
-    private void changeSelectedTravelMode(String newTravelMode) {
+    private void submitRoute(int requestId, String travelMode, boolean directionsApiAllowed) {
+        pendingTravelModes.add(travelMode);
+        double[] endpoints = routeEndpoints;
+        Context appContext = getApplicationContext();
+        DirectionsClient client = directionsApiAllowed ? directionsClient : null;
+        routeExecutor.execute(() -> {
+            RouteCache routeCache = RouteCache.getInstance();
+            NavRoute navRoute = null;
+            try {
+                String cacheKey = RouteCache.buildKey(endpoints[0], endpoints[1], endpoints[2], endpoints[3], travelMode);
+                navRoute = routeCache.get(cacheKey);
+                if (navRoute == null) {
+                    navRoute = findRoute(appContext, client, endpoints, travelMode);
+                    if (navRoute != null) {
+                        routeCache.put(cacheKey, navRoute);
+                    }
+                }
+                if (navRoute != null) {
+                    navRoute.getPolylineLevels(); // simplify off the UI thread
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to build " + travelMode + " route", e);
+                navRoute = null;
+            } finally {
+                // Every task reports, otherwise the loading frame would never be hidden
+                NavRoute builtRoute = navRoute;
+                runOnUiThread(() -> didBuildRoute(requestId, travelMode, builtRoute, directionsApiAllowed));
+            }
+        });
+    }
+
+    // Called on routeExecutor, client is null when the Directions API must not be requested
+    private static NavRoute findRoute(Context appContext, DirectionsClient client, double[] endpoints, String travelMode) {
+        NavRoute navRoute = null;
+        CampusRouter router = CampusRouter.supportsTravelMode(travelMode) ? CampusRouter.getInstance(appContext) : null;
+        if (router != null) {
+            navRoute = router.findRoute(endpoints[0], endpoints[1], endpoints[2], endpoints[3], travelMode, appContext.getResources());
+        }
+        if ((navRoute == null) && (client != null)) {
+            navRoute = client.findRoute(endpoints[0], endpoints[1], endpoints[2], endpoints[3], travelMode);
+        }
+        return navRoute;
+    }
+
+    /**
+     * @param directionsApiAllowed whether the Directions API could be requested, if not, a missing route is not final
+     */
+    private void didBuildRoute(int requestId, String travelMode, NavRoute navRoute, boolean directionsApiAllowed) {
+        if ((requestId != routeRequestId) || isFinishing()) {
+            return;
+        }
+        pendingTravelModes.remove(travelMode);
+        boolean selected = travelMode.equals(selectedTravelMode);
+        if ((navRoute == null) && !directionsApiAllowed && (directionsClient != null)) {
+            if (selected) {
+                // Selected while it was being built offline
+                submitRoute(requestId, travelMode, true);
+            }
+            return;
+        }
+        travelModeRoutes.put(travelMode, navRoute);
+        if (selected && (route == null)) {
+            showRoute(navRoute);
+        }
+    }
 
+    private void showRoute(NavRoute navRoute) {
+        if (googleMap == null) {
+            return;
+        }
+        showLoadingFrame(false);
+        if (navRoute == null) {
+            showAlert(getString(R.string.routeFailedMsg));
+            return;
+        }
+        setRoute(navRoute);
+        if (routePolyline != null) {
+            routePolyline.remove();
+        }
+        PolylineLevels polylineLevels = navRoute.getPolylineLevels();
+        routePolylineLevel = PolylineLevels.levelForZoom(googleMap.getCameraPosition().zoom);
+        routePolyline = googleMap.addPolyline(new PolylineOptions().addAll(polylineLevels.getPoints(routePolylineLevel))
+                .color(getResources().getColor(R.color.illinois_orange)).width(12.0f).zIndex(2.0f));
+        currentLegIndex = 0;
+        currentStepIndex = -1;
+        setNavStatus(NavStatus.START);
+        navAutoUpdate = false;
+        updateNav();
+    }
+
+    private void updateRoutePolylineLevel() {
+        if ((routePolyline == null) || (route == null)) {
+            return;
+        }
+        PolylineLevels polylineLevels = route.getPolylineLevels();
+        int level = PolylineLevels.levelForZoom(googleMap.getCameraPosition().zoom);
+        if (level != routePolylineLevel) {
+            routePolylineLevel = level;
+            routePolyline.setPoints(polylineLevels.getPoints(level));
+        }
+    }
+
+    private void changeSelectedTravelMode(String newTravelMode) {
+        if ((newTravelMode == null) || newTravelMode.equals(selectedTravelMode) || (navStatus == NavStatus.PROGRESS)) {
+            return;
+        }
+        selectedTravelMode = newTravelMode;
+        Utils.AppSharedPrefs.saveString(this, TRAVEL_MODE_PREFS_KEY, newTravelMode);
+        updateTravelModes();
+        resetNav();
+        if (travelModeRoutes.containsKey(newTravelMode)) {
+            showRoute(travelModeRoutes.get(newTravelMode));
+        } else if (pendingTravelModes.contains(newTravelMode)) {
+            showLoadingFrame(true); // the route is shown when it is built
+        } else if (routeEndpoints != null) {
+            // Built offline without a route, now the Directions API may be requested
+            showLoadingFrame(true);
+            submitRoute(routeRequestId, newTravelMode, true);
+        } else {
+            buildRoute();
+        }
     }
 
     @Override
     protected void handleFirstLocationUpdate() {
+        if (route == null) {
+            buildRoute();
+        }
     }
 
     private void updateNav() {
+        boolean inProgress = (navStatus == NavStatus.PROGRESS);
+        if (navTravelModesContainer != null) {
+            navTravelModesContainer.setVisibility(inProgress ? View.GONE : View.VISIBLE);
+        }
+        if (navAutoUpdateButton != null) {
+            navAutoUpdateButton.setVisibility((inProgress && !navAutoUpdate) ? View.VISIBLE : View.GONE);
+        }
+        enableView(navPrevButton, inProgress || (navStatus == NavStatus.FINISHED));
+        enableView(navNextButton, inProgress || (navStatus == NavStatus.START));
+        if (navStepLabel == null) {
+            return;
+        }
+        switch (navStatus) {
+            case START:
+                navStepLabel.setText(getString(R.string.routeDistanceDurationFormat, route.getDistance(), route.getDuration()));
+                break;
+            case PROGRESS:
+                NavRoute.Step step = route.getStep(currentLegIndex, currentStepIndex);
+                setStepHtml((step != null) ? step.instruction : "");
+                break;
+            case FINISHED:
+                navStepLabel.setText(R.string.finish);
+                break;
+            default:
+                navStepLabel.setText("");
+                break;
+        }
+    }
+
+    private void moveCameraToCurrentStep() {
+        NavRoute.Step step = (route != null) ? route.getStep(currentLegIndex, currentStepIndex) : null;
+        if ((googleMap != null) && (navStatus == NavStatus.PROGRESS) && (step != null) && (step.getPointCount() > 0)) {
+            LatLng stepStart = new LatLng(step.getLatitude(0), step.getLongitude(0));
+            googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(stepStart, NAV_STEP_ZOOM));
+        }
     }
 
     private void updateNavAutoUpdate() {
@@ -331,6 +585,12 @@ public class MapDirectionsActivity extends MapActivity {
 
     private void updateNavByCurrentLocation() {
         if ((navStatus == NavStatus.PROGRESS) && navAutoUpdate) {
+            if (isInDestinationParkingLot()) {
+                setNavStatus(NavStatus.FINISHED);
+                notifyRouteFinish();
+                updateNav();
+                return;
+            }
             MPRouteSegmentPath segmentPath = findNearestRouteSegmentByCurrentLocation();
             if (isValidSegmentPath(segmentPath)) {
                 updateNavFromSegmentPath(segmentPath);
@@ -338,6 +598,14 @@ public class MapDirectionsActivity extends MapActivity {
         }
     }
 
+    private boolean isInDestinationParkingLot() {
+        if ((parkingLotIndex == null) || (coreLocation == null)) {
+            return false;
+        }
+        int lot = parkingLotIndex.findLotContaining(coreLocation.getLatitude(), coreLocation.getLongitude());
+        return (lot >= 0) && (parkingLotIndex.getLot(lot) == primaryExplore);
+    }
+
     private void updateNavFromSegmentPath(MPRouteSegmentPath segmentPath) {
         boolean modified = false;
         if (currentLegIndex != segmentPath.legIndex) {
@@ -353,14 +621,32 @@ public class MapDirectionsActivity extends MapActivity {
         }
     }
 
+    private void setNavStatus(NavStatus navStatus) {
+        this.navStatus = navStatus;
+        setLocationNavigating(navStatus == NavStatus.PROGRESS);
+    }
+
+    private void setRoute(NavRoute route) {
+        this.route = route;
+        this.routeIndex = (route != null) ? new RouteGeometryIndex(route) : null;
+    }
+
+    /**
+     * Searches outward from the current step, runs on every location update while navigating.
+     */
     @NonNull
     private MPRouteSegmentPath findNearestRouteSegmentByCurrentLocation() {
         MPRouteSegmentPath minRouteSegmentPath = new MPRouteSegmentPath(-1, -1);
+        if ((routeIndex != null) && (coreLocation != null) &&
+                routeIndex.findNearest(coreLocation.getLatitude(), coreLocation.getLongitude(), currentLegIndex, currentStepIndex, routeMatch)) {
+            minRouteSegmentPath.legIndex = routeMatch.legIndex;
+            minRouteSegmentPath.stepIndex = routeMatch.stepIndex;
+        }
         return minRouteSegmentPath;
     }
 
     private boolean isValidSegmentPath(MPRouteSegmentPath segmentPath) {
-        return false;
+        return (route != null) && (segmentPath != null) && (route.getStep(segmentPath.legIndex, segmentPath.stepIndex) != null);
     }
 
     private void setStepHtml(String htmlContent) {
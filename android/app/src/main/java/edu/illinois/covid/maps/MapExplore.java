@@ -0,0 +1,213 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import android.os.Parcel;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.illinois.covid.Utils;
+
+/**
+ * Explore (Event, Dining, Laundry or ParkingLotInventory) decoded once from its channel representation.
+ * The raw map is kept as it is sent back to Flutter when the explore marker is selected.
+ */
+public final class MapExplore {
+
+    private static final String TAG = "MapExplore";
+    private static final String ARGUMENT_NAME = "explores";
+    // Attributes that define the decoded geometry, changing them requires placing the explores again
+    private static final String[] GEOMETRY_KEYS = {"location", "entrance", "polygon"};
+
+    private final HashMap rawData;
+    public final String id;
+    public final Utils.ExploreType type;
+    public final boolean hasLocation;
+    public final double latitude;
+    public final double longitude;
+    public final Integer floor;
+    // Parking lot outline as [lat0, lng0, lat1, lng1, ...], null for other explores
+    private final double[] polygon;
+
+    private LatLng latLng;
+
+    private MapExplore(HashMap rawData, Utils.ExploreType type, boolean hasLocation, double latitude, double longitude, Integer floor, double[] polygon) {
+        this.rawData = rawData;
+        this.id = Utils.Explore.getExploreId(rawData);
+        this.type = type;
+        this.hasLocation = hasLocation;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.floor = floor;
+        this.polygon = polygon;
+    }
+
+    /**
+     * Decodes a single explore map or a list of explore maps.
+     * Malformed explores are logged and skipped, only an argument that is neither a map nor a list throws.
+     */
+    public static ArrayList<MapExplore> listFromArgument(Object argument) {
+        ArrayList<MapExplore> explores = new ArrayList<>();
+        if (argument instanceof Map) {
+            addFromMap(explores, argument, ARGUMENT_NAME);
+        } else {
+            List exploresList = MapArguments.optList(argument, ARGUMENT_NAME);
+            if (exploresList != null) {
+                explores.ensureCapacity(exploresList.size());
+                for (int index = 0; index < exploresList.size(); index++) {
+                    addFromMap(explores, exploresList.get(index), String.format("%s[%d]", ARGUMENT_NAME, index));
+                }
+            }
+        }
+        return explores;
+    }
+
+    private static void addFromMap(List<MapExplore> explores, Object exploreObject, String name) {
+        try {
+            Map exploreMap = MapArguments.optMap(exploreObject, name);
+            if (exploreMap != null) {
+                explores.add(fromMap(exploreMap, name));
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Skipping explore: " + e.getMessage());
+        }
+    }
+
+    private static MapExplore fromMap(Map exploreMap, String name) {
+        HashMap rawData = (exploreMap instanceof HashMap) ? (HashMap) exploreMap : new HashMap(exploreMap);
+        Utils.ExploreType type = Utils.Explore.getExploreType(rawData);
+        Map locationMap = MapArguments.optMap(rawData.get("location"), name + ".location");
+        Map coordinatesMap = (type == Utils.ExploreType.PARKING) ? MapArguments.optMap(rawData.get("entrance"), name + ".entrance") : locationMap;
+        boolean hasLocation = (coordinatesMap != null) && (coordinatesMap.get("latitude") instanceof Number) && (coordinatesMap.get("longitude") instanceof Number);
+        double latitude = hasLocation ? ((Number) coordinatesMap.get("latitude")).doubleValue() : 0.0d;
+        double longitude = hasLocation ? ((Number) coordinatesMap.get("longitude")).doubleValue() : 0.0d;
+        if (hasLocation) {
+            MapArguments.validateCoordinates(latitude, longitude, name);
+        }
+        Object floorObject = (locationMap != null) ? locationMap.get("floor") : null;
+        Integer floor = (floorObject instanceof Integer) ? (Integer) floorObject : null;
+        double[] polygon = (type == Utils.ExploreType.PARKING) ? decodePolygon(rawData.get("polygon"), name + ".polygon") : null;
+        return new MapExplore(rawData, type, hasLocation, latitude, longitude, floor, polygon);
+    }
+
+    private static double[] decodePolygon(Object polygonObject, String name) {
+        List pointsList = MapArguments.optList(polygonObject, name);
+        if ((pointsList == null) || pointsList.isEmpty()) {
+            return null;
+        }
+        double[] polygon = new double[pointsList.size() * 2];
+        for (int index = 0; index < pointsList.size(); index++) {
+            String pointName = String.format("%s[%d]", name, index);
+            Map pointMap = MapArguments.optMap(pointsList.get(index), pointName);
+            polygon[index * 2] = MapArguments.optDouble(pointMap, "latitude", 0.0d, pointName);
+            polygon[index * 2 + 1] = MapArguments.optDouble(pointMap, "longitude", 0.0d, pointName);
+        }
+        return polygon;
+    }
+
+    /**
+     * Updates live attributes, such as parking availability or status, in place. Geometry attributes are ignored.
+     * @return true if any attribute has changed
+     */
+    boolean applyPatch(Map attributes) {
+        boolean changed = false;
+        for (Object entryObject : attributes.entrySet()) {
+            Map.Entry entry = (Map.Entry) entryObject;
+            Object key = entry.getKey();
+            if (isGeometryKey(key)) {
+                continue;
+            }
+            Object value = entry.getValue();
+            Object oldValue = rawData.get(key);
+            if ((value != null) ? !value.equals(oldValue) : (oldValue != null)) {
+                rawData.put(key, value);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean isGeometryKey(Object key) {
+        for (String geometryKey : GEOMETRY_KEYS) {
+            if (geometryKey.equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void writeToParcel(Parcel dest) {
+        dest.writeMap(rawData);
+    }
+
+    /**
+     * Decodes the explore again from its raw data, which has been validated when it was received.
+     */
+    static MapExplore readFromParcel(Parcel in) {
+        HashMap rawData = in.readHashMap(MapExplore.class.getClassLoader());
+        return fromMap(rawData, ARGUMENT_NAME);
+    }
+
+    //region Accessors
+
+    public HashMap getRawData() {
+        return rawData;
+    }
+
+    public LatLng getLatLng() {
+        if ((latLng == null) && hasLocation) {
+            latLng = new LatLng(latitude, longitude);
+        }
+        return latLng;
+    }
+
+    public boolean isOnSameFloor(MapExplore other) {
+        return (floor == null) ? (other.floor == null) : floor.equals(other.floor);
+    }
+
+    /**
+     * @return parking lot outline as [lat0, lng0, lat1, lng1, ...], null for other explores
+     */
+    double[] getPolygonCoordinates() {
+        return polygon;
+    }
+
+    //endregion
+
+    /**
+     * Builds the raw marker data expected by {@link Utils.Explore}: the explore map for a single explore,
+     * or a list of explore maps for a group.
+     */
+    public static Object toMarkerData(List<MapExplore> explores) {
+        if ((explores == null) || explores.isEmpty()) {
+            return null;
+        } else if (explores.size() == 1) {
+            return explores.get(0).rawData;
+        }
+        ArrayList<HashMap> rawDataList = new ArrayList<>(explores.size());
+        for (MapExplore explore : explores) {
+            rawDataList.add(explore.rawData);
+        }
+        return rawDataList;
+    }
+}
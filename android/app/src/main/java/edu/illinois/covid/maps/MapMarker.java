@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import android.os.Parcel;
+import android.util.Log;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import edu.illinois.covid.Utils;
+
+/**
+ * Plain marker shown by {@link MapActivity}: {"latitude": 40.1, "longitude": -88.2, "name": "...", "description": "..."}.
+ */
+public final class MapMarker {
+
+    private static final String TAG = "MapMarker";
+    private static final String ARGUMENT_NAME = "markers";
+
+    public final double latitude;
+    public final double longitude;
+    public final String name;
+    public final String description;
+
+    private MapMarker(double latitude, double longitude, String name, String description) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.name = name;
+        this.description = description;
+    }
+
+    /**
+     * Malformed markers are logged and skipped, only an argument that is not a list throws.
+     */
+    public static ArrayList<MapMarker> listFromArgument(Object argument) {
+        List markersList = MapArguments.optList(argument, ARGUMENT_NAME);
+        ArrayList<MapMarker> markers = new ArrayList<>((markersList != null) ? markersList.size() : 0);
+        if (markersList != null) {
+            for (int index = 0; index < markersList.size(); index++) {
+                String name = String.format("%s[%d]", ARGUMENT_NAME, index);
+                try {
+                    Map markerMap = MapArguments.optMap(markersList.get(index), name);
+                    if (markerMap != null) {
+                        markers.add(fromMap(markerMap, name));
+                    }
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Skipping marker: " + e.getMessage());
+                }
+            }
+        }
+        return markers;
+    }
+
+    private static MapMarker fromMap(Map markerMap, String name) {
+        double latitude = MapArguments.optDouble(markerMap, "latitude", 0.0d, name);
+        double longitude = MapArguments.optDouble(markerMap, "longitude", 0.0d, name);
+        MapArguments.validateCoordinates(latitude, longitude, name);
+        String title = MapArguments.optString(markerMap, "name", name);
+        String description = MapArguments.optString(markerMap, "description", name);
+        return new MapMarker(latitude, longitude, Utils.Str.defaultEmpty(title), Utils.Str.defaultEmpty(description));
+    }
+
+    void writeToParcel(Parcel dest) {
+        dest.writeDouble(latitude);
+        dest.writeDouble(longitude);
+        dest.writeString(name);
+        dest.writeString(description);
+    }
+
+    static MapMarker readFromParcel(Parcel in) {
+        return new MapMarker(in.readDouble(), in.readDouble(), in.readString(), in.readString());
+    }
+
+    public MarkerOptions toMarkerOptions() {
+        return new MarkerOptions().position(new LatLng(latitude, longitude)).title(name).snippet(description);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.maps.CameraUpdateFactory;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.ClusterItem;
+import com.google.maps.android.clustering.ClusterManager;
+import com.google.maps.android.clustering.view.DefaultClusterRenderer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds the markers of {@link MapActivity} without blocking the UI thread. Marker options are prepared on a
+ * background thread; small sets are added on the UI thread in chunks that fit in a frame, dense sets are handed to a
+ * {@link ClusterManager}, which clusters in background and renders in chunks as well.
+ * Info windows open when a marker is tapped, only a single marker shows its info window right away.
+ */
+class MapMarkerLoader {
+
+    private static final String TAG = "MapMarkerLoader";
+
+    // Above this count markers are clustered
+    private static final int CLUSTER_THRESHOLD = 100;
+    // Time budget for adding markers in a single main thread message
+    private static final long CHUNK_TIME_BUDGET = 8; // ms
+    private static final float CLUSTER_CLICK_ZOOM_DELTA = 2.0f;
+
+    private final Context context;
+    private final GoogleMap googleMap;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private ClusterManager<MarkerItem> clusterManager;
+    private List<MarkerOptions> pendingMarkerOptions;
+    private int pendingIndex;
+    private boolean cancelled;
+
+    MapMarkerLoader(Context context, GoogleMap googleMap) {
+        this.context = context;
+        this.googleMap = googleMap;
+    }
+
+    /**
+     * Called on the main thread.
+     */
+    void load(List<MapMarker> markers) {
+        if ((markers == null) || markers.isEmpty()) {
+            return;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        new Thread(() -> {
+            if (markers.size() > CLUSTER_THRESHOLD) {
+                List<MarkerItem> items = new ArrayList<>(markers.size());
+                for (MapMarker marker : markers) {
+                    items.add(new MarkerItem(marker));
+                }
+                mainHandler.post(() -> addClusterItems(items, startTime));
+            } else {
+                List<MarkerOptions> markerOptions = new ArrayList<>(markers.size());
+                for (MapMarker marker : markers) {
+                    markerOptions.add(marker.toMarkerOptions());
+                }
+                mainHandler.post(() -> addMarkers(markerOptions, startTime));
+            }
+        }, TAG).start();
+    }
+
+    void cancel() {
+        cancelled = true;
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    //region Plain markers
+
+    private void addMarkers(List<MarkerOptions> markerOptions, long startTime) {
+        if (cancelled) {
+            return;
+        }
+        pendingMarkerOptions = markerOptions;
+        pendingIndex = 0;
+        addMarkersChunk(startTime);
+    }
+
+    private void addMarkersChunk(long startTime) {
+        if (cancelled || (pendingMarkerOptions == null)) {
+            return;
+        }
+        long chunkStartTime = SystemClock.uptimeMillis();
+        Marker lastMarker = null;
+        while ((pendingIndex < pendingMarkerOptions.size()) && ((SystemClock.uptimeMillis() - chunkStartTime) < CHUNK_TIME_BUDGET)) {
+            lastMarker = googleMap.addMarker(pendingMarkerOptions.get(pendingIndex++));
+        }
+        if (pendingIndex < pendingMarkerOptions.size()) {
+            mainHandler.post(() -> addMarkersChunk(startTime));
+        } else {
+            if ((pendingMarkerOptions.size() == 1) && (lastMarker != null)) {
+                lastMarker.showInfoWindow();
+            }
+            Log.d(TAG, String.format("Added %d markers in %d ms", pendingMarkerOptions.size(), (SystemClock.elapsedRealtime() - startTime)));
+            pendingMarkerOptions = null;
+        }
+    }
+
+    //endregion
+
+    //region Clustered markers
+
+    private void addClusterItems(List<MarkerItem> items, long startTime) {
+        if (cancelled) {
+            return;
+        }
+        clusterManager = new ClusterManager<>(context, googleMap);
+        clusterManager.setRenderer(new MarkerItemRenderer(context, googleMap, clusterManager));
+        clusterManager.setOnClusterClickListener(this::onClusterClick);
+        googleMap.setOnCameraIdleListener(clusterManager);
+        googleMap.setOnMarkerClickListener(clusterManager);
+        clusterManager.addItems(items);
+        clusterManager.cluster();
+        Log.d(TAG, String.format("Clustering %d markers, prepared in %d ms", items.size(), (SystemClock.elapsedRealtime() - startTime)));
+    }
+
+    private boolean onClusterClick(Cluster<MarkerItem> cluster) {
+        float zoom = googleMap.getCameraPosition().zoom + CLUSTER_CLICK_ZOOM_DELTA;
+        googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(cluster.getPosition(), zoom));
+        return true;
+    }
+
+    //endregion
+
+    //region MarkerItem
+
+    private static class MarkerItem implements ClusterItem {
+        private final LatLng position;
+        private final String title;
+        private final String snippet;
+
+        private MarkerItem(MapMarker marker) {
+            this.position = new LatLng(marker.latitude, marker.longitude);
+            this.title = marker.name;
+            this.snippet = marker.description;
+        }
+
+        @Override
+        public LatLng getPosition() {
+            return position;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getSnippet() {
+            return snippet;
+        }
+    }
+
+    private static class MarkerItemRenderer extends DefaultClusterRenderer<MarkerItem> {
+
+        private MarkerItemRenderer(Context context, GoogleMap map, ClusterManager<MarkerItem> clusterManager) {
+            super(context, map, clusterManager);
+        }
+
+        @Override
+        protected void onBeforeClusterItemRendered(MarkerItem item, MarkerOptions markerOptions) {
+            super.onBeforeClusterItemRendered(item, markerOptions);
+            markerOptions.title(item.getTitle()).snippet(item.getSnippet());
+        }
+    }
+
+    //endregion
+}
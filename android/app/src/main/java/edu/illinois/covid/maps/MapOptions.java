@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import android.os.Parcel;
+
+import java.util.Map;
+
+import edu.illinois.covid.Constants;
+
+/**
+ * Options of the native map screens and of the map platform view.
+ */
+public final class MapOptions {
+
+    private static final String ARGUMENT_NAME = "options";
+
+    public static final MapOptions DEFAULT = new MapOptions(false, Constants.EXPLORE_LOCATION_THRESHOLD_DISTANCE, false);
+
+    public final boolean showDebugLocation;
+    public final double locationThresholdDistance;
+    public final boolean myLocationEnabled;
+
+    private MapOptions(boolean showDebugLocation, double locationThresholdDistance, boolean myLocationEnabled) {
+        this.showDebugLocation = showDebugLocation;
+        this.locationThresholdDistance = locationThresholdDistance;
+        this.myLocationEnabled = myLocationEnabled;
+    }
+
+    public static MapOptions fromArgument(Object argument) {
+        Map optionsMap = MapArguments.optMap(argument, ARGUMENT_NAME);
+        if (optionsMap == null) {
+            return DEFAULT;
+        }
+        boolean showDebugLocation = MapArguments.optBoolean(optionsMap, "showDebugLocation", false, ARGUMENT_NAME);
+        // The key is misspelled on the Flutter side as well
+        double locationThresholdDistance = MapArguments.optDouble(optionsMap, "LocationThresoldDistance", Constants.EXPLORE_LOCATION_THRESHOLD_DISTANCE, ARGUMENT_NAME);
+        boolean myLocationEnabled = MapArguments.optBoolean(optionsMap, "myLocationEnabled", false, ARGUMENT_NAME);
+        if (locationThresholdDistance < 0) {
+            throw new IllegalArgumentException(String.format("'%s.LocationThresoldDistance' must not be negative", ARGUMENT_NAME));
+        }
+        return new MapOptions(showDebugLocation, locationThresholdDistance, myLocationEnabled);
+    }
+
+    void writeToParcel(Parcel dest) {
+        dest.writeInt(showDebugLocation ? 1 : 0);
+        dest.writeDouble(locationThresholdDistance);
+        dest.writeInt(myLocationEnabled ? 1 : 0);
+    }
+
+    static MapOptions readFromParcel(Parcel in) {
+        return new MapOptions(in.readInt() != 0, in.readDouble(), in.readInt() != 0);
+    }
+}
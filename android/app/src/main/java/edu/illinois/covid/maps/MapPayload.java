@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decoded arguments of a native map screen. The launcher registers the payload in process and passes only its handle
+ * in the Intent, so launch time does not depend on the payload size. The saved state of the activity keeps a size
+ * limited copy of the payload, which restores it after the process has been killed.
+ */
+public final class MapPayload implements Parcelable {
+
+    public static final String EXTRA_HANDLE = "mapPayloadHandle";
+    private static final String STATE_HANDLE = "mapPayloadHandle";
+    private static final String STATE_PAYLOAD = "mapPayload";
+    // Saved state shares the binder transaction buffer with everything else the activity saves
+    private static final int MAX_SAVED_STATE_SIZE = 64 * 1024; // bytes
+
+    private static final Map<String, MapPayload> registry = new ConcurrentHashMap<>();
+
+    public final MapTarget target;
+    public final MapOptions options;
+    public final List<MapMarker> markers;
+    public final List<MapExplore> explores;
+
+    public MapPayload(MapTarget target, MapOptions options, List<MapMarker> markers, List<MapExplore> explores) {
+        this.target = target;
+        this.options = (options != null) ? options : MapOptions.DEFAULT;
+        this.markers = markers;
+        this.explores = explores;
+    }
+
+    //region Registry
+
+    /**
+     * Registers the payload and puts its handle in the intent.
+     */
+    public Intent attachTo(Intent intent) {
+        String handle = UUID.randomUUID().toString();
+        registry.put(handle, this);
+        return intent.putExtra(EXTRA_HANDLE, handle);
+    }
+
+    /**
+     * @return the payload registered for the activity intent, the one from its saved state after process death,
+     * or an empty payload
+     */
+    static MapPayload obtain(Intent intent, Bundle savedInstanceState) {
+        String handle = (intent != null) ? intent.getStringExtra(EXTRA_HANDLE) : null;
+        if ((handle == null) && (savedInstanceState != null)) {
+            handle = savedInstanceState.getString(STATE_HANDLE);
+        }
+        MapPayload payload = (handle != null) ? registry.get(handle) : null;
+        if ((payload == null) && (savedInstanceState != null)) {
+            payload = unmarshall(savedInstanceState.getByteArray(STATE_PAYLOAD));
+            if ((payload != null) && (handle != null)) {
+                registry.put(handle, payload);
+            }
+        }
+        return (payload != null) ? payload : new MapPayload(null, null, null, null);
+    }
+
+    /**
+     * Saves the handle and, within the size limit, a copy of the payload for restoring after process death.
+     * A payload over the limit is saved without its markers and explores.
+     */
+    void saveState(Bundle outState, Intent intent) {
+        String handle = (intent != null) ? intent.getStringExtra(EXTRA_HANDLE) : null;
+        if (handle != null) {
+            outState.putString(STATE_HANDLE, handle);
+        }
+        byte[] data = marshall(this);
+        if (data.length > MAX_SAVED_STATE_SIZE) {
+            data = marshall(new MapPayload(target, options, null, null));
+        }
+        if (data.length <= MAX_SAVED_STATE_SIZE) {
+            outState.putByteArray(STATE_PAYLOAD, data);
+        }
+    }
+
+    private static byte[] marshall(MapPayload payload) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            payload.writeToParcel(parcel, 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static MapPayload unmarshall(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, data.length);
+            parcel.setDataPosition(0);
+            return CREATOR.createFromParcel(parcel);
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Drops the payload of an activity that is finishing.
+     */
+    static void release(Intent intent) {
+        String handle = (intent != null) ? intent.getStringExtra(EXTRA_HANDLE) : null;
+        if (handle != null) {
+            registry.remove(handle);
+        }
+    }
+
+    //endregion
+
+    //region Parcelable
+
+    private MapPayload(Parcel in) {
+        target = (in.readInt() != 0) ? MapTarget.readFromParcel(in) : null;
+        options = MapOptions.readFromParcel(in);
+        int markersCount = in.readInt();
+        markers = (markersCount >= 0) ? new ArrayList<>(markersCount) : null;
+        for (int index = 0; index < markersCount; index++) {
+            markers.add(MapMarker.readFromParcel(in));
+        }
+        int exploresCount = in.readInt();
+        explores = (exploresCount >= 0) ? new ArrayList<>(exploresCount) : null;
+        for (int index = 0; index < exploresCount; index++) {
+            explores.add(MapExplore.readFromParcel(in));
+        }
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt((target != null) ? 1 : 0);
+        if (target != null) {
+            target.writeToParcel(dest);
+        }
+        options.writeToParcel(dest);
+        dest.writeInt((markers != null) ? markers.size() : -1);
+        if (markers != null) {
+            for (MapMarker marker : markers) {
+                marker.writeToParcel(dest);
+            }
+        }
+        dest.writeInt((explores != null) ? explores.size() : -1);
+        if (explores != null) {
+            for (MapExplore explore : explores) {
+                explore.writeToParcel(dest);
+            }
+        }
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static final Creator<MapPayload> CREATOR = new Creator<MapPayload>() {
+        @Override
+        public MapPayload createFromParcel(Parcel in) {
+            return new MapPayload(in);
+        }
+
+        @Override
+        public MapPayload[] newArray(int size) {
+            return new MapPayload[size];
+        }
+    };
+
+    //endregion
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import android.os.Parcel;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.Map;
+
+import edu.illinois.covid.Constants;
+
+/**
+ * Initial camera target of the map: {"latitude": 40.1, "longitude": -88.2, "zoom": 17}.
+ */
+public final class MapTarget {
+
+    private static final String ARGUMENT_NAME = "target";
+
+    public final double latitude;
+    public final double longitude;
+    public final float zoom;
+
+    private MapTarget(double latitude, double longitude, float zoom) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.zoom = zoom;
+    }
+
+    public static MapTarget fromArgument(Object argument) {
+        Map targetMap = MapArguments.optMap(argument, ARGUMENT_NAME);
+        double latitude = MapArguments.optDouble(targetMap, "latitude", Constants.DEFAULT_INITIAL_CAMERA_POSITION.latitude, ARGUMENT_NAME);
+        double longitude = MapArguments.optDouble(targetMap, "longitude", Constants.DEFAULT_INITIAL_CAMERA_POSITION.longitude, ARGUMENT_NAME);
+        double zoom = MapArguments.optDouble(targetMap, "zoom", Constants.DEFAULT_CAMERA_ZOOM, ARGUMENT_NAME);
+        MapArguments.validateCoordinates(latitude, longitude, ARGUMENT_NAME);
+        if (zoom <= 0) {
+            throw new IllegalArgumentException(String.format("'%s.zoom' must be positive", ARGUMENT_NAME));
+        }
+        return new MapTarget(latitude, longitude, (float) zoom);
+    }
+
+    void writeToParcel(Parcel dest) {
+        dest.writeDouble(latitude);
+        dest.writeDouble(longitude);
+        dest.writeFloat(zoom);
+    }
+
+    static MapTarget readFromParcel(Parcel in) {
+        return new MapTarget(in.readDouble(), in.readDouble(), in.readFloat());
+    }
+
+    public CameraPosition toCameraPosition() {
+        return CameraPosition.fromLatLngZoom(new LatLng(latitude, longitude), zoom);
+    }
+}
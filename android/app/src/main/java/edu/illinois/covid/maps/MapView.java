@@ -17,8 +17,8 @@
 package edu.illinois.covid.maps;
 
 import android.annotation.SuppressLint;
-import android.app.Activity;
 import android.content.Context;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewParent;
@@ -34,6 +34,8 @@ import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polygon;
+import com.google.android.gms.maps.model.PolygonOptions;
 import com.google.gson.Gson;
 import com.google.maps.android.ui.IconGenerator;
 
@@ -44,24 +46,35 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import edu.illinois.covid.Constants;
+import edu.illinois.covid.EventTimeFormatter;
 import edu.illinois.covid.MainActivity;
 import edu.illinois.covid.R;
+import edu.illinois.covid.StartupTimeline;
 import edu.illinois.covid.Utils;
 
 public class MapView extends FrameLayout implements OnMapReadyCallback, GoogleMap.OnMapClickListener, GoogleMap.OnMarkerClickListener {
 
+    private static final String TAG = "MapView";
+
     private Context context;
     private int mapId;
     private Object args;
-    private Activity activity;
     private com.google.android.gms.maps.MapView googleMapView;
     private GoogleMap googleMap;
     private List<Object> explores;
     private List<Marker> markers;
+    private final Map<String, MapExplore> exploresById = new HashMap<>();
+    private final Map<String, Marker> markersByExploreId = new HashMap<>();
+    private ParkingLotIndex parkingLotIndex;
+    private List<Polygon> parkingLotPolygons;
+    private final Map<String, Polygon> parkingLotPolygonsById = new HashMap<>();
+    private int parkingLotsLevel;
 
     private IconGenerator iconGenerator;
     private View markerLayoutView;
@@ -76,14 +89,12 @@ public class MapView extends FrameLayout implements OnMapReadyCallback, GoogleMa
         this.context = context;
         this.mapId = mapId;
         this.args = args;
-        if (context instanceof Activity) {
-            this.activity = (Activity) context;
-        }
         init();
     }
 
     public void onDestroy() {
         clearMarkers();
+        clearParkingLots();
         if (googleMapView != null) {
             googleMapView.onDestroy();
         }
@@ -111,7 +122,7 @@ public class MapView extends FrameLayout implements OnMapReadyCallback, GoogleMa
     }
 
     private void init() {
-        initMarkerView();
+        // Marker views are created with the first markers, maps without explores do not need them
         initMapView();
     }
 
@@ -125,34 +136,37 @@ public class MapView extends FrameLayout implements OnMapReadyCallback, GoogleMa
     }
 
     private void initMarkerView() {
-        iconGenerator = new IconGenerator(activity);
-        iconGenerator.setBackground(activity.getDrawable(R.color.transparent));
-        LayoutInflater inflater = (activity != null) ? (LayoutInflater) activity.getSystemService(Context.LAYOUT_INFLATER_SERVICE) : null;
+        if (iconGenerator != null) {
+            return;
+        }
+        iconGenerator = new IconGenerator(context);
+        iconGenerator.setBackground(context.getDrawable(R.color.transparent));
+        LayoutInflater inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
         markerLayoutView = (inflater != null) ? inflater.inflate(R.layout.marker_info_layout, null) : null;
         markerGroupLayoutView = (inflater != null) ? inflater.inflate(R.layout.marker_group_layout, null) : null;
     }
 
     @Override
     public void onMapReady(GoogleMap map) {
+        StartupTimeline.mark("MapView.onMapReady");
         onResume();
         googleMap = map;
         enableMyLocation(enableLocationValue);
         googleMap.moveCamera(CameraUpdateFactory.newCameraPosition(CameraPosition.fromLatLngZoom(Constants.DEFAULT_INITIAL_CAMERA_POSITION, Constants.DEFAULT_CAMERA_ZOOM)));
         googleMap.setOnMapClickListener(this);
         googleMap.setOnMarkerClickListener(this);
+        googleMap.setOnCameraIdleListener(this::updateParkingLotsLevel);
         showExploresOnMap();
         relocateMyLocationButton();
     }
 
     private void acknowledgeLocationEnabledFromArgs() {
+        //{ "myLocationEnabled" : true}
         boolean myLocationEnabled = false;
-        if (args instanceof Map) {
-            //{ "myLocationEnabled" : true}
-            Map<String, Object> jsonArgs = (Map) args;
-            Object myLocationEnabledObj = jsonArgs.get("myLocationEnabled");
-            if (myLocationEnabledObj instanceof Boolean) {
-                myLocationEnabled = (Boolean) myLocationEnabledObj;
-            }
+        try {
+            myLocationEnabled = MapOptions.fromArgument(args).myLocationEnabled;
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid map view arguments: " + e.getMessage());
         }
         this.enableLocationValue = myLocationEnabled;
     }
@@ -174,8 +188,17 @@ public class MapView extends FrameLayout implements OnMapReadyCallback, GoogleMa
         }
     }
 
-    public void applyExplores(ArrayList explores, HashMap options) {
+    public void applyExplores(List<MapExplore> explores, MapOptions options) {
         this.explores = buildExplores(explores, options);
+        this.parkingLotIndex = ParkingLotIndex.build(explores);
+        exploresById.clear();
+        if (explores != null) {
+            for (MapExplore explore : explores) {
+                if (explore.id != null) {
+                    exploresById.put(explore.id, explore);
+                }
+            }
+        }
         if (mapLayoutPassed) {
             showExploresOnMap();
         }
@@ -190,57 +213,38 @@ public class MapView extends FrameLayout implements OnMapReadyCallback, GoogleMa
         }
     }
 
-    private List<Object> buildExplores(ArrayList rawExplores, HashMap options) {
-        if (rawExplores == null || rawExplores.size() == 0) {
+    private List<Object> buildExplores(List<MapExplore> mapExplores, MapOptions options) {
+        if (mapExplores == null || mapExplores.size() == 0) {
             return null;
         }
-        Object exploreLocationThresholdParam = (options != null) ? options.get("LocationThresoldDistance") : null;
-        double exploreLocationThresholdDistance = Constants.EXPLORE_LOCATION_THRESHOLD_DISTANCE;
-        if (exploreLocationThresholdParam instanceof Double) {
-            exploreLocationThresholdDistance = (Double) exploreLocationThresholdParam;
-        }
-        List<ArrayList<HashMap>> mappedExploreGroups = new ArrayList<>();
-        int rawExploresCount = rawExplores.size();
-        for (int rawExploresIndex = 0; rawExploresIndex < rawExploresCount; rawExploresIndex++) {
-            Object exploreObject = rawExplores.get(rawExploresIndex);
-            if (exploreObject instanceof HashMap) {
-                HashMap explore = (HashMap) exploreObject;
-                Integer exploreFloor = Utils.Explore.optLocationFloor(explore);
-                LatLng exploreLatLng = Utils.Explore.optLocationLatLng(explore);
-                if (exploreLatLng != null) {
-                    boolean exploreMapped = false;
-                    for (List<HashMap> mappedExploreGroup : mappedExploreGroups) {
-                        for (HashMap mappedExplore : mappedExploreGroup) {
-                            LatLng mappedExploreLatLng = Utils.Explore.optLocationLatLng(mappedExplore);
-                            Double distance = Utils.Location.getDistanceBetween(exploreLatLng, mappedExploreLatLng);
-                            Integer mappedExploreFloor = Utils.Explore.optLocationFloor(mappedExplore);
-                            boolean sameFloor = (exploreFloor == null && mappedExploreFloor == null) ||
-                                    ((exploreFloor != null && mappedExploreFloor != null) && exploreFloor.equals(mappedExploreFloor));
-                            if ((distance != null) && (distance < exploreLocationThresholdDistance) && sameFloor) {
-                                mappedExploreGroup.add(explore);
-                                exploreMapped = true;
-                                break;
-                            }
-                        }
-                        if (exploreMapped) {
+        double exploreLocationThresholdDistance = (options != null) ? options.locationThresholdDistance : Constants.EXPLORE_LOCATION_THRESHOLD_DISTANCE;
+        List<List<MapExplore>> mappedExploreGroups = new ArrayList<>();
+        float[] distance = new float[1];
+        for (MapExplore explore : mapExplores) {
+            if (explore.hasLocation) {
+                boolean exploreMapped = false;
+                for (List<MapExplore> mappedExploreGroup : mappedExploreGroups) {
+                    for (MapExplore mappedExplore : mappedExploreGroup) {
+                        android.location.Location.distanceBetween(explore.latitude, explore.longitude, mappedExplore.latitude, mappedExplore.longitude, distance);
+                        if ((distance[0] < exploreLocationThresholdDistance) && explore.isOnSameFloor(mappedExplore)) {
+                            mappedExploreGroup.add(explore);
+                            exploreMapped = true;
                             break;
                         }
                     }
-                    if (!exploreMapped) {
-                        ArrayList<HashMap> mappedExploreGroup = new ArrayList<>(Collections.singletonList(explore));
-                        mappedExploreGroups.add(mappedExploreGroup);
+                    if (exploreMapped) {
+                        break;
                     }
                 }
+                if (!exploreMapped) {
+                    List<MapExplore> mappedExploreGroup = new ArrayList<>(Collections.singletonList(explore));
+                    mappedExploreGroups.add(mappedExploreGroup);
+                }
             }
         }
-        List<Object> resultExplores = new ArrayList<>();
-        for (List<HashMap> mappedExploreGroup : mappedExploreGroups) {
-            if (mappedExploreGroup.size() == 1) {
-                HashMap firstExplore = mappedExploreGroup.get(0);
-                resultExplores.add(firstExplore);
-            } else {
-                resultExplores.add(mappedExploreGroup);
-            }
+        List<Object> resultExplores = new ArrayList<>(mappedExploreGroups.size());
+        for (List<MapExplore> mappedExploreGroup : mappedExploreGroups) {
+            resultExplores.add(MapExplore.toMarkerData(mappedExploreGroup));
         }
         return resultExplores;
     }
@@ -251,18 +255,22 @@ public class MapView extends FrameLayout implements OnMapReadyCallback, GoogleMa
         }
         clearMarkers();
         if (explores != null && explores.size() > 0) {
+            initMarkerView();
             markers = new ArrayList<>();
+            EventTimeFormatter eventTimeFormatter = new EventTimeFormatter(getContext());
             for (Object explore : explores) {
-                MarkerOptions markerOptions = Utils.Explore.constructMarkerOptions(getContext(), explore, markerLayoutView, markerGroupLayoutView, iconGenerator);
+                MarkerOptions markerOptions = Utils.Explore.constructMarkerOptions(getContext(), explore, markerLayoutView, markerGroupLayoutView, iconGenerator, eventTimeFormatter);
                 if (markerOptions != null) {
                     Marker marker = googleMap.addMarker(markerOptions);
                     JSONObject tagJson = Utils.Explore.constructMarkerTagJson(getContext(), marker.getTitle(), explore);
                     marker.setTag(tagJson);
                     markers.add(marker);
+                    registerMarker(marker, explore);
                 }
             }
         }
         updateMarkers();
+        showParkingLots();
         moveCameraToSpecificPosition();
     }
 
@@ -274,8 +282,133 @@ public class MapView extends FrameLayout implements OnMapReadyCallback, GoogleMa
             markers.clear();
             markers = null;
         }
+        markersByExploreId.clear();
     }
 
+    private void registerMarker(Marker marker, Object markerData) {
+        if (markerData instanceof List) {
+            for (Object exploreData : (List) markerData) {
+                registerMarker(marker, exploreData);
+            }
+        } else {
+            String exploreId = Utils.Explore.getExploreId(markerData);
+            if (exploreId != null) {
+                markersByExploreId.put(exploreId, marker);
+            }
+        }
+    }
+
+    //region Live updates
+
+    /**
+     * Applies live attribute changes, such as parking availability, laundry or dining status, keyed by explore id.
+     * Only the markers and parking lot outlines of the changed explores are rendered again.
+     */
+    public void patchExplores(Map<String, Map> patches) {
+        Set<Marker> changedMarkers = new LinkedHashSet<>();
+        for (Map.Entry<String, Map> patch : patches.entrySet()) {
+            MapExplore explore = exploresById.get(patch.getKey());
+            if ((explore == null) || !explore.applyPatch(patch.getValue())) {
+                continue;
+            }
+            Marker marker = markersByExploreId.get(explore.id);
+            if (marker != null) {
+                changedMarkers.add(marker);
+            }
+            Polygon polygon = parkingLotPolygonsById.get(explore.id);
+            if (polygon != null) {
+                polygon.setStrokeColor(context.getResources().getColor(Utils.Explore.getExplorePolygonColorResource(explore.getRawData())));
+            }
+        }
+        for (Marker marker : changedMarkers) {
+            refreshMarker(marker);
+        }
+    }
+
+    private void refreshMarker(Marker marker) {
+        Object markerData = Utils.Explore.optExploreMarkerRawData(marker);
+        if ((markerData == null) || (iconGenerator == null)) {
+            return;
+        }
+        // The marker shares the raw data of its explores, which the patch has already updated
+        MarkerOptions markerOptions = Utils.Explore.constructMarkerOptions(getContext(), markerData, markerLayoutView, markerGroupLayoutView, iconGenerator);
+        if (markerOptions == null) {
+            return;
+        }
+        marker.setTitle(markerOptions.getTitle());
+        marker.setSnippet(markerOptions.getSnippet());
+        marker.setIcon(markerOptions.getIcon());
+        marker.setTag(Utils.Explore.constructMarkerTagJson(getContext(), markerOptions.getTitle(), markerData));
+        // Re-apply the appearance of the current zoom to the new icon
+        boolean singleExploreMarker = Utils.Explore.optSingleExploreMarker(marker);
+        Utils.Explore.updateCustomMarkerAppearance(getContext(), marker, singleExploreMarker, cameraZoom, 0.0f, markerLayoutView, markerGroupLayoutView, iconGenerator);
+        if (marker.isInfoWindowShown()) {
+            marker.showInfoWindow();
+        }
+    }
+
+    //endregion
+
+    //region Parking lots
+
+    private void showParkingLots() {
+        clearParkingLots();
+        if ((parkingLotIndex == null) || (parkingLotIndex.getLotCount() == 0)) {
+            return;
+        }
+        // Build all outlines first, then add them in a single pass
+        parkingLotsLevel = PolylineLevels.levelForZoom(googleMap.getCameraPosition().zoom);
+        int lotCount = parkingLotIndex.getLotCount();
+        List<PolygonOptions> polygonOptionsList = new ArrayList<>(lotCount);
+        for (int lot = 0; lot < lotCount; lot++) {
+            List<LatLng> outline = parkingLotIndex.getOutline(lot, PolylineLevels.getLevelCount() - 1);
+            List<LatLng> levelOutline = parkingLotIndex.getOutline(lot, parkingLotsLevel);
+            polygonOptionsList.add(Utils.Explore.constructPolygonOptions(context, parkingLotIndex.getLot(lot).getRawData(),
+                    (levelOutline != null) ? levelOutline : outline).visible(levelOutline != null));
+        }
+        parkingLotPolygons = new ArrayList<>(lotCount);
+        for (PolygonOptions polygonOptions : polygonOptionsList) {
+            parkingLotPolygons.add(googleMap.addPolygon(polygonOptions));
+        }
+        for (int lot = 0; lot < lotCount; lot++) {
+            String lotId = parkingLotIndex.getLot(lot).id;
+            if (lotId != null) {
+                parkingLotPolygonsById.put(lotId, parkingLotPolygons.get(lot));
+            }
+        }
+    }
+
+    private void updateParkingLotsLevel() {
+        if ((parkingLotPolygons == null) || (parkingLotIndex == null)) {
+            return;
+        }
+        int level = PolylineLevels.levelForZoom(googleMap.getCameraPosition().zoom);
+        if (level == parkingLotsLevel) {
+            return;
+        }
+        parkingLotsLevel = level;
+        for (int lot = 0; lot < parkingLotPolygons.size(); lot++) {
+            Polygon polygon = parkingLotPolygons.get(lot);
+            List<LatLng> outline = parkingLotIndex.getOutline(lot, level);
+            if (outline != null) {
+                polygon.setPoints(outline);
+            }
+            polygon.setVisible(outline != null); // smaller than a display point at this zoom
+        }
+    }
+
+    private void clearParkingLots() {
+        if (parkingLotPolygons != null) {
+            for (Polygon polygon : parkingLotPolygons) {
+                polygon.remove();
+            }
+            parkingLotPolygons = null;
+        }
+        parkingLotPolygonsById.clear();
+    }
+
+    //endregion
+
     private void updateMarkers() {
         float currentCameraZoom = googleMap.getCameraPosition().zoom;
         boolean updateMarkerInfo = (currentCameraZoom != cameraZoom);
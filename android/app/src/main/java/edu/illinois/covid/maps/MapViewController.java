@@ -20,8 +20,9 @@ import android.content.Context;
 import android.util.Log;
 import android.view.View;
 
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodCall;
@@ -51,6 +52,9 @@ public class MapViewController implements PlatformView, MethodChannel.MethodCall
             if ("placePOIs".equals(methodCall.method)) {
                 showExploresOnMap(methodCall.arguments);
                 result.success(true);
+            } else if ("patchPOIs".equals(methodCall.method)) {
+                patchExploresOnMap(methodCall.arguments);
+                result.success(true);
             } else if ("enable".equals(methodCall.method)) {
                 enableMap(methodCall.arguments);
                 result.success(true);
@@ -64,6 +68,9 @@ public class MapViewController implements PlatformView, MethodChannel.MethodCall
             String errorMsg = String.format("Ignoring exception '%s'. See https://github.com/flutter/flutter/issues/29092 for details.", exception.toString());
             Log.e("MapView", errorMsg);
             exception.printStackTrace();
+        } catch (IllegalArgumentException exception) {
+            Log.e("MapView", String.format("Invalid arguments for '%s': %s", methodCall.method, exception.getMessage()));
+            result.error("MapView", exception.getMessage(), null);
         }
     }
 
@@ -93,16 +100,45 @@ public class MapViewController implements PlatformView, MethodChannel.MethodCall
         mapView.enableMyLocation(enable);
     }
 
+    /**
+     * @throws IllegalArgumentException if the explores argument or the options are malformed, malformed single explores are skipped
+     */
     private void showExploresOnMap(Object params) {
-        ArrayList explores = null;
-        HashMap options = null;
-        if (params instanceof HashMap) {
-            HashMap map = (HashMap) params;
-            explores = (ArrayList) map.get("explores");
-            options = (HashMap) map.get("options");
+        List<MapExplore> explores = null;
+        MapOptions options = null;
+        if (params instanceof Map) {
+            Map map = (Map) params;
+            explores = MapExplore.listFromArgument(map.get("explores"));
+            options = MapOptions.fromArgument(map.get("options"));
         }
         if (mapView != null) {
             mapView.applyExplores(explores, options);
         }
     }
+
+    /**
+     * @throws IllegalArgumentException if the arguments or the patches map are malformed, malformed single patches are skipped
+     */
+    private void patchExploresOnMap(Object params) {
+        // { "patches": { "<explore id>": { "<attribute>": <value>, ... }, ... } }
+        Map paramsMap = MapArguments.optMap(params, "arguments");
+        Map patchesMap = (paramsMap != null) ? MapArguments.optMap(paramsMap.get("patches"), "patches") : null;
+        if ((patchesMap == null) || patchesMap.isEmpty()) {
+            return;
+        }
+        Map<String, Map> patches = new HashMap<>(patchesMap.size());
+        for (Object entryObject : patchesMap.entrySet()) {
+            Map.Entry entry = (Map.Entry) entryObject;
+            String exploreId = String.valueOf(entry.getKey());
+            Object attributes = entry.getValue();
+            if (attributes instanceof Map) {
+                patches.put(exploreId, (Map) attributes);
+            } else if (attributes != null) {
+                Log.w("MapView", String.format("Skipping patch for '%s': not a map", exploreId));
+            }
+        }
+        if (mapView != null) {
+            mapView.patchExplores(patches);
+        }
+    }
 }
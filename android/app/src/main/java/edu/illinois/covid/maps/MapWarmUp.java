@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.maps.MapsInitializer;
+
+/**
+ * Initializes the Maps SDK and creates an offscreen map once, so that the first MapView or MapActivity does not pay
+ * for loading the Maps module and its renderer. Flutter requests it through the "mapWarmUp" call when the user opens
+ * a screen that leads to a map, it runs on the main thread once that screen has settled, never during startup.
+ * Can be turned off through the "edu.illinois.covid.maps.WARM_UP" manifest meta-data.
+ */
+public class MapWarmUp {
+
+    private static final String TAG = "MapWarmUp";
+
+    private static final String META_DATA_ENABLED = "edu.illinois.covid.maps.WARM_UP";
+    private static final long START_DELAY = 500; // ms after the main thread becomes idle, past the page transition
+    private static final long MAP_READY_TIMEOUT = 10000;
+
+    private static boolean scheduled;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private com.google.android.gms.maps.MapView offscreenMapView;
+    private long startTime;
+
+    private MapWarmUp(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Schedules the warm-up once per process if it is enabled and the device is not low on memory. Main thread only.
+     */
+    public static void scheduleIfEnabled(Context context) {
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        Context appContext = context.getApplicationContext();
+        if (!isEnabled(appContext)) {
+            return;
+        }
+        ActivityManager activityManager = (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+        if ((activityManager != null) && activityManager.isLowRamDevice()) {
+            Log.d(TAG, "Skipped on low RAM device");
+            return;
+        }
+        MapWarmUp warmUp = new MapWarmUp(appContext);
+        Looper.myQueue().addIdleHandler(() -> {
+            warmUp.mainHandler.postDelayed(warmUp::start, START_DELAY);
+            return false; // run once
+        });
+    }
+
+    private static boolean isEnabled(Context context) {
+        try {
+            ApplicationInfo applicationInfo = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+            Bundle metaData = applicationInfo.metaData;
+            return (metaData == null) || metaData.getBoolean(META_DATA_ENABLED, true);
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "Failed to read meta-data", e);
+            return false;
+        }
+    }
+
+    private void start() {
+        startTime = SystemClock.elapsedRealtime();
+        int status = MapsInitializer.initialize(context);
+        long initializeTime = SystemClock.elapsedRealtime() - startTime;
+        if (status != ConnectionResult.SUCCESS) {
+            Log.d(TAG, String.format("Maps SDK not available (%d), initialize took %d ms", status, initializeTime));
+            return;
+        }
+        Log.d(TAG, String.format("Maps SDK initialized in %d ms", initializeTime));
+
+        // Creating a map loads the renderer, the view is never attached and is destroyed once the map is ready
+        offscreenMapView = new com.google.android.gms.maps.MapView(context);
+        offscreenMapView.onCreate(null);
+        offscreenMapView.getMapAsync(googleMap -> {
+            Log.d(TAG, String.format("Offscreen map ready in %d ms", (SystemClock.elapsedRealtime() - startTime)));
+            finish();
+        });
+        mainHandler.postDelayed(this::finish, MAP_READY_TIMEOUT);
+    }
+
+    private void finish() {
+        mainHandler.removeCallbacksAndMessages(null);
+        if (offscreenMapView != null) {
+            offscreenMapView.onDestroy();
+            offscreenMapView = null;
+        }
+    }
+}
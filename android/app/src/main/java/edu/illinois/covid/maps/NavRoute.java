@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Navigation model of {@link MapDirectionsActivity}: a route made of legs, each leg made of steps with an instruction
+ * and a polyline. Step coordinates are kept as [lat0, lng0, lat1, lng1, ...] arrays.
+ */
+final class NavRoute {
+
+    final String travelMode;
+    final List<Leg> legs;
+    private PolylineLevels polylineLevels;
+
+    NavRoute(String travelMode, List<Leg> legs) {
+        this.travelMode = travelMode;
+        this.legs = legs;
+    }
+
+    int getDistance() {
+        int distance = 0;
+        for (Leg leg : legs) {
+            distance += leg.distance;
+        }
+        return distance;
+    }
+
+    int getDuration() {
+        int duration = 0;
+        for (Leg leg : legs) {
+            duration += leg.duration;
+        }
+        return duration;
+    }
+
+    Step getStep(int legIndex, int stepIndex) {
+        if ((0 <= legIndex) && (legIndex < legs.size())) {
+            List<Step> steps = legs.get(legIndex).steps;
+            if ((0 <= stepIndex) && (stepIndex < steps.size())) {
+                return steps.get(stepIndex);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return all points of the route, the shared end and start points of consecutive steps are included once
+     */
+    List<LatLng> toPolylinePoints() {
+        List<LatLng> points = new ArrayList<>();
+        for (Leg leg : legs) {
+            for (Step step : leg.steps) {
+                int pointCount = step.getPointCount();
+                for (int index = 0; index < pointCount; index++) {
+                    LatLng point = new LatLng(step.getLatitude(index), step.getLongitude(index));
+                    if ((index > 0) || points.isEmpty() || !points.get(points.size() - 1).equals(point)) {
+                        points.add(point);
+                    }
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * @return level of detail variants of the route polyline, computed on first use
+     */
+    synchronized PolylineLevels getPolylineLevels() {
+        if (polylineLevels == null) {
+            polylineLevels = new PolylineLevels(toPolylinePoints());
+        }
+        return polylineLevels;
+    }
+
+    //region Leg
+
+    static final class Leg {
+        final List<Step> steps;
+        final int distance; // meters
+        final int duration; // seconds
+
+        Leg(List<Step> steps, int distance, int duration) {
+            this.steps = steps;
+            this.distance = distance;
+            this.duration = duration;
+        }
+    }
+
+    //endregion
+
+    //region Step
+
+    static final class Step {
+        final String instruction; // html
+        final double[] coordinates;
+        final int distance; // meters
+        final int duration; // seconds
+
+        Step(String instruction, double[] coordinates, int distance, int duration) {
+            this.instruction = instruction;
+            this.coordinates = coordinates;
+            this.distance = distance;
+            this.duration = duration;
+        }
+
+        int getPointCount() {
+            return coordinates.length / 2;
+        }
+
+        double getLatitude(int pointIndex) {
+            return coordinates[pointIndex * 2];
+        }
+
+        double getLongitude(int pointIndex) {
+            return coordinates[pointIndex * 2 + 1];
+        }
+    }
+
+    //endregion
+}
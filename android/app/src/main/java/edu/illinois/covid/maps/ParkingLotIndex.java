@@ -0,0 +1,285 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.illinois.covid.Utils;
+
+/**
+ * Outlines of the parking lot explores. Vertices of all lots are kept in a single primitive buffer together with their
+ * Douglas-Peucker significance, so outlines for a zoom level are extracted without simplifying again.
+ * A binary tree of lot bounding boxes, built over lots in k-d order, answers which lot contains a point by visiting
+ * only the boxes that contain it. Queries are not thread safe.
+ */
+final class ParkingLotIndex {
+
+    private static final double METERS_PER_DEGREE = 111320.0d;
+    private static final int LEAF_SIZE = 4;
+
+    private final List<MapExplore> lots;
+
+    // Outline of lot i is the vertices [lotVertexStart[i], lotVertexStart[i + 1]), stored as lat, lng pairs
+    private final int[] lotVertexStart;
+    private final double[] vertices;
+    private final double[] significance; // meters
+
+    // Implicit complete binary tree, node n has children 2n and 2n + 1, leaf k holds lots leafLots[k * LEAF_SIZE ...]
+    private final int[] leafLots;
+    private final int leafBase;
+    private final double[] nodeMinLatitude;
+    private final double[] nodeMinLongitude;
+    private final double[] nodeMaxLatitude;
+    private final double[] nodeMaxLongitude;
+    private final int[] stack;
+
+    private ParkingLotIndex(List<MapExplore> lots) {
+        this.lots = lots;
+        int lotCount = lots.size();
+        lotVertexStart = new int[lotCount + 1];
+        int vertexCount = 0;
+        for (int lot = 0; lot < lotCount; lot++) {
+            lotVertexStart[lot] = vertexCount;
+            vertexCount += getRingSize(lots.get(lot).getPolygonCoordinates());
+        }
+        lotVertexStart[lotCount] = vertexCount;
+        vertices = new double[vertexCount * 2];
+        significance = new double[vertexCount];
+        for (int lot = 0; lot < lotCount; lot++) {
+            double[] polygon = lots.get(lot).getPolygonCoordinates();
+            int start = lotVertexStart[lot];
+            int ringSize = lotVertexStart[lot + 1] - start;
+            System.arraycopy(polygon, 0, vertices, start * 2, ringSize * 2);
+            computeRingSignificance(start, ringSize);
+        }
+
+        int leafCount = Math.max(1, (lotCount + LEAF_SIZE - 1) / LEAF_SIZE);
+        int base = 1;
+        int depth = 0;
+        while (base < leafCount) {
+            base <<= 1;
+            depth++;
+        }
+        leafBase = base;
+        leafLots = new int[lotCount];
+        nodeMinLatitude = new double[2 * base];
+        nodeMinLongitude = new double[2 * base];
+        nodeMaxLatitude = new double[2 * base];
+        nodeMaxLongitude = new double[2 * base];
+        stack = new int[depth + 2];
+        buildTree();
+    }
+
+    /**
+     * @return index of the PARKING explores that have an outline
+     */
+    static ParkingLotIndex build(List<MapExplore> explores) {
+        List<MapExplore> lots = new ArrayList<>();
+        if (explores != null) {
+            for (MapExplore explore : explores) {
+                if ((explore.type == Utils.ExploreType.PARKING) && (getRingSize(explore.getPolygonCoordinates()) >= 3)) {
+                    lots.add(explore);
+                }
+            }
+        }
+        return new ParkingLotIndex(lots);
+    }
+
+    int getLotCount() {
+        return lots.size();
+    }
+
+    MapExplore getLot(int lot) {
+        return lots.get(lot);
+    }
+
+    /**
+     * @param level a {@link PolylineLevels} level
+     * @return the lot outline simplified for the level, null if the lot is smaller than a display point at the level zoom
+     */
+    List<LatLng> getOutline(int lot, int level) {
+        int start = lotVertexStart[lot];
+        int end = lotVertexStart[lot + 1];
+        boolean fullDetail = (level >= PolylineLevels.getLevelCount() - 1);
+        double tolerance = fullDetail ? 0.0d : PolylineLevels.getTolerance(level, vertices[start * 2]);
+        List<LatLng> outline = new ArrayList<>(end - start);
+        for (int vertex = start; vertex < end; vertex++) {
+            if (fullDetail || (significance[vertex] > tolerance)) {
+                outline.add(new LatLng(vertices[vertex * 2], vertices[vertex * 2 + 1]));
+            }
+        }
+        return (outline.size() >= 3) ? outline : null;
+    }
+
+    /**
+     * @return index of a lot that contains the point, -1 if there is none
+     */
+    int findLotContaining(double latitude, double longitude) {
+        if (lots.isEmpty()) {
+            return -1;
+        }
+        int stackSize = 0;
+        stack[stackSize++] = 1;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if ((latitude < nodeMinLatitude[node]) || (latitude > nodeMaxLatitude[node]) ||
+                    (longitude < nodeMinLongitude[node]) || (longitude > nodeMaxLongitude[node])) {
+                continue;
+            }
+            if (node >= leafBase) {
+                int first = (node - leafBase) * LEAF_SIZE;
+                int last = Math.min(first + LEAF_SIZE, leafLots.length);
+                for (int index = first; index < last; index++) {
+                    int lot = leafLots[index];
+                    if (containsPoint(lot, latitude, longitude)) {
+                        return lot;
+                    }
+                }
+            } else {
+                stack[stackSize++] = 2 * node + 1;
+                stack[stackSize++] = 2 * node;
+            }
+        }
+        return -1;
+    }
+
+    //region Helpers
+
+    // Number of outline vertices without the closing vertex that repeats the first one
+    private static int getRingSize(double[] polygon) {
+        if (polygon == null) {
+            return 0;
+        }
+        int pointCount = polygon.length / 2;
+        if ((pointCount > 1) && (polygon[0] == polygon[polygon.length - 2]) && (polygon[1] == polygon[polygon.length - 1])) {
+            pointCount--;
+        }
+        return pointCount;
+    }
+
+    private void computeRingSignificance(int start, int ringSize) {
+        // Simplify the ring as an open polyline that returns to its first vertex
+        double originLatitude = vertices[start * 2];
+        double longitudeScale = Math.cos(Math.toRadians(originLatitude));
+        double[] x = new double[ringSize + 1];
+        double[] y = new double[ringSize + 1];
+        for (int index = 0; index <= ringSize; index++) {
+            int vertex = start + (index % ringSize);
+            x[index] = vertices[vertex * 2 + 1] * longitudeScale * METERS_PER_DEGREE;
+            y[index] = vertices[vertex * 2] * METERS_PER_DEGREE;
+        }
+        double[] ringSignificance = PolylineLevels.computeSignificance(x, y);
+        System.arraycopy(ringSignificance, 0, significance, start, ringSize);
+    }
+
+    private void buildTree() {
+        int lotCount = lots.size();
+        for (int lot = 0; lot < lotCount; lot++) {
+            leafLots[lot] = lot;
+        }
+        double[] centerLatitude = new double[lotCount];
+        double[] centerLongitude = new double[lotCount];
+        double[][] lotBounds = new double[lotCount][];
+        for (int lot = 0; lot < lotCount; lot++) {
+            lotBounds[lot] = computeBounds(lot);
+            centerLatitude[lot] = (lotBounds[lot][0] + lotBounds[lot][2]) / 2.0d;
+            centerLongitude[lot] = (lotBounds[lot][1] + lotBounds[lot][3]) / 2.0d;
+        }
+        sortKd(0, leafBase, true, centerLatitude, centerLongitude);
+
+        Arrays.fill(nodeMinLatitude, Double.POSITIVE_INFINITY);
+        Arrays.fill(nodeMinLongitude, Double.POSITIVE_INFINITY);
+        Arrays.fill(nodeMaxLatitude, Double.NEGATIVE_INFINITY);
+        Arrays.fill(nodeMaxLongitude, Double.NEGATIVE_INFINITY);
+        for (int index = 0; index < lotCount; index++) {
+            int node = leafBase + index / LEAF_SIZE;
+            double[] bounds = lotBounds[leafLots[index]];
+            nodeMinLatitude[node] = Math.min(nodeMinLatitude[node], bounds[0]);
+            nodeMinLongitude[node] = Math.min(nodeMinLongitude[node], bounds[1]);
+            nodeMaxLatitude[node] = Math.max(nodeMaxLatitude[node], bounds[2]);
+            nodeMaxLongitude[node] = Math.max(nodeMaxLongitude[node], bounds[3]);
+        }
+        for (int node = leafBase - 1; node >= 1; node--) {
+            int left = 2 * node;
+            int right = left + 1;
+            nodeMinLatitude[node] = Math.min(nodeMinLatitude[left], nodeMinLatitude[right]);
+            nodeMinLongitude[node] = Math.min(nodeMinLongitude[left], nodeMinLongitude[right]);
+            nodeMaxLatitude[node] = Math.max(nodeMaxLatitude[left], nodeMaxLatitude[right]);
+            nodeMaxLongitude[node] = Math.max(nodeMaxLongitude[left], nodeMaxLongitude[right]);
+        }
+    }
+
+    // [minLatitude, minLongitude, maxLatitude, maxLongitude]
+    private double[] computeBounds(int lot) {
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int vertex = lotVertexStart[lot]; vertex < lotVertexStart[lot + 1]; vertex++) {
+            bounds[0] = Math.min(bounds[0], vertices[vertex * 2]);
+            bounds[1] = Math.min(bounds[1], vertices[vertex * 2 + 1]);
+            bounds[2] = Math.max(bounds[2], vertices[vertex * 2]);
+            bounds[3] = Math.max(bounds[3], vertices[vertex * 2 + 1]);
+        }
+        return bounds;
+    }
+
+    // Orders the lots of the subtree with leaves [firstLeaf, firstLeaf + leafSpan) by splitting them at the median
+    // center, alternating the axis, so that the lots of each tree node are close to each other
+    private void sortKd(int firstLeaf, int leafSpan, boolean byLatitude, double[] centerLatitude, double[] centerLongitude) {
+        int from = firstLeaf * LEAF_SIZE;
+        int to = Math.min((firstLeaf + leafSpan) * LEAF_SIZE, leafLots.length);
+        if ((leafSpan <= 1) || (to - from <= LEAF_SIZE)) {
+            return;
+        }
+        double[] keys = byLatitude ? centerLatitude : centerLongitude;
+        // Insertion sort, lot counts are small
+        for (int index = from + 1; index < to; index++) {
+            int lot = leafLots[index];
+            int position = index;
+            while ((position > from) && (keys[leafLots[position - 1]] > keys[lot])) {
+                leafLots[position] = leafLots[position - 1];
+                position--;
+            }
+            leafLots[position] = lot;
+        }
+        int halfSpan = leafSpan / 2;
+        sortKd(firstLeaf, halfSpan, !byLatitude, centerLatitude, centerLongitude);
+        sortKd(firstLeaf + halfSpan, halfSpan, !byLatitude, centerLatitude, centerLongitude);
+    }
+
+    // Even-odd rule, lots are small enough to treat latitude and longitude as planar coordinates
+    private boolean containsPoint(int lot, double latitude, double longitude) {
+        int start = lotVertexStart[lot];
+        int end = lotVertexStart[lot + 1];
+        boolean inside = false;
+        for (int vertex = start, previous = end - 1; vertex < end; previous = vertex++) {
+            double vertexLatitude = vertices[vertex * 2];
+            double vertexLongitude = vertices[vertex * 2 + 1];
+            double previousLatitude = vertices[previous * 2];
+            double previousLongitude = vertices[previous * 2 + 1];
+            if (((vertexLatitude > latitude) != (previousLatitude > latitude)) &&
+                    (longitude < (previousLongitude - vertexLongitude) * (latitude - vertexLatitude) / (previousLatitude - vertexLatitude) + vertexLongitude)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    //endregion
+}
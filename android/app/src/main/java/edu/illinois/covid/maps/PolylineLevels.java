@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Level of detail variants of a polyline. A single Douglas-Peucker pass assigns every point the largest tolerance at
+ * which the simplification still keeps it; each level then keeps the points whose significance exceeds the size of
+ * a display point at the level zoom, so the drawn vertex count depends on the zoom rather than on the route length.
+ */
+final class PolylineLevels {
+
+    // Zoom levels with a simplified variant, above the last one the full polyline is drawn
+    private static final int[] LEVEL_ZOOMS = {8, 10, 12, 14, 16};
+    // Meters per map dp at zoom 0 on the equator, map tiles are 256 dp wide
+    private static final double EQUATOR_METERS_PER_DP = 156543.03392d;
+    private static final double TOLERANCE_DP = 1.0d;
+    private static final double METERS_PER_DEGREE = 111320.0d;
+
+    private final List<List<LatLng>> levels;
+
+    PolylineLevels(List<LatLng> points) {
+        int pointCount = points.size();
+        double originLatitude = (pointCount > 0) ? points.get(0).latitude : 0.0d;
+        double longitudeScale = Math.cos(Math.toRadians(originLatitude));
+        double[] x = new double[pointCount];
+        double[] y = new double[pointCount];
+        for (int index = 0; index < pointCount; index++) {
+            LatLng point = points.get(index);
+            x[index] = point.longitude * longitudeScale * METERS_PER_DEGREE;
+            y[index] = point.latitude * METERS_PER_DEGREE;
+        }
+        double[] significance = computeSignificance(x, y);
+
+        levels = new ArrayList<>(LEVEL_ZOOMS.length + 1);
+        List<LatLng> previousLevel = null;
+        for (int levelIndex = 0; levelIndex < LEVEL_ZOOMS.length; levelIndex++) {
+            double tolerance = getTolerance(levelIndex, originLatitude);
+            List<LatLng> level = new ArrayList<>();
+            for (int index = 0; index < pointCount; index++) {
+                if (significance[index] > tolerance) {
+                    level.add(points.get(index));
+                }
+            }
+            // Share identical consecutive levels
+            if ((previousLevel != null) && (previousLevel.size() == level.size())) {
+                level = previousLevel;
+            }
+            levels.add(level);
+            previousLevel = level;
+        }
+        levels.add(points);
+    }
+
+    List<LatLng> getPoints(int level) {
+        return levels.get(level);
+    }
+
+    //region Levels
+
+    /**
+     * Number of levels, the last level is the full detail one.
+     */
+    static int getLevelCount() {
+        return LEVEL_ZOOMS.length + 1;
+    }
+
+    /**
+     * @return index of the coarsest level that is accurate to a display point at the zoom
+     */
+    static int levelForZoom(float zoom) {
+        for (int index = 0; index < LEVEL_ZOOMS.length; index++) {
+            if (zoom <= LEVEL_ZOOMS[index]) {
+                return index;
+            }
+        }
+        return LEVEL_ZOOMS.length;
+    }
+
+    /**
+     * @return size of a display point in meters at the zoom of a simplified level
+     */
+    static double getTolerance(int level, double latitude) {
+        return TOLERANCE_DP * EQUATOR_METERS_PER_DP * Math.cos(Math.toRadians(latitude)) / (1 << LEVEL_ZOOMS[level]);
+    }
+
+    //endregion
+
+    //region Douglas-Peucker
+
+    /**
+     * @return for each point the largest tolerance, in the units of the coordinates, at which Douglas-Peucker keeps it;
+     * end points are always kept
+     */
+    static double[] computeSignificance(double[] x, double[] y) {
+        int pointCount = x.length;
+        double[] significance = new double[pointCount];
+        if (pointCount == 0) {
+            return significance;
+        }
+        significance[0] = significance[pointCount - 1] = Double.POSITIVE_INFINITY;
+
+        // Explicit stack of [first, last] ranges, each range pops once and pushes at most two
+        int[] stackFirst = new int[pointCount];
+        int[] stackLast = new int[pointCount];
+        double[] stackLimit = new double[pointCount];
+        int stackSize = 0;
+        stackFirst[stackSize] = 0;
+        stackLast[stackSize] = pointCount - 1;
+        stackLimit[stackSize++] = Double.POSITIVE_INFINITY;
+        while (stackSize > 0) {
+            stackSize--;
+            int first = stackFirst[stackSize];
+            int last = stackLast[stackSize];
+            double limit = stackLimit[stackSize];
+            if (last - first < 2) {
+                continue;
+            }
+            int farthestIndex = first + 1;
+            double farthestDistanceSquared = -1.0d;
+            for (int index = first + 1; index < last; index++) {
+                double distanceSquared = segmentDistanceSquared(x[index], y[index], x[first], y[first], x[last], y[last]);
+                if (distanceSquared > farthestDistanceSquared) {
+                    farthestDistanceSquared = distanceSquared;
+                    farthestIndex = index;
+                }
+            }
+            // A point is never more significant than the split point of its enclosing range
+            double pointSignificance = Math.min(limit, Math.sqrt(farthestDistanceSquared));
+            significance[farthestIndex] = pointSignificance;
+            stackFirst[stackSize] = first;
+            stackLast[stackSize] = farthestIndex;
+            stackLimit[stackSize++] = pointSignificance;
+            stackFirst[stackSize] = farthestIndex;
+            stackLast[stackSize] = last;
+            stackLimit[stackSize++] = pointSignificance;
+        }
+        return significance;
+    }
+
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double fraction = (lengthSquared > 0) ? (((px - ax) * dx + (py - ay) * dy) / lengthSquared) : 0.0d;
+        fraction = Math.max(0.0d, Math.min(1.0d, fraction));
+        double ex = ax + fraction * dx - px;
+        double ey = ay + fraction * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    //endregion
+}
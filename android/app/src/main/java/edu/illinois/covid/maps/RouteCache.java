@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Small in-memory LRU cache of directions routes. Routes are keyed by the origin cell, the destination, the travel mode,
+ * the language of the instructions and, for modes that depend on traffic or schedules, the time bucket of the request,
+ * so repeat trips from about the same place to the same explore are served without routing.
+ * Routes start at the exact location of the user, so they are never written to storage.
+ * All methods may be called from any thread.
+ */
+final class RouteCache {
+
+    private static final int MAX_ENTRIES = 24;
+    private static final long MAX_AGE = 7 * 24 * 60 * 60 * 1000L; // ms
+    private static final long TIME_BUCKET = 15 * 60 * 1000L; // ms
+    private static final double ORIGIN_CELL_SIZE = 0.001d; // degrees, about 110 m
+    private static final double DESTINATION_PRECISION = 1e-5d; // degrees, about 1 m
+
+    private static RouteCache instance;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return (size() > MAX_ENTRIES);
+        }
+    };
+
+    RouteCache() {
+    }
+
+    static synchronized RouteCache getInstance() {
+        if (instance == null) {
+            instance = new RouteCache();
+        }
+        return instance;
+    }
+
+    /**
+     * @return the key of a route request made now in the current language
+     */
+    static String buildKey(double originLatitude, double originLongitude, double destinationLatitude, double destinationLongitude, String travelMode) {
+        return buildKey(originLatitude, originLongitude, destinationLatitude, destinationLongitude, travelMode,
+                System.currentTimeMillis(), Locale.getDefault().getLanguage());
+    }
+
+    static String buildKey(double originLatitude, double originLongitude, double destinationLatitude, double destinationLongitude, String travelMode,
+                           long time, String language) {
+        return String.format(Locale.US, "%d,%d|%d,%d|%s|%s|%d",
+                Math.round(originLatitude / ORIGIN_CELL_SIZE), Math.round(originLongitude / ORIGIN_CELL_SIZE),
+                Math.round(destinationLatitude / DESTINATION_PRECISION), Math.round(destinationLongitude / DESTINATION_PRECISION),
+                travelMode, language, getTimeBucket(travelMode, time));
+    }
+
+    NavRoute get(String key) {
+        return get(key, System.currentTimeMillis());
+    }
+
+    // The overloads taking a time let unit tests check expiry without waiting for it
+    synchronized NavRoute get(String key, long now) {
+        Entry entry = entries.get(key);
+        if ((entry != null) && isExpired(entry, now)) {
+            entries.remove(key);
+            return null;
+        }
+        return (entry != null) ? entry.route : null;
+    }
+
+    void put(String key, NavRoute route) {
+        put(key, route, System.currentTimeMillis());
+    }
+
+    synchronized void put(String key, NavRoute route, long time) {
+        entries.put(key, new Entry(route, time));
+    }
+
+    //region Helpers
+
+    private static long getTimeBucket(String travelMode, long time) {
+        // Walking and cycling routes do not depend on the time of the request
+        return ("DRIVING".equals(travelMode) || "TRANSIT".equals(travelMode)) ? (time / TIME_BUCKET) : 0;
+    }
+
+    private static boolean isExpired(Entry entry, long now) {
+        long timeBucket = getTimeBucket(entry.route.travelMode, entry.time);
+        return ((now - entry.time) > MAX_AGE) || ((timeBucket != 0) && (timeBucket != getTimeBucket(entry.route.travelMode, now)));
+    }
+
+    //endregion
+
+    //region Entry
+
+    private static final class Entry {
+        final NavRoute route;
+        final long time; // ms since epoch
+
+        Entry(NavRoute route, long time) {
+            this.route = route;
+            this.time = time;
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import java.util.List;
+
+/**
+ * Nearest route segment lookup for a {@link NavRoute}. Segments of all steps are projected to a local planar
+ * coordinate system in meters and stored in primitive arrays in route order; a binary tree of bounding boxes over runs of
+ * consecutive segments prunes the search. Queries start with the segments of the current and the next step, whose
+ * distance bounds the tree search, so an update while following the route visits O(log n) nodes.
+ * Queries do not allocate and are not thread safe.
+ */
+final class RouteGeometryIndex {
+
+    private static final double METERS_PER_DEGREE = 111320.0d;
+    private static final int LEAF_SIZE = 8;
+
+    private final double originLatitude;
+    private final double originLongitude;
+    private final double longitudeScale;
+
+    // Segment i goes from (ax[i], ay[i]) to (bx[i], by[i])
+    private final int segmentCount;
+    private final double[] ax;
+    private final double[] ay;
+    private final double[] bx;
+    private final double[] by;
+    private final int[] segmentLeg;
+    private final int[] segmentStep;
+
+    // Segments of step s of leg l are [stepSegmentStart[legStepOffset[l] + s], stepSegmentStart[legStepOffset[l] + s + 1])
+    private final int[] legStepOffset;
+    private final int[] stepSegmentStart;
+
+    // Implicit complete binary tree, node n has children 2n and 2n + 1, leaf k is node leafBase + k
+    private final int leafBase;
+    private final double[] nodeMinX;
+    private final double[] nodeMinY;
+    private final double[] nodeMaxX;
+    private final double[] nodeMaxY;
+    private final int[] stack;
+    private final double[] best = new double[2];
+
+    static final class Match {
+        int legIndex = -1;
+        int stepIndex = -1;
+        int segmentIndex = -1;
+        double distance; // meters
+        double fraction; // position of the nearest point along the segment, 0..1
+    }
+
+    RouteGeometryIndex(NavRoute route) {
+        List<NavRoute.Leg> legs = route.legs;
+        int stepsCount = 0;
+        int segmentsCount = 0;
+        double firstLatitude = Double.NaN;
+        double firstLongitude = 0.0d;
+        for (NavRoute.Leg leg : legs) {
+            stepsCount += leg.steps.size();
+            for (NavRoute.Step step : leg.steps) {
+                int pointCount = step.getPointCount();
+                segmentsCount += Math.max(0, pointCount - 1);
+                if (Double.isNaN(firstLatitude) && (pointCount > 0)) {
+                    firstLatitude = step.getLatitude(0);
+                    firstLongitude = step.getLongitude(0);
+                }
+            }
+        }
+        originLatitude = Double.isNaN(firstLatitude) ? 0.0d : firstLatitude;
+        originLongitude = firstLongitude;
+        longitudeScale = Math.cos(Math.toRadians(originLatitude));
+
+        segmentCount = segmentsCount;
+        ax = new double[segmentsCount];
+        ay = new double[segmentsCount];
+        bx = new double[segmentsCount];
+        by = new double[segmentsCount];
+        segmentLeg = new int[segmentsCount];
+        segmentStep = new int[segmentsCount];
+        legStepOffset = new int[legs.size() + 1];
+        stepSegmentStart = new int[stepsCount + 1];
+
+        int segmentIndex = 0;
+        int flatStepIndex = 0;
+        for (int legIndex = 0; legIndex < legs.size(); legIndex++) {
+            legStepOffset[legIndex] = flatStepIndex;
+            List<NavRoute.Step> steps = legs.get(legIndex).steps;
+            for (int stepIndex = 0; stepIndex < steps.size(); stepIndex++) {
+                stepSegmentStart[flatStepIndex++] = segmentIndex;
+                NavRoute.Step step = steps.get(stepIndex);
+                for (int pointIndex = 1; pointIndex < step.getPointCount(); pointIndex++) {
+                    ax[segmentIndex] = projectX(step.getLongitude(pointIndex - 1));
+                    ay[segmentIndex] = projectY(step.getLatitude(pointIndex - 1));
+                    bx[segmentIndex] = projectX(step.getLongitude(pointIndex));
+                    by[segmentIndex] = projectY(step.getLatitude(pointIndex));
+                    segmentLeg[segmentIndex] = legIndex;
+                    segmentStep[segmentIndex] = stepIndex;
+                    segmentIndex++;
+                }
+            }
+        }
+        legStepOffset[legs.size()] = flatStepIndex;
+        stepSegmentStart[flatStepIndex] = segmentIndex;
+
+        int leafCount = Math.max(1, (segmentCount + LEAF_SIZE - 1) / LEAF_SIZE);
+        int base = 1;
+        int depth = 0;
+        while (base < leafCount) {
+            base <<= 1;
+            depth++;
+        }
+        leafBase = base;
+        nodeMinX = new double[2 * base];
+        nodeMinY = new double[2 * base];
+        nodeMaxX = new double[2 * base];
+        nodeMaxY = new double[2 * base];
+        stack = new int[depth + 2];
+        buildTree();
+    }
+
+    private void buildTree() {
+        for (int node = 1; node < nodeMinX.length; node++) {
+            nodeMinX[node] = nodeMinY[node] = Double.POSITIVE_INFINITY;
+            nodeMaxX[node] = nodeMaxY[node] = Double.NEGATIVE_INFINITY;
+        }
+        for (int segment = 0; segment < segmentCount; segment++) {
+            int node = leafBase + segment / LEAF_SIZE;
+            nodeMinX[node] = Math.min(nodeMinX[node], Math.min(ax[segment], bx[segment]));
+            nodeMinY[node] = Math.min(nodeMinY[node], Math.min(ay[segment], by[segment]));
+            nodeMaxX[node] = Math.max(nodeMaxX[node], Math.max(ax[segment], bx[segment]));
+            nodeMaxY[node] = Math.max(nodeMaxY[node], Math.max(ay[segment], by[segment]));
+        }
+        for (int node = leafBase - 1; node >= 1; node--) {
+            int left = 2 * node;
+            int right = left + 1;
+            nodeMinX[node] = Math.min(nodeMinX[left], nodeMinX[right]);
+            nodeMinY[node] = Math.min(nodeMinY[left], nodeMinY[right]);
+            nodeMaxX[node] = Math.max(nodeMaxX[left], nodeMaxX[right]);
+            nodeMaxY[node] = Math.max(nodeMaxY[left], nodeMaxY[right]);
+        }
+    }
+
+    int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Finds the route segment nearest to a location.
+     * @param hintLegIndex leg of the current navigation step, -1 if unknown
+     * @param hintStepIndex current navigation step, -1 if unknown
+     * @param match receives the result
+     * @return false if the route has no segments
+     */
+    boolean findNearest(double latitude, double longitude, int hintLegIndex, int hintStepIndex, Match match) {
+        match.segmentIndex = -1;
+        if (segmentCount == 0) {
+            return false;
+        }
+        double x = projectX(longitude);
+        double y = projectY(latitude);
+        best[0] = Double.POSITIVE_INFINITY;
+        best[1] = 0.0d;
+
+        // Search outward from the current step: it and the next one usually contain the answer and bound the tree search
+        int hintStep = flatStepIndex(hintLegIndex, hintStepIndex);
+        if (hintStep >= 0) {
+            int hintEnd = Math.min(hintStep + 2, stepSegmentStart.length - 1);
+            scanSegments(stepSegmentStart[hintStep], stepSegmentStart[hintEnd], x, y, best, match);
+        }
+
+        int stackSize = 0;
+        stack[stackSize++] = 1;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            if (boxDistanceSquared(node, x, y) >= best[0]) {
+                continue;
+            }
+            if (node >= leafBase) {
+                int first = (node - leafBase) * LEAF_SIZE;
+                scanSegments(first, Math.min(first + LEAF_SIZE, segmentCount), x, y, best, match);
+            } else {
+                int left = 2 * node;
+                int right = left + 1;
+                // Push the farther child first so the nearer one is visited first and tightens the bound
+                if (boxDistanceSquared(left, x, y) <= boxDistanceSquared(right, x, y)) {
+                    stack[stackSize++] = right;
+                    stack[stackSize++] = left;
+                } else {
+                    stack[stackSize++] = left;
+                    stack[stackSize++] = right;
+                }
+            }
+        }
+
+        if (match.segmentIndex >= 0) {
+            match.legIndex = segmentLeg[match.segmentIndex];
+            match.stepIndex = segmentStep[match.segmentIndex];
+            match.distance = Math.sqrt(best[0]);
+            match.fraction = best[1];
+            return true;
+        }
+        return false;
+    }
+
+    //region Helpers
+
+    private int flatStepIndex(int legIndex, int stepIndex) {
+        if ((legIndex < 0) || (legIndex >= legStepOffset.length - 1) || (stepIndex < 0)) {
+            return -1;
+        }
+        int flatIndex = legStepOffset[legIndex] + stepIndex;
+        return (flatIndex < legStepOffset[legIndex + 1]) ? flatIndex : -1;
+    }
+
+    // best[0] is the best squared distance and best[1] its fraction along the segment, ties keep the earlier match
+    private void scanSegments(int from, int to, double x, double y, double[] best, Match match) {
+        for (int segment = from; segment < to; segment++) {
+            double dx = bx[segment] - ax[segment];
+            double dy = by[segment] - ay[segment];
+            double lengthSquared = dx * dx + dy * dy;
+            double fraction = (lengthSquared > 0) ? (((x - ax[segment]) * dx + (y - ay[segment]) * dy) / lengthSquared) : 0.0d;
+            fraction = Math.max(0.0d, Math.min(1.0d, fraction));
+            double px = ax[segment] + fraction * dx - x;
+            double py = ay[segment] + fraction * dy - y;
+            double distanceSquared = px * px + py * py;
+            if (distanceSquared < best[0]) {
+                best[0] = distanceSquared;
+                best[1] = fraction;
+                match.segmentIndex = segment;
+            }
+        }
+    }
+
+    private double boxDistanceSquared(int node, double x, double y) {
+        if (nodeMinX[node] > nodeMaxX[node]) {
+            return Double.POSITIVE_INFINITY; // empty
+        }
+        double dx = Math.max(0.0d, Math.max(nodeMinX[node] - x, x - nodeMaxX[node]));
+        double dy = Math.max(0.0d, Math.max(nodeMinY[node] - y, y - nodeMaxY[node]));
+        return dx * dx + dy * dy;
+    }
+
+    private double projectX(double longitude) {
+        return (longitude - originLongitude) * longitudeScale * METERS_PER_DEGREE;
+    }
+
+    private double projectY(double latitude) {
+        return (latitude - originLatitude) * METERS_PER_DEGREE;
+    }
+
+    //endregion
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.storage;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQLite backed key-value store. Entries are grouped in namespaces and every write touches only the changed rows.
+ * Not thread safe - {@link StoragePlugin} calls it from its single I/O thread only.
+ */
+class StorageDatabase extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "native_storage.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_NAME = "entries";
+    private static final String COLUMN_NAMESPACE = "namespace";
+    private static final String COLUMN_KEY = "key";
+    private static final String COLUMN_TYPE = "type";
+    private static final String COLUMN_VALUE = "value";
+    private static final String COLUMN_SIZE = "size";
+    private static final String COLUMN_UPDATED = "updated";
+
+    private static final int TYPE_STRING = 0;
+    private static final int TYPE_BYTES = 1;
+    private static final int TYPE_LONG = 2;
+    private static final int TYPE_DOUBLE = 3;
+    private static final int TYPE_BOOL = 4;
+
+    // SQLite allows up to 999 bound variables per statement, one of them is the namespace.
+    private static final int MAX_KEYS_PER_QUERY = 900;
+
+    private SQLiteStatement putStatement;
+    private SQLiteStatement deleteStatement;
+
+    StorageDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_NAME + " (" +
+                COLUMN_NAMESPACE + " TEXT NOT NULL, " +
+                COLUMN_KEY + " TEXT NOT NULL, " +
+                COLUMN_TYPE + " INTEGER NOT NULL, " +
+                COLUMN_VALUE + " BLOB, " +
+                COLUMN_SIZE + " INTEGER NOT NULL, " +
+                COLUMN_UPDATED + " INTEGER NOT NULL, " +
+                "PRIMARY KEY (" + COLUMN_NAMESPACE + ", " + COLUMN_KEY + "))");
+        db.execSQL("CREATE INDEX entries_updated ON " + TABLE_NAME + " (" + COLUMN_NAMESPACE + ", " + COLUMN_UPDATED + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    }
+
+    //region Transactions
+
+    void beginTransaction() {
+        getWritableDatabase().beginTransactionNonExclusive();
+    }
+
+    void setTransactionSuccessful() {
+        getWritableDatabase().setTransactionSuccessful();
+    }
+
+    void endTransaction() {
+        getWritableDatabase().endTransaction();
+    }
+
+    //endregion
+
+    //region Operations
+
+    HashMap<String, Object> get(String namespace, List<String> keys) {
+        HashMap<String, Object> result = new HashMap<>();
+        if ((keys == null) || keys.isEmpty()) {
+            return result;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        for (int startIndex = 0; startIndex < keys.size(); startIndex += MAX_KEYS_PER_QUERY) {
+            int endIndex = Math.min(startIndex + MAX_KEYS_PER_QUERY, keys.size());
+            StringBuilder selection = new StringBuilder(COLUMN_NAMESPACE + " = ? AND " + COLUMN_KEY + " IN (");
+            String[] selectionArgs = new String[endIndex - startIndex + 1];
+            selectionArgs[0] = namespace;
+            for (int keyIndex = startIndex; keyIndex < endIndex; keyIndex++) {
+                selection.append((keyIndex > startIndex) ? ",?" : "?");
+                selectionArgs[keyIndex - startIndex + 1] = keys.get(keyIndex);
+            }
+            selection.append(")");
+            Cursor cursor = db.query(TABLE_NAME, new String[]{COLUMN_KEY, COLUMN_TYPE, COLUMN_VALUE}, selection.toString(), selectionArgs, null, null, null);
+            readEntries(cursor, result);
+        }
+        return result;
+    }
+
+    HashMap<String, Object> scan(String namespace, String prefix) {
+        HashMap<String, Object> result = new HashMap<>();
+        SQLiteDatabase db = getWritableDatabase();
+        Cursor cursor;
+        if ((prefix == null) || prefix.isEmpty()) {
+            cursor = db.query(TABLE_NAME, new String[]{COLUMN_KEY, COLUMN_TYPE, COLUMN_VALUE},
+                    COLUMN_NAMESPACE + " = ?", new String[]{namespace}, null, null, null);
+            readEntries(cursor, result);
+            return result;
+        }
+        // Range query instead of LIKE, so that the primary key index is used.
+        String upperBound = getPrefixUpperBound(prefix);
+        if (upperBound != null) {
+            cursor = db.query(TABLE_NAME, new String[]{COLUMN_KEY, COLUMN_TYPE, COLUMN_VALUE},
+                    COLUMN_NAMESPACE + " = ? AND " + COLUMN_KEY + " >= ? AND " + COLUMN_KEY + " < ?",
+                    new String[]{namespace, prefix, upperBound}, null, null, null);
+        } else {
+            cursor = db.query(TABLE_NAME, new String[]{COLUMN_KEY, COLUMN_TYPE, COLUMN_VALUE},
+                    COLUMN_NAMESPACE + " = ? AND " + COLUMN_KEY + " >= ?", new String[]{namespace, prefix}, null, null, null);
+        }
+        HashMap<String, Object> rangeEntries = new HashMap<>();
+        readEntries(cursor, rangeEntries);
+        for (Map.Entry<String, Object> entry : rangeEntries.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    boolean put(String namespace, String key, Object value) {
+        if (value == null) {
+            delete(namespace, key);
+            return true;
+        }
+        SQLiteStatement statement = getPutStatement();
+        statement.clearBindings();
+        statement.bindString(1, namespace);
+        statement.bindString(2, key);
+        int size;
+        if (value instanceof String) {
+            String stringValue = (String) value;
+            statement.bindLong(3, TYPE_STRING);
+            statement.bindString(4, stringValue);
+            size = getUtf8Length(stringValue);
+        } else if (value instanceof byte[]) {
+            byte[] bytesValue = (byte[]) value;
+            statement.bindLong(3, TYPE_BYTES);
+            statement.bindBlob(4, bytesValue);
+            size = bytesValue.length;
+        } else if ((value instanceof Integer) || (value instanceof Long)) {
+            statement.bindLong(3, TYPE_LONG);
+            statement.bindLong(4, ((Number) value).longValue());
+            size = 8;
+        } else if (value instanceof Double) {
+            statement.bindLong(3, TYPE_DOUBLE);
+            statement.bindDouble(4, (Double) value);
+            size = 8;
+        } else if (value instanceof Boolean) {
+            statement.bindLong(3, TYPE_BOOL);
+            statement.bindLong(4, ((Boolean) value) ? 1 : 0);
+            size = 1;
+        } else {
+            return false;
+        }
+        statement.bindLong(5, size + getUtf8Length(key));
+        statement.bindLong(6, System.currentTimeMillis());
+        statement.executeInsert();
+        return true;
+    }
+
+    int delete(String namespace, String key) {
+        SQLiteStatement statement = getDeleteStatement();
+        statement.clearBindings();
+        statement.bindString(1, namespace);
+        statement.bindString(2, key);
+        return statement.executeUpdateDelete();
+    }
+
+    /**
+     * Deletes the oldest entries of the namespace until the UTF-8 size of its keys and values is not bigger than maxBytes.
+     * @return the number of deleted entries
+     */
+    int evict(String namespace, long maxBytes) {
+        SQLiteDatabase db = getWritableDatabase();
+        long totalSize = 0;
+        Cursor sizeCursor = db.rawQuery("SELECT SUM(" + COLUMN_SIZE + ") FROM " + TABLE_NAME + " WHERE " + COLUMN_NAMESPACE + " = ?", new String[]{namespace});
+        try {
+            if (sizeCursor.moveToFirst()) {
+                totalSize = sizeCursor.getLong(0);
+            }
+        } finally {
+            sizeCursor.close();
+        }
+        if (totalSize <= maxBytes) {
+            return 0;
+        }
+        List<String> evictedKeys = new ArrayList<>();
+        Cursor cursor = db.query(TABLE_NAME, new String[]{COLUMN_KEY, COLUMN_SIZE}, COLUMN_NAMESPACE + " = ?", new String[]{namespace},
+                null, null, COLUMN_UPDATED + " ASC");
+        try {
+            while ((totalSize > maxBytes) && cursor.moveToNext()) {
+                evictedKeys.add(cursor.getString(0));
+                totalSize -= cursor.getLong(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        for (String key : evictedKeys) {
+            delete(namespace, key);
+        }
+        return evictedKeys.size();
+    }
+
+    //endregion
+
+    //region Helpers
+
+    private SQLiteStatement getPutStatement() {
+        if (putStatement == null) {
+            putStatement = getWritableDatabase().compileStatement("INSERT OR REPLACE INTO " + TABLE_NAME + " (" +
+                    COLUMN_NAMESPACE + ", " + COLUMN_KEY + ", " + COLUMN_TYPE + ", " + COLUMN_VALUE + ", " + COLUMN_SIZE + ", " + COLUMN_UPDATED +
+                    ") VALUES (?, ?, ?, ?, ?, ?)");
+        }
+        return putStatement;
+    }
+
+    private SQLiteStatement getDeleteStatement() {
+        if (deleteStatement == null) {
+            deleteStatement = getWritableDatabase().compileStatement("DELETE FROM " + TABLE_NAME + " WHERE " +
+                    COLUMN_NAMESPACE + " = ? AND " + COLUMN_KEY + " = ?");
+        }
+        return deleteStatement;
+    }
+
+    private static void readEntries(Cursor cursor, HashMap<String, Object> result) {
+        try {
+            while (cursor.moveToNext()) {
+                String key = cursor.getString(0);
+                switch (cursor.getInt(1)) {
+                    case TYPE_STRING:
+                        result.put(key, cursor.getString(2));
+                        break;
+                    case TYPE_BYTES:
+                        result.put(key, cursor.getBlob(2));
+                        break;
+                    case TYPE_LONG:
+                        result.put(key, cursor.getLong(2));
+                        break;
+                    case TYPE_DOUBLE:
+                        result.put(key, cursor.getDouble(2));
+                        break;
+                    case TYPE_BOOL:
+                        result.put(key, cursor.getLong(2) != 0);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Size of the value as stored by SQLite, without encoding the string
+    static int getUtf8Length(String value) {
+        int length = 0;
+        for (int index = 0; index < value.length(); index++) {
+            char c = value.charAt(index);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && (index + 1 < value.length()) && Character.isLowSurrogate(value.charAt(index + 1))) {
+                length += 4;
+                index++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static String getPrefixUpperBound(String prefix) {
+        int lastIndex = prefix.length() - 1;
+        char lastChar = prefix.charAt(lastIndex);
+        if (lastChar == Character.MAX_VALUE) {
+            return null;
+        }
+        return prefix.substring(0, lastIndex) + (char) (lastChar + 1);
+    }
+
+    //endregion
+
+    @Override
+    public synchronized void close() {
+        if (putStatement != null) {
+            putStatement.close();
+            putStatement = null;
+        }
+        if (deleteStatement != null) {
+            deleteStatement.close();
+            deleteStatement = null;
+        }
+        super.close();
+    }
+}
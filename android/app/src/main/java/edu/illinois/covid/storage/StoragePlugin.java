@@ -0,0 +1,273 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.storage;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import edu.illinois.covid.Constants;
+import edu.illinois.covid.Utils;
+import io.flutter.embedding.engine.plugins.FlutterPlugin;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+
+/**
+ * Native key-value storage backed by {@link StorageDatabase}.
+ * All database access happens on a dedicated I/O thread, results are delivered on the main thread.
+ */
+public class StoragePlugin implements MethodChannel.MethodCallHandler, FlutterPlugin {
+
+    private static final String TAG = "StoragePlugin";
+
+    public static final String CHANNEL_NAME = "edu.illinois.covid/storage";
+
+    private static final String DEFAULT_NAMESPACE = "default";
+
+    private MethodChannel methodChannel;
+    private Context applicationContext;
+    private StorageDatabase database;
+    private HandlerThread ioThread;
+    private Handler ioHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    //region Operations
+
+    // Called on the I/O thread
+    private interface Operation {
+        Object run();
+    }
+
+    private boolean handlePut(String namespace, Object arguments) {
+        Object entriesObject = optArgument(arguments, Constants.STORAGE_PLUGIN_PARAM_ENTRIES);
+        if (!(entriesObject instanceof Map)) {
+            return false;
+        }
+        StorageDatabase db = getDatabase();
+        boolean result = true;
+        db.beginTransaction();
+        try {
+            for (Object entryObject : ((Map) entriesObject).entrySet()) {
+                Map.Entry entry = (Map.Entry) entryObject;
+                if (entry.getKey() instanceof String) {
+                    result &= db.put(namespace, (String) entry.getKey(), entry.getValue());
+                }
+            }
+            evictIfNeeded(namespace, arguments);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return result;
+    }
+
+    private int handleDelete(String namespace, List<String> keys) {
+        if ((keys == null) || keys.isEmpty()) {
+            return 0;
+        }
+        StorageDatabase db = getDatabase();
+        int deletedCount = 0;
+        db.beginTransaction();
+        try {
+            for (String key : keys) {
+                deletedCount += db.delete(namespace, key);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return deletedCount;
+    }
+
+    /**
+     * Executes a list of get / put / delete operations in a single transaction.
+     * Operation example: {"op": "put", "namespace": "settings", "key": "theme", "value": "dark"}.
+     * The maxBytes budget, if any, is applied to every namespace written by the batch.
+     * @return the values of all "get" operations keyed by their keys
+     */
+    private HashMap<String, Object> handleBatch(String defaultNamespace, Object arguments) {
+        HashMap<String, Object> result = new HashMap<>();
+        Object operationsObject = optArgument(arguments, Constants.STORAGE_PLUGIN_PARAM_OPERATIONS);
+        if (!(operationsObject instanceof List)) {
+            return result;
+        }
+        StorageDatabase db = getDatabase();
+        HashSet<String> writtenNamespaces = new HashSet<>();
+        db.beginTransaction();
+        try {
+            for (Object operation : (List) operationsObject) {
+                String op = Utils.Map.getValueFromPath(operation, Constants.STORAGE_PLUGIN_PARAM_OPERATION, null);
+                String key = Utils.Map.getValueFromPath(operation, Constants.STORAGE_PLUGIN_PARAM_KEY, null);
+                String namespace = Utils.Map.getValueFromPath(operation, Constants.STORAGE_PLUGIN_PARAM_NAMESPACE, defaultNamespace);
+                if ((op == null) || (key == null)) {
+                    continue;
+                }
+                switch (op) {
+                    case Constants.STORAGE_PLUGIN_METHOD_NAME_GET:
+                        result.putAll(db.get(namespace, Collections.singletonList(key)));
+                        break;
+                    case Constants.STORAGE_PLUGIN_METHOD_NAME_PUT:
+                        db.put(namespace, key, optArgument(operation, Constants.STORAGE_PLUGIN_PARAM_VALUE));
+                        writtenNamespaces.add(namespace);
+                        break;
+                    case Constants.STORAGE_PLUGIN_METHOD_NAME_DELETE:
+                        db.delete(namespace, key);
+                        break;
+                    default:
+                        Log.w(TAG, "Unsupported batch operation: " + op);
+                        break;
+                }
+            }
+            for (String namespace : writtenNamespaces) {
+                evictIfNeeded(namespace, arguments);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return result;
+    }
+
+    private void evictIfNeeded(String namespace, Object arguments) {
+        long maxBytes = optMaxBytes(arguments);
+        if (maxBytes >= 0) {
+            int evictedCount = getDatabase().evict(namespace, maxBytes);
+            if (evictedCount > 0) {
+                Log.d(TAG, String.format("Evicted %d entries from '%s'", evictedCount, namespace));
+            }
+        }
+    }
+
+    private StorageDatabase getDatabase() {
+        if (database == null) {
+            database = new StorageDatabase(applicationContext);
+        }
+        return database;
+    }
+
+    private static Object optArgument(Object arguments, String name) {
+        // Map arguments are read as they are, without resolving platform specific values.
+        return (arguments instanceof Map) ? ((Map) arguments).get(name) : null;
+    }
+
+    private static List<String> optKeys(Object arguments) {
+        Object keysObject = optArgument(arguments, Constants.STORAGE_PLUGIN_PARAM_KEYS);
+        return (keysObject instanceof List) ? (List<String>) keysObject : null;
+    }
+
+    private static long optMaxBytes(Object arguments) {
+        Object maxBytesObject = optArgument(arguments, Constants.STORAGE_PLUGIN_PARAM_MAX_BYTES);
+        return (maxBytesObject instanceof Number) ? ((Number) maxBytesObject).longValue() : -1;
+    }
+
+    //endregion
+
+    @Override
+    public void onMethodCall(@NonNull MethodCall call, @NonNull MethodChannel.Result result) {
+        String method = call.method;
+        Object arguments = call.arguments;
+        if (ioHandler == null) {
+            result.error(TAG, "Storage is not attached", null);
+            return;
+        }
+        String namespace = Utils.Map.getValueFromPath(arguments, Constants.STORAGE_PLUGIN_PARAM_NAMESPACE, DEFAULT_NAMESPACE);
+        switch (method) {
+            case Constants.STORAGE_PLUGIN_METHOD_NAME_GET:
+                runOnIoThread(method, result, () -> getDatabase().get(namespace, optKeys(arguments)));
+                break;
+            case Constants.STORAGE_PLUGIN_METHOD_NAME_PUT:
+                runOnIoThread(method, result, () -> handlePut(namespace, arguments));
+                break;
+            case Constants.STORAGE_PLUGIN_METHOD_NAME_DELETE:
+                runOnIoThread(method, result, () -> handleDelete(namespace, optKeys(arguments)));
+                break;
+            case Constants.STORAGE_PLUGIN_METHOD_NAME_BATCH:
+                runOnIoThread(method, result, () -> handleBatch(namespace, arguments));
+                break;
+            case Constants.STORAGE_PLUGIN_METHOD_NAME_SCAN:
+                String prefix = Utils.Map.getValueFromPath(arguments, Constants.STORAGE_PLUGIN_PARAM_PREFIX, null);
+                runOnIoThread(method, result, () -> getDatabase().scan(namespace, prefix));
+                break;
+            case Constants.STORAGE_PLUGIN_METHOD_NAME_EVICT:
+                long maxBytes = optMaxBytes(arguments);
+                runOnIoThread(method, result, () -> (maxBytes >= 0) ? getDatabase().evict(namespace, maxBytes) : 0);
+                break;
+            default:
+                result.notImplemented();
+                break;
+        }
+    }
+
+    private void runOnIoThread(String method, MethodChannel.Result result, Operation operation) {
+        ioHandler.post(() -> {
+            try {
+                Object value = operation.run();
+                mainHandler.post(() -> result.success(value));
+            } catch (Exception e) {
+                Log.e(TAG, String.format("Error on '%s'", method), e);
+                mainHandler.post(() -> result.error(TAG, e.getMessage(), null));
+            }
+        });
+    }
+
+    // Flutter Plugin
+
+    @Override
+    public void onAttachedToEngine(@NonNull FlutterPluginBinding binding) {
+        setupChannels(binding.getBinaryMessenger(), binding.getApplicationContext());
+    }
+
+    @Override
+    public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
+        disposeChannels();
+    }
+
+    private void setupChannels(BinaryMessenger messenger, Context context) {
+        applicationContext = context;
+        ioThread = new HandlerThread(TAG);
+        ioThread.start();
+        ioHandler = new Handler(ioThread.getLooper());
+        methodChannel = new MethodChannel(messenger, CHANNEL_NAME);
+        methodChannel.setMethodCallHandler(this);
+    }
+
+    private void disposeChannels() {
+        methodChannel.setMethodCallHandler(null);
+        methodChannel = null;
+        HandlerThread thread = ioThread;
+        ioHandler.post(() -> {
+            if (database != null) {
+                database.close();
+                database = null;
+            }
+            thread.quitSafely();
+        });
+        ioHandler = null;
+        ioThread = null;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs only on request: ./gradlew testDebugUnitTest -Pbenchmarks
+ */
+public class CodecBenchmark {
+
+    @Test
+    public void againstLegacyCodecs() {
+        Random random = new Random(20200817);
+        byte[][] keys = new byte[256][];
+        for (int index = 0; index < keys.length; index++) {
+            keys[index] = new byte[32];
+            random.nextBytes(keys[index]);
+        }
+        int rounds = 200;
+        long checksum = 0;
+        for (int warmUp = 0; warmUp < 2; warmUp++) {
+            checksum += runLegacyHex(keys, rounds) + runHex(keys, rounds) + runLegacyBase64(keys, rounds) + runBase64(keys, rounds);
+        }
+        long startTime = System.nanoTime();
+        long legacyHexChecksum = runLegacyHex(keys, rounds);
+        long legacyHexTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        long hexChecksum = runHex(keys, rounds);
+        long hexTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        long referenceBase64Checksum = runLegacyBase64(keys, rounds);
+        long referenceBase64Time = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        long base64Checksum = runBase64(keys, rounds);
+        long base64Time = System.nanoTime() - startTime;
+
+        assertEquals(legacyHexChecksum, hexChecksum);
+        assertEquals(referenceBase64Checksum, base64Checksum);
+        int operations = keys.length * rounds;
+        System.out.println(String.format(Locale.US, "Hex round trip of 32 bytes: Formatter / Character.digit %.0f ns, Codec.Hex %.0f ns",
+                (double) legacyHexTime / operations, (double) hexTime / operations));
+        System.out.println(String.format(Locale.US, "Base64 round trip of 32 bytes: java.util.Base64 %.0f ns, Codec.Base64 regions %.0f ns (checksum %d)",
+                (double) referenceBase64Time / operations, (double) base64Time / operations, checksum));
+    }
+
+    private static long runLegacyHex(byte[][] keys, int rounds) {
+        long checksum = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (byte[] key : keys) {
+                checksum += CodecTest.legacyHexDecode(CodecTest.legacyHexEncode(key))[round & 31];
+            }
+        }
+        return checksum;
+    }
+
+    private static long runHex(byte[][] keys, int rounds) {
+        long checksum = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (byte[] key : keys) {
+                checksum += Codec.Hex.decode(Codec.Hex.encode(key))[round & 31];
+            }
+        }
+        return checksum;
+    }
+
+    // Android's own android.util.Base64 is not available on the JVM, the JDK codec stands in for it
+    private static long runLegacyBase64(byte[][] keys, int rounds) {
+        long checksum = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (byte[] key : keys) {
+                checksum += java.util.Base64.getDecoder().decode(java.util.Base64.getEncoder().encodeToString(key))[round & 31];
+            }
+        }
+        return checksum;
+    }
+
+    private static long runBase64(byte[][] keys, int rounds) {
+        byte[] ascii = new byte[Codec.Base64.encodedLength(32)];
+        byte[] decoded = new byte[32];
+        long checksum = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (byte[] key : keys) {
+                int encodedLength = Codec.Base64.encode(key, 0, key.length, ascii, 0);
+                Codec.Base64.decode(ascii, 0, encodedLength, decoded, 0);
+                checksum += decoded[round & 31];
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class CodecTest {
+
+    private static final int FUZZ_ITERATIONS = 20000;
+    private static final String BASE64_FUZZ_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/= \n-_.";
+
+    private final Random random = new Random(20200817);
+
+    //region Hex
+
+    @Test
+    public void hexMatchesFormatterAndCharacterDigit() {
+        for (int iteration = 0; iteration < FUZZ_ITERATIONS; iteration++) {
+            byte[] bytes = randomBytes(random.nextInt(64));
+            String encoded = Codec.Hex.encode(bytes);
+            assertEquals(legacyHexEncode(bytes), encoded);
+            assertArrayEquals(bytes, Codec.Hex.decode(encoded));
+            assertArrayEquals(bytes, Codec.Hex.decode(encoded.toUpperCase(Locale.US)));
+            assertArrayEquals(legacyHexDecode(encoded), Codec.Hex.decode(encoded));
+        }
+    }
+
+    @Test
+    public void hexRegions() {
+        byte[] bytes = randomBytes(40);
+        char[] chars = new char[100];
+        assertEquals(20, Codec.Hex.encode(bytes, 5, 10, chars, 7));
+        String region = new String(chars, 7, 20);
+        assertEquals(legacyHexEncode(Arrays.copyOfRange(bytes, 5, 15)), region);
+
+        byte[] decoded = new byte[30];
+        assertEquals(10, Codec.Hex.decode("xx" + region + "yy", 2, 22, decoded, 3));
+        assertArrayEquals(Arrays.copyOfRange(bytes, 5, 15), Arrays.copyOfRange(decoded, 3, 13));
+    }
+
+    @Test
+    public void hexRejectsMalformedInput() {
+        assertNull(Codec.Hex.encode(null));
+        assertNull(Codec.Hex.decode(null));
+        for (String value : new String[]{"abc", "0g", "zz", "\u00e9\u00e9", " 1"}) {
+            try {
+                Codec.Hex.decode(value);
+                fail("Decoded malformed hex: " + value);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    //endregion
+
+    //region Base64
+
+    @Test
+    public void base64MatchesReferenceCodec() {
+        for (int iteration = 0; iteration < FUZZ_ITERATIONS; iteration++) {
+            byte[] bytes = randomBytes(random.nextInt(96));
+            String encoded = Codec.Base64.encode(bytes);
+            assertEquals(java.util.Base64.getEncoder().encodeToString(bytes), encoded);
+            assertArrayEquals(bytes, Codec.Base64.decode(encoded));
+
+            byte[] ascii = new byte[Codec.Base64.encodedLength(bytes.length)];
+            assertEquals(ascii.length, Codec.Base64.encode(bytes, 0, bytes.length, ascii, 0));
+            assertEquals(encoded, new String(ascii, StandardCharsets.US_ASCII));
+            byte[] decoded = new byte[bytes.length];
+            assertEquals(bytes.length, Codec.Base64.decode(ascii, 0, ascii.length, decoded, 0));
+            assertArrayEquals(bytes, decoded);
+
+            // Missing padding is accepted
+            String unpadded = java.util.Base64.getEncoder().withoutPadding().encodeToString(bytes);
+            assertArrayEquals(bytes, Codec.Base64.decode(unpadded));
+        }
+    }
+
+    @Test
+    public void base64Buffers() {
+        for (int iteration = 0; iteration < 1000; iteration++) {
+            byte[] bytes = randomBytes(random.nextInt(64));
+            boolean direct = random.nextBoolean();
+            ByteBuffer src = allocate(bytes.length + 3, direct);
+            src.position(3);
+            src.put(bytes);
+            src.position(3);
+            ByteBuffer encoded = allocate(Codec.Base64.encodedLength(bytes.length), !direct);
+            Codec.Base64.encode(src, encoded);
+            assertEquals(0, src.remaining());
+            assertEquals(0, encoded.remaining());
+            encoded.flip();
+            byte[] encodedBytes = new byte[encoded.remaining()];
+            encoded.duplicate().get(encodedBytes);
+            assertEquals(java.util.Base64.getEncoder().encodeToString(bytes), new String(encodedBytes, StandardCharsets.US_ASCII));
+
+            ByteBuffer decoded = allocate(bytes.length, direct);
+            Codec.Base64.decode(encoded, decoded);
+            decoded.flip();
+            byte[] decodedBytes = new byte[decoded.remaining()];
+            decoded.get(decodedBytes);
+            assertArrayEquals(bytes, decodedBytes);
+        }
+    }
+
+    @Test
+    public void base64FuzzAgainstReferenceDecoder() {
+        for (int iteration = 0; iteration < FUZZ_ITERATIONS; iteration++) {
+            String value = randomString(BASE64_FUZZ_CHARS, random.nextInt(24));
+            byte[] expected;
+            try {
+                expected = java.util.Base64.getDecoder().decode(value.replace(" ", "").replace("\n", ""));
+            } catch (IllegalArgumentException e) {
+                expected = null;
+            }
+            int decodedLength = Codec.Base64.decodedLength(value);
+            byte[] actual;
+            try {
+                actual = Codec.Base64.decode(value);
+            } catch (IllegalArgumentException e) {
+                actual = null;
+            }
+            byte[] ascii = value.getBytes(StandardCharsets.US_ASCII);
+            byte[] regionActual = new byte[ascii.length];
+            int regionLength;
+            try {
+                regionLength = Codec.Base64.decode(ascii, 0, ascii.length, regionActual, 0);
+            } catch (IllegalArgumentException e) {
+                regionLength = -1;
+            }
+
+            if (expected == null) {
+                assertNull("Accepted invalid Base64: '" + value + "'", actual);
+                assertEquals(value, -1, decodedLength);
+                assertEquals(value, -1, regionLength);
+            } else {
+                assertArrayEquals(value, expected, actual);
+                assertEquals(value, expected.length, decodedLength);
+                assertEquals(value, expected.length, regionLength);
+                assertArrayEquals(value, expected, Arrays.copyOf(regionActual, regionLength));
+            }
+        }
+    }
+
+    //endregion
+
+    //region Helpers
+
+    // Utils.Str.byteArrayToHexString before the codec
+    static String legacyHexEncode(byte[] bytes) {
+        Formatter formatter = new Formatter();
+        for (byte b : bytes) {
+            formatter.format("%02x", b);
+        }
+        return formatter.toString();
+    }
+
+    // Utils.Str.hexStringToByteArray before the codec
+    static byte[] legacyHexDecode(String s) {
+        int len = s.length();
+        byte[] data = new byte[len / 2];
+        for (int i = 0; i < len; i += 2) {
+            data[i / 2] = (byte) ((Character.digit(s.charAt(i), 16) << 4) + Character.digit(s.charAt(i + 1), 16));
+        }
+        return data;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private String randomString(String alphabet, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int index = 0; index < length; index++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    //endregion
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs only on request: ./gradlew testDebugUnitTest -Pbenchmarks
+ */
+public class MapPathBenchmark {
+
+    @Test
+    public void compiledAgainstStringSplittingLookup() {
+        HashMap<String, Object> arguments = MapPathTest.buildArguments();
+        int iterations = 200000;
+        long checksum = 0;
+        for (int warmUp = 0; warmUp < 3; warmUp++) {
+            checksum += runLegacy(arguments, iterations) + runCompiled(arguments, iterations);
+        }
+
+        long startTime = System.nanoTime();
+        long legacyChecksum = runLegacy(arguments, iterations);
+        long legacyTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        long compiledChecksum = runCompiled(arguments, iterations);
+        long compiledTime = System.nanoTime() - startTime;
+
+        assertEquals(legacyChecksum, compiledChecksum);
+        assertTrue(checksum != 0);
+        int lookups = iterations * MapPathTest.PATHS.length;
+        System.out.println(String.format(Locale.US, "getValueFromPath: string splitting %.1f ns/lookup, compiled %.1f ns/lookup",
+                (double) legacyTime / lookups, (double) compiledTime / lookups));
+    }
+
+    private static long runLegacy(HashMap<String, Object> arguments, int iterations) {
+        long checksum = 0;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (String path : MapPathTest.PATHS) {
+                checksum += MapPathTest.LegacyPath.getInt(arguments, path, 1) + (MapPathTest.LegacyPath.getBoolean(arguments, path, false) ? 1 : 0);
+            }
+        }
+        return checksum;
+    }
+
+    private static long runCompiled(HashMap<String, Object> arguments, int iterations) {
+        long checksum = 0;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            for (String path : MapPathTest.PATHS) {
+                MapPath mapPath = MapPath.compile(path);
+                checksum += mapPath.getInt(arguments, 1) + (mapPath.getBoolean(arguments, false) ? 1 : 0);
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MapPathTest {
+
+    static final String[] PATHS = {
+            "options.location.latitude", "options.location.longitude", "options.showDebugLocation", "options.enableLevels",
+            "title", "zoom", "timestamp", "missing", "options.missing.value", "options.location"
+    };
+
+    //region Correctness
+
+    @Test
+    public void matchesStringSplittingLookup() {
+        HashMap<String, Object> arguments = buildArguments();
+        for (String path : PATHS) {
+            MapPath mapPath = MapPath.compile(path);
+            assertEquals(path, LegacyPath.get(arguments, path), mapPath.get(arguments));
+            assertEquals(path, LegacyPath.getString(arguments, path, "-"), mapPath.getString(arguments, "-"));
+            assertEquals(path, LegacyPath.getInt(arguments, path, -1), mapPath.getInt(arguments, -1));
+            assertEquals(path, LegacyPath.getBoolean(arguments, path, false), mapPath.getBoolean(arguments, false));
+        }
+    }
+
+    @Test
+    public void resolvesPlatformValues() {
+        HashMap<String, Object> platformValue = new HashMap<>();
+        platformValue.put("android", "a");
+        platformValue.put("ios", "i");
+        HashMap<String, Object> arguments = new HashMap<>();
+        arguments.put("label", platformValue);
+        assertEquals("a", MapPath.compile("label").getString(arguments, null));
+    }
+
+    @Test
+    public void walksAnyMap() {
+        TreeMap<String, Object> inner = new TreeMap<>();
+        inner.put("value", 5);
+        assertEquals(5, MapPath.compile("outer.value").getInt(Collections.singletonMap("outer", inner), 0));
+    }
+
+    @Test
+    public void widensCodecIntegers() {
+        HashMap<String, Object> arguments = new HashMap<>();
+        arguments.put("small", 40);
+        arguments.put("large", 5000000000L);
+        assertEquals(40L, MapPath.compile("small").getLong(arguments, 0));
+        assertEquals(5000000000L, MapPath.compile("large").getLong(arguments, 0));
+        assertEquals(40.0d, MapPath.compile("small").getDouble(arguments, 0.0d), 0.0d);
+        assertEquals(-1, MapPath.compile("large").getInt(arguments, -1));
+    }
+
+    @Test
+    public void handlesMissingInput() {
+        assertNull(MapPath.compile(""));
+        assertNull(MapPath.compile(null));
+        MapPath mapPath = MapPath.compile("a.b");
+        assertNull(mapPath.get(null));
+        assertNull(mapPath.get("not a map"));
+        assertEquals(7, mapPath.getInt(Collections.singletonMap("a", "not a map"), 7));
+        assertFalse(mapPath.getBoolean(null, false));
+        assertSame(mapPath, MapPath.compile("a.b"));
+        assertEquals("a.b", mapPath.getPath());
+    }
+
+    //endregion
+
+    //region Helpers
+
+    static HashMap<String, Object> buildArguments() {
+        HashMap<String, Object> location = new HashMap<>();
+        location.put("latitude", 40.1020);
+        location.put("longitude", -88.2272);
+        HashMap<String, Object> debugLocation = new HashMap<>();
+        debugLocation.put("android", true);
+        debugLocation.put("ios", false);
+        HashMap<String, Object> options = new HashMap<>();
+        options.put("location", location);
+        options.put("showDebugLocation", debugLocation);
+        options.put("enableLevels", false);
+        HashMap<String, Object> arguments = new HashMap<>();
+        arguments.put("options", options);
+        arguments.put("title", "Illini Union");
+        arguments.put("zoom", 17);
+        arguments.put("timestamp", 1600000000000L);
+        return arguments;
+    }
+
+    // Utils.Map.getValueFromPath before paths were compiled
+    static final class LegacyPath {
+
+        static String getString(Object object, String path, String defaultValue) {
+            Object valueObject = get(object, path);
+            return (valueObject instanceof String) ? (String) valueObject : defaultValue;
+        }
+
+        static int getInt(Object object, String path, int defaultValue) {
+            Object valueObject = get(object, path);
+            return (valueObject instanceof Integer) ? (Integer) valueObject : defaultValue;
+        }
+
+        static boolean getBoolean(Object object, String path, boolean defaultValue) {
+            Object valueObject = get(object, path);
+            return (valueObject instanceof Boolean) ? (Boolean) valueObject : defaultValue;
+        }
+
+        static Object get(Object object, String path) {
+            if (!(object instanceof java.util.Map) || (path == null) || path.isEmpty()) {
+                return null;
+            }
+            java.util.Map<?, ?> map = (java.util.Map<?, ?>) object;
+            int dotFirstIndex = path.indexOf(".");
+            while (dotFirstIndex != -1) {
+                String subPath = path.substring(0, dotFirstIndex);
+                path = path.substring(dotFirstIndex + 1);
+                Object innerObject = (map != null) ? map.get(subPath) : null;
+                map = (innerObject instanceof HashMap) ? (HashMap<?, ?>) innerObject : null;
+                dotFirstIndex = path.indexOf(".");
+            }
+            Object generalValue = (map != null) ? map.get(path) : null;
+            return (generalValue instanceof HashMap) ? ((HashMap<?, ?>) generalValue).get("android") : generalValue;
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs only on request: ./gradlew testDebugUnitTest -Pbenchmarks
+ */
+public class CampusRouterBenchmark {
+
+    @Test
+    public void walkingAgainstDijkstra() {
+        Random random = new Random(20200905);
+        ByteBuffer buffer = CampusRouterTest.buildGridGraph(random, 200, 200);
+        CampusRouterTest.Graph graph = new CampusRouterTest.Graph(buffer);
+        CampusRouter router = new CampusRouter(buffer);
+        int queries = 100;
+        double[] coordinates = new double[queries * 4];
+        for (int index = 0; index < coordinates.length; index += 2) {
+            coordinates[index] = graph.minLatitude + random.nextDouble() * (graph.maxLatitude - graph.minLatitude);
+            coordinates[index + 1] = graph.minLongitude + random.nextDouble() * (graph.maxLongitude - graph.minLongitude);
+        }
+        long checksum = 0;
+        for (int warmUp = 0; warmUp < 2; warmUp++) {
+            checksum += runRouter(router, coordinates) + (long) runDijkstra(graph, coordinates);
+        }
+        long startTime = System.nanoTime();
+        checksum += runRouter(router, coordinates);
+        long routerTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        checksum += (long) runDijkstra(graph, coordinates);
+        long dijkstraTime = System.nanoTime() - startTime;
+        assertTrue(checksum > 0);
+        System.out.println(String.format(Locale.US, "Walking queries over %d nodes: A* %.2f ms, Dijkstra %.2f ms per query",
+                graph.nodeCount, routerTime / 1000000.0d / queries, dijkstraTime / 1000000.0d / queries));
+    }
+
+    private static long runRouter(CampusRouter router, double[] coordinates) {
+        long checksum = 0;
+        for (int index = 0; index < coordinates.length; index += 4) {
+            int[] path = router.findNodePath(coordinates[index], coordinates[index + 1], coordinates[index + 2], coordinates[index + 3], "WALKING");
+            checksum += (path != null) ? path.length : 0;
+        }
+        return checksum;
+    }
+
+    private static double runDijkstra(CampusRouterTest.Graph graph, double[] coordinates) {
+        double checksum = 0.0d;
+        for (int index = 0; index < coordinates.length; index += 4) {
+            int originNode = graph.findNearestNode(coordinates[index], coordinates[index + 1], CampusRouterTest.MODE_WALKING);
+            int destinationNode = graph.findNearestNode(coordinates[index + 2], coordinates[index + 3], CampusRouterTest.MODE_WALKING);
+            double cost = graph.dijkstra(originNode, destinationNode, CampusRouterTest.MODE_WALKING);
+            checksum += Double.isInfinite(cost) ? 0.0d : cost;
+        }
+        return checksum;
+    }
+}
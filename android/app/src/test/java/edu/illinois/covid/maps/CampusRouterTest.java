@@ -0,0 +1,385 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CampusRouterTest {
+
+    // Generated from campus_routing_fixture.osm with scripts/campus_routing_graph.py
+    private static final String FIXTURE_GRAPH = "/campus_routing_fixture.graph";
+
+    static final int MODE_WALKING = 1;
+    private static final int MODE_BICYCLING = 2;
+    private static final double METERS_PER_DEGREE = 111320.0d;
+
+    private final Random random = new Random(20200905);
+
+    //region Fixture graph
+
+    @Test
+    public void loadsGeneratedFixture() throws IOException {
+        Graph graph = new Graph(readFixture());
+        CampusRouter router = new CampusRouter(readFixture());
+        // The private service way and the motorway are not routable
+        assertEquals(11, router.getNodeCount());
+        assertEquals(11, graph.nodeCount);
+        assertEquals(-1, graph.findNode(40.1000, -88.2000));
+        assertFalse(graph.hasEdge(graph.findNode(40.1070, -88.2280), graph.findNode(40.1090, -88.2260), MODE_WALKING));
+    }
+
+    @Test
+    public void fixtureRoutesFollowTravelModes() throws IOException {
+        Graph graph = new Graph(readFixture());
+        CampusRouter router = new CampusRouter(readFixture());
+
+        // Walking ignores the one way street
+        int[] walkingPath = router.findNodePath(40.1080, -88.2260, 40.1080, -88.2280, "WALKING");
+        assertArrayEquals(graph.findNodes(40.1080, -88.2260, 40.1080, -88.2270, 40.1080, -88.2280), walkingPath);
+
+        // Bicycling goes around it, the footway without bicycle=yes is not usable either
+        int[] bicyclingPath = router.findNodePath(40.1080, -88.2260, 40.1080, -88.2280, "BICYCLING");
+        assertArrayEquals(graph.findNodes(40.1080, -88.2260, 40.1090, -88.2260, 40.1090, -88.2270, 40.1090, -88.2280, 40.1080, -88.2280),
+                bicyclingPath);
+        int[] withOneWayPath = router.findNodePath(40.1080, -88.2280, 40.1080, -88.2260, "BICYCLING");
+        assertArrayEquals(graph.findNodes(40.1080, -88.2280, 40.1080, -88.2270, 40.1080, -88.2260), withOneWayPath);
+    }
+
+    @Test
+    public void fixtureUnreachableAndUnsupported() throws IOException {
+        CampusRouter router = new CampusRouter(readFixture());
+        // The isolated footway is the nearest to the origin
+        assertNull(router.findNodePath(40.1101, -88.2240, 40.1070, -88.2280, "WALKING"));
+        assertNull(router.findNodePath(40.1070, -88.2280, 40.1090, -88.2260, "DRIVING"));
+        assertFalse(CampusRouter.supportsTravelMode("TRANSIT"));
+        assertTrue(CampusRouter.supportsTravelMode("BICYCLING"));
+    }
+
+    @Test
+    public void rejectsMalformedGraph() throws IOException {
+        byte[] bytes = readBytes();
+        for (int length : new int[]{0, 15, bytes.length - 1}) {
+            assertMalformed(Arrays.copyOf(bytes, length));
+        }
+        byte[] badMagic = bytes.clone();
+        badMagic[0] = 'X';
+        assertMalformed(badMagic);
+        byte[] badVersion = bytes.clone();
+        badVersion[4] = 2;
+        assertMalformed(badVersion);
+    }
+
+    private static void assertMalformed(byte[] bytes) {
+        try {
+            new CampusRouter(ByteBuffer.wrap(bytes));
+            fail("Accepted malformed graph of " + bytes.length + " bytes");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    //endregion
+
+    //region Random graphs
+
+    @Test
+    public void findNodePathMatchesDijkstra() {
+        for (int graphIndex = 0; graphIndex < 10; graphIndex++) {
+            ByteBuffer buffer = buildGridGraph(random, 10 + random.nextInt(30), 10 + random.nextInt(30));
+            Graph graph = new Graph(buffer);
+            CampusRouter router = new CampusRouter(buffer);
+            for (int query = 0; query < 200; query++) {
+                double originLatitude = graph.minLatitude + random.nextDouble() * (graph.maxLatitude - graph.minLatitude);
+                double originLongitude = graph.minLongitude + random.nextDouble() * (graph.maxLongitude - graph.minLongitude);
+                double destinationLatitude = graph.minLatitude + random.nextDouble() * (graph.maxLatitude - graph.minLatitude);
+                double destinationLongitude = graph.minLongitude + random.nextDouble() * (graph.maxLongitude - graph.minLongitude);
+                String travelMode = random.nextBoolean() ? "WALKING" : "BICYCLING";
+                int modeMask = "WALKING".equals(travelMode) ? MODE_WALKING : MODE_BICYCLING;
+                String message = String.format(Locale.US, "graph %d query %d %s", graphIndex, query, travelMode);
+
+                int originNode = graph.findNearestNode(originLatitude, originLongitude, modeMask);
+                int destinationNode = graph.findNearestNode(destinationLatitude, destinationLongitude, modeMask);
+                double expectedCost = graph.dijkstra(originNode, destinationNode, modeMask);
+                int[] path = router.findNodePath(originLatitude, originLongitude, destinationLatitude, destinationLongitude, travelMode);
+                if (Double.isInfinite(expectedCost)) {
+                    assertNull(message, path);
+                    continue;
+                }
+                assertNotNull(message, path);
+                assertEquals(message, originNode, path[0]);
+                assertEquals(message, destinationNode, path[path.length - 1]);
+                assertEquals(message, expectedCost, graph.pathCost(path, modeMask), 1e-4 * Math.max(1.0d, expectedCost));
+            }
+        }
+    }
+
+    //endregion
+
+    //region Helpers
+
+    private ByteBuffer readFixture() throws IOException {
+        return ByteBuffer.wrap(readBytes());
+    }
+
+    private byte[] readBytes() throws IOException {
+        InputStream inputStream = getClass().getResourceAsStream(FIXTURE_GRAPH);
+        assertNotNull(FIXTURE_GRAPH, inputStream);
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    // Jittered grid around the Quad with missing streets, walking or bicycling only streets and one way bike lanes.
+    // Lengths are never shorter than the straight line, as on the real map.
+    static ByteBuffer buildGridGraph(Random random, int rows, int columns) {
+        int nodeCount = rows * columns;
+        int[] coordinates = new int[nodeCount * 2];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int node = row * columns + column;
+                coordinates[node * 2] = (int) Math.round((40.1000 + row * 0.0003 + random.nextDouble() * 0.0001) * 1000000);
+                coordinates[node * 2 + 1] = (int) Math.round((-88.2400 + column * 0.0004 + random.nextDouble() * 0.0001) * 1000000);
+            }
+        }
+        double longitudeScale = Math.cos(Math.toRadians(coordinates[0] / 1000000.0d));
+        List<List<float[]>> edges = new ArrayList<>(nodeCount);
+        for (int node = 0; node < nodeCount; node++) {
+            edges.add(new ArrayList<>());
+        }
+        int edgeCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            int row = node / columns;
+            int column = node % columns;
+            int[] neighbours = {(column + 1 < columns) ? node + 1 : -1, (row + 1 < rows) ? node + columns : -1};
+            for (int neighbour : neighbours) {
+                if ((neighbour < 0) || (random.nextDouble() < 0.15)) {
+                    continue;
+                }
+                double dx = (coordinates[neighbour * 2 + 1] - coordinates[node * 2 + 1]) / 1000000.0d * longitudeScale;
+                double dy = (coordinates[neighbour * 2] - coordinates[node * 2]) / 1000000.0d;
+                float length = (float) (Math.sqrt(dx * dx + dy * dy) * METERS_PER_DEGREE * (1.0d + random.nextDouble() * 0.3d));
+                int modes = 1 + random.nextInt(3);
+                int backwardModes = ((modes & MODE_BICYCLING) != 0) && (random.nextDouble() < 0.2) ? (modes & ~MODE_BICYCLING) : modes;
+                edges.get(node).add(new float[]{neighbour, length, modes});
+                edgeCount++;
+                if (backwardModes != 0) {
+                    edges.get(neighbour).add(new float[]{node, length, backwardModes});
+                    edgeCount++;
+                }
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(16 + 4 * (nodeCount * 3 + 1 + edgeCount * 2) + edgeCount).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0x31475243).putInt(1).putInt(nodeCount).putInt(edgeCount);
+        for (int coordinate : coordinates) {
+            buffer.putInt(coordinate);
+        }
+        int offset = 0;
+        for (List<float[]> nodeEdges : edges) {
+            buffer.putInt(offset);
+            offset += nodeEdges.size();
+        }
+        buffer.putInt(offset);
+        for (List<float[]> nodeEdges : edges) {
+            for (float[] edge : nodeEdges) {
+                buffer.putInt((int) edge[0]);
+            }
+        }
+        for (List<float[]> nodeEdges : edges) {
+            for (float[] edge : nodeEdges) {
+                buffer.putFloat(edge[1]);
+            }
+        }
+        for (List<float[]> nodeEdges : edges) {
+            for (float[] edge : nodeEdges) {
+                buffer.put((byte) edge[2]);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Reference reader of the graph format, independent from CampusRouter
+    static final class Graph {
+
+        final int nodeCount;
+        final int[] coordinates;
+        final int[] offsets;
+        final int[] targets;
+        final float[] lengths;
+        final byte[] modes;
+        final double longitudeScale;
+        double minLatitude = Double.MAX_VALUE, maxLatitude = -Double.MAX_VALUE;
+        double minLongitude = Double.MAX_VALUE, maxLongitude = -Double.MAX_VALUE;
+
+        Graph(ByteBuffer graph) {
+            ByteBuffer buffer = graph.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(8);
+            nodeCount = buffer.getInt();
+            int edgeCount = buffer.getInt();
+            coordinates = new int[nodeCount * 2];
+            offsets = new int[nodeCount + 1];
+            targets = new int[edgeCount];
+            lengths = new float[edgeCount];
+            modes = new byte[edgeCount];
+            buffer.asIntBuffer().get(coordinates);
+            buffer.position(buffer.position() + coordinates.length * 4);
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + offsets.length * 4);
+            buffer.asIntBuffer().get(targets);
+            buffer.position(buffer.position() + targets.length * 4);
+            buffer.asFloatBuffer().get(lengths);
+            buffer.position(buffer.position() + lengths.length * 4);
+            buffer.get(modes);
+            longitudeScale = Math.cos(Math.toRadians(getLatitude(0)));
+            for (int node = 0; node < nodeCount; node++) {
+                minLatitude = Math.min(minLatitude, getLatitude(node));
+                maxLatitude = Math.max(maxLatitude, getLatitude(node));
+                minLongitude = Math.min(minLongitude, getLongitude(node));
+                maxLongitude = Math.max(maxLongitude, getLongitude(node));
+            }
+        }
+
+        double getLatitude(int node) {
+            return coordinates[node * 2] / 1000000.0d;
+        }
+
+        double getLongitude(int node) {
+            return coordinates[node * 2 + 1] / 1000000.0d;
+        }
+
+        int findNode(double latitude, double longitude) {
+            for (int node = 0; node < nodeCount; node++) {
+                if ((coordinates[node * 2] == Math.round(latitude * 1000000)) && (coordinates[node * 2 + 1] == Math.round(longitude * 1000000))) {
+                    return node;
+                }
+            }
+            return -1;
+        }
+
+        int[] findNodes(double... latitudeLongitudePairs) {
+            int[] nodes = new int[latitudeLongitudePairs.length / 2];
+            for (int index = 0; index < nodes.length; index++) {
+                nodes[index] = findNode(latitudeLongitudePairs[index * 2], latitudeLongitudePairs[index * 2 + 1]);
+                assertTrue(nodes[index] >= 0);
+            }
+            return nodes;
+        }
+
+        boolean hasEdge(int source, int target, int modeMask) {
+            return !Float.isNaN(edgeLength(source, target, modeMask));
+        }
+
+        float edgeLength(int source, int target, int modeMask) {
+            float length = Float.NaN;
+            for (int edge = offsets[source]; edge < offsets[source + 1]; edge++) {
+                if ((targets[edge] == target) && ((modes[edge] & modeMask) != 0) && !(lengths[edge] >= length)) {
+                    length = lengths[edge];
+                }
+            }
+            return length;
+        }
+
+        double pathCost(int[] path, int modeMask) {
+            double cost = 0.0d;
+            for (int index = 1; index < path.length; index++) {
+                float length = edgeLength(path[index - 1], path[index], modeMask);
+                assertFalse("No edge " + path[index - 1] + " -> " + path[index], Float.isNaN(length));
+                cost += length;
+            }
+            return cost;
+        }
+
+        int findNearestNode(double latitude, double longitude, int modeMask) {
+            int nearestNode = -1;
+            double nearestDistance = Double.MAX_VALUE;
+            for (int node = 0; node < nodeCount; node++) {
+                boolean routable = false;
+                for (int edge = offsets[node]; (edge < offsets[node + 1]) && !routable; edge++) {
+                    routable = (modes[edge] & modeMask) != 0;
+                }
+                double dx = (getLongitude(node) - longitude) * longitudeScale;
+                double dy = getLatitude(node) - latitude;
+                double distance = dx * dx + dy * dy;
+                if (routable && (distance < nearestDistance)) {
+                    nearestDistance = distance;
+                    nearestNode = node;
+                }
+            }
+            return nearestNode;
+        }
+
+        double dijkstra(int originNode, int destinationNode, int modeMask) {
+            if ((originNode < 0) || (destinationNode < 0)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double[] costs = new double[nodeCount];
+            Arrays.fill(costs, Double.POSITIVE_INFINITY);
+            costs[originNode] = 0.0d;
+            PriorityQueue<double[]> queue = new PriorityQueue<>(64, (first, second) -> Double.compare(first[0], second[0]));
+            queue.add(new double[]{0.0d, originNode});
+            while (!queue.isEmpty()) {
+                double[] entry = queue.poll();
+                int node = (int) entry[1];
+                if (entry[0] > costs[node]) {
+                    continue;
+                }
+                if (node == destinationNode) {
+                    return entry[0];
+                }
+                for (int edge = offsets[node]; edge < offsets[node + 1]; edge++) {
+                    double cost = entry[0] + lengths[edge];
+                    if (((modes[edge] & modeMask) != 0) && (cost < costs[targets[edge]])) {
+                        costs[targets[edge]] = cost;
+                        queue.add(new double[]{cost, targets[edge]});
+                    }
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs only on request: ./gradlew testDebugUnitTest -Pbenchmarks
+ */
+public class DirectionsClientBenchmark {
+
+    private HttpServer server;
+    private byte[] fixture;
+
+    @Before
+    public void startServer() throws IOException {
+        fixture = DirectionsClientTest.readFixture(DirectionsClientTest.DRIVING_FIXTURE);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(DirectionsClientTest.PATH, exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, fixture.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(fixture);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void parseTimeAndAllocations() throws IOException {
+        DirectionsClient client = new DirectionsClient(getBaseUrl(), null);
+        int iterations = 100;
+        for (int warmUp = 0; warmUp < 2; warmUp++) {
+            for (int iteration = 0; iteration < iterations; iteration++) {
+                assertNotNull(client.findRoute(40.1092, -88.2272, 41.0, -87.9, "DRIVING"));
+                assertNotNull(DirectionsClient.parse(DirectionsClientTest.newReader(fixture), "DRIVING"));
+                assertNotNull(new JsonParser().parse(DirectionsClientTest.newReader(fixture)));
+            }
+        }
+
+        long allocatedBytes = getAllocatedBytes();
+        long startTime = System.nanoTime();
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            DirectionsClient.parse(DirectionsClientTest.newReader(fixture), "DRIVING");
+        }
+        long parseTime = System.nanoTime() - startTime;
+        long parseAllocatedBytes = getAllocatedBytes() - allocatedBytes;
+
+        allocatedBytes = getAllocatedBytes();
+        startTime = System.nanoTime();
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            new JsonParser().parse(DirectionsClientTest.newReader(fixture));
+        }
+        long treeTime = System.nanoTime() - startTime;
+        long treeAllocatedBytes = getAllocatedBytes() - allocatedBytes;
+
+        allocatedBytes = getAllocatedBytes();
+        startTime = System.nanoTime();
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            client.findRoute(40.1092, -88.2272, 41.0, -87.9, "DRIVING");
+        }
+        long requestTime = System.nanoTime() - startTime;
+        long requestAllocatedBytes = getAllocatedBytes() - allocatedBytes;
+
+        System.out.println(String.format(Locale.US, "Parsing a %d KB response: streaming %.2f ms / %d KB allocated, Gson tree %.2f ms / %d KB allocated",
+                fixture.length / 1024, parseTime / 1000000.0d / iterations, parseAllocatedBytes / 1024 / iterations,
+                treeTime / 1000000.0d / iterations, treeAllocatedBytes / 1024 / iterations));
+        System.out.println(String.format(Locale.US, "findRoute against the stub server: %.2f ms / %d KB allocated per request",
+                requestTime / 1000000.0d / iterations, requestAllocatedBytes / 1024 / iterations));
+        if (parseAllocatedBytes > 0) {
+            assertTrue(parseAllocatedBytes < treeAllocatedBytes);
+        }
+    }
+
+    private String getBaseUrl() {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort() + DirectionsClientTest.PATH;
+    }
+
+    // Bytes allocated by the current thread, 0 when the JVM cannot tell
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if ((threadMXBean instanceof com.sun.management.ThreadMXBean) &&
+                ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
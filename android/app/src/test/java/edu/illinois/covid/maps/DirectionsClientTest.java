@@ -0,0 +1,278 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DirectionsClientTest {
+
+    // Directions API responses for campus trips, the long one is a driving route with an alternative
+    private static final String WALKING_FIXTURE = "/directions_walking.json";
+    private static final String TRANSIT_FIXTURE = "/directions_transit.json";
+    static final String DRIVING_FIXTURE = "/directions_driving_long.json";
+    private static final String ZERO_RESULTS_FIXTURE = "/directions_zero_results.json";
+    private static final String REQUEST_DENIED_FIXTURE = "/directions_request_denied.json";
+
+    static final String PATH = "/maps/api/directions/json";
+
+    private HttpServer server;
+    private volatile byte[] responseBody;
+    private volatile int responseCode;
+    private volatile Map<String, String> lastQuery;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(PATH, exchange -> {
+            lastQuery = parseQuery(exchange.getRequestURI().getRawQuery());
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(responseCode, responseBody.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(responseBody);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    //region Parsing
+
+    @Test
+    public void parsesWalkingFixture() throws IOException {
+        NavRoute route = parseFixture(WALKING_FIXTURE, "WALKING");
+        assertNotNull(route);
+        assertEquals("WALKING", route.travelMode);
+        assertEquals(546, route.getDistance());
+        assertEquals(390, route.getDuration());
+        assertEquals(4, route.legs.get(0).steps.size());
+        NavRoute.Step lastStep = route.legs.get(0).steps.get(3);
+        assertEquals("Turn <b>right</b> onto <b>W Springfield Ave</b><div style=\"font-size:0.9em\">Destination will be on the left</div>",
+                lastStep.instruction);
+        assertEquals(40.1092, route.legs.get(0).steps.get(0).getLatitude(0), 1e-9);
+        assertEquals(-88.2272, route.legs.get(0).steps.get(0).getLongitude(0), 1e-9);
+        assertMatchesReference(WALKING_FIXTURE, route);
+    }
+
+    @Test
+    public void skipsTransitDetailsAndSubSteps() throws IOException {
+        NavRoute route = parseFixture(TRANSIT_FIXTURE, "TRANSIT");
+        assertNotNull(route);
+        assertEquals(3, route.legs.get(0).steps.size());
+        assertEquals("Bus towards Downtown Champaign", route.legs.get(0).steps.get(1).instruction);
+        assertMatchesReference(TRANSIT_FIXTURE, route);
+    }
+
+    @Test
+    public void keepsOnlyTheFirstRoute() throws IOException {
+        NavRoute route = parseFixture(DRIVING_FIXTURE, "DRIVING");
+        assertNotNull(route);
+        assertEquals(80, route.legs.get(0).steps.size());
+        assertMatchesReference(DRIVING_FIXTURE, route);
+    }
+
+    @Test
+    public void returnsNullWithoutRoute() throws IOException {
+        assertNull(parseFixture(ZERO_RESULTS_FIXTURE, "WALKING"));
+        assertNull(parseFixture(REQUEST_DENIED_FIXTURE, "WALKING"));
+    }
+
+    @Test
+    public void decodesPolylines() {
+        DirectionsClient.PolylineBuffer polylineBuffer = new DirectionsClient.PolylineBuffer();
+        // Example of the polyline algorithm documentation
+        assertArrayEquals(new double[]{38.5, -120.2, 40.7, -120.95, 43.252, -126.453},
+                polylineBuffer.decode("_p~iF~ps|U_ulLnnqC_mqNvxq`@"), 1e-9);
+        assertEquals(0, polylineBuffer.decode("").length);
+        assertEquals(0, polylineBuffer.decode("_p~iF~ps|U_").length);
+        assertEquals(0, polylineBuffer.decode("_p~iF").length);
+    }
+
+    //endregion
+
+    //region Stub server
+
+    @Test
+    public void findRouteRequestsAndParsesResponse() throws IOException {
+        serve(200, WALKING_FIXTURE);
+        DirectionsClient client = new DirectionsClient(getBaseUrl(), "test key&=");
+        NavRoute route = client.findRoute(40.1092, -88.2272, 40.1125, -88.2269, "WALKING");
+        assertNotNull(route);
+        assertMatchesReference(WALKING_FIXTURE, route);
+        assertEquals("40.109200,-88.227200", lastQuery.get("origin"));
+        assertEquals("40.112500,-88.226900", lastQuery.get("destination"));
+        assertEquals("walking", lastQuery.get("mode"));
+        assertEquals("test key&=", lastQuery.get("key"));
+
+        new DirectionsClient(getBaseUrl(), null).findRoute(40.1092, -88.2272, 40.1125, -88.2269, "TRANSIT");
+        assertEquals("transit", lastQuery.get("mode"));
+        assertNull(lastQuery.get("key"));
+    }
+
+    @Test
+    public void findRouteFailsGracefully() throws IOException {
+        DirectionsClient client = new DirectionsClient(getBaseUrl(), null);
+        serve(500, WALKING_FIXTURE);
+        assertNull(client.findRoute(40.1092, -88.2272, 40.1125, -88.2269, "WALKING"));
+        serve(200, ZERO_RESULTS_FIXTURE);
+        assertNull(client.findRoute(40.1092, -88.2272, 40.1125, -88.2269, "WALKING"));
+        responseBody = "{\"routes\": [{\"legs\": [".getBytes(StandardCharsets.UTF_8);
+        assertNull(client.findRoute(40.1092, -88.2272, 40.1125, -88.2269, "WALKING"));
+    }
+
+    //endregion
+
+    //region Helpers
+
+    private void serve(int code, String fixture) throws IOException {
+        responseCode = code;
+        responseBody = readFixture(fixture);
+    }
+
+    private String getBaseUrl() {
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort() + PATH;
+    }
+
+    private NavRoute parseFixture(String fixture, String travelMode) throws IOException {
+        try (Reader reader = newReader(readFixture(fixture))) {
+            return DirectionsClient.parse(reader, travelMode);
+        }
+    }
+
+    static Reader newReader(byte[] bytes) {
+        return new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8);
+    }
+
+    static byte[] readFixture(String fixture) throws IOException {
+        InputStream inputStream = DirectionsClientTest.class.getResourceAsStream(fixture);
+        assertNotNull(fixture, inputStream);
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, count);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    // Compares the streamed route with the first route of the fixture read as a Gson tree
+    private void assertMatchesReference(String fixture, NavRoute route) throws IOException {
+        JsonObject response = new JsonParser().parse(newReader(readFixture(fixture))).getAsJsonObject();
+        JsonArray legs = response.getAsJsonArray("routes").get(0).getAsJsonObject().getAsJsonArray("legs");
+        assertEquals(legs.size(), route.legs.size());
+        for (int legIndex = 0; legIndex < legs.size(); legIndex++) {
+            JsonObject leg = legs.get(legIndex).getAsJsonObject();
+            NavRoute.Leg navLeg = route.legs.get(legIndex);
+            assertEquals(getValue(leg, "distance"), navLeg.distance);
+            assertEquals(getValue(leg, "duration"), navLeg.duration);
+            JsonArray steps = leg.getAsJsonArray("steps");
+            assertEquals(steps.size(), navLeg.steps.size());
+            for (int stepIndex = 0; stepIndex < steps.size(); stepIndex++) {
+                JsonObject step = steps.get(stepIndex).getAsJsonObject();
+                NavRoute.Step navStep = navLeg.steps.get(stepIndex);
+                String message = fixture + " step " + stepIndex;
+                assertEquals(message, step.get("html_instructions").getAsString(), navStep.instruction);
+                assertEquals(message, getValue(step, "distance"), navStep.distance);
+                assertEquals(message, getValue(step, "duration"), navStep.duration);
+                String points = step.getAsJsonObject("polyline").get("points").getAsString();
+                assertArrayEquals(message, referenceDecode(points), navStep.coordinates, 1e-9);
+                JsonObject startLocation = step.getAsJsonObject("start_location");
+                assertEquals(message, startLocation.get("lat").getAsDouble(), navStep.getLatitude(0), 1e-5);
+                assertEquals(message, startLocation.get("lng").getAsDouble(), navStep.getLongitude(0), 1e-5);
+            }
+        }
+    }
+
+    private static int getValue(JsonObject object, String name) {
+        return object.getAsJsonObject(name).get("value").getAsInt();
+    }
+
+    // Straightforward decoder of the encoded polyline algorithm format
+    private static double[] referenceDecode(String encoded) {
+        List<Double> values = new ArrayList<>();
+        int index = 0;
+        long[] totals = new long[2];
+        while (index < encoded.length()) {
+            for (int coordinate = 0; coordinate < 2; coordinate++) {
+                long result = 0;
+                int shift = 0;
+                int chunk;
+                do {
+                    chunk = encoded.charAt(index++) - 63;
+                    result |= (long) (chunk & 0x1f) << shift;
+                    shift += 5;
+                } while (chunk >= 0x20);
+                totals[coordinate] += ((result & 1) != 0) ? -((result + 1) >> 1) : (result >> 1);
+                values.add(totals[coordinate] / 1e5);
+            }
+        }
+        double[] coordinates = new double[values.size()];
+        for (int position = 0; position < coordinates.length; position++) {
+            coordinates[position] = values.get(position);
+        }
+        return coordinates;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int separator = parameter.indexOf('=');
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    //endregion
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParkingLotIndexTest {
+
+    private static final double METERS_PER_DEGREE = 111320.0d;
+    private static final double ORIGIN_LATITUDE = RouteGeometryIndexTest.ORIGIN_LATITUDE;
+    private static final double ORIGIN_LONGITUDE = RouteGeometryIndexTest.ORIGIN_LONGITUDE;
+
+    private final Random random = new Random(20200920);
+
+    //region Containment
+
+    @Test
+    public void findLotContainingMatchesBruteForce() {
+        for (int lotCount : new int[]{1, 3, 4, 5, 9, 17, 64, 250}) {
+            List<HashMap<String, Object>> lots = new ArrayList<>();
+            for (int lot = 0; lot < lotCount; lot++) {
+                // Overlapping star shaped lots of 20 to 200 m, some of them concave
+                double latitude = ORIGIN_LATITUDE + random.nextDouble() * 0.02;
+                double longitude = ORIGIN_LONGITUDE + random.nextDouble() * 0.02;
+                lots.add(buildLot(lot, latitude, longitude, 10.0d + random.nextDouble() * 90.0d, 3 + random.nextInt(12)));
+            }
+            List<MapExplore> explores = MapExplore.listFromArgument(lots);
+            ParkingLotIndex index = ParkingLotIndex.build(explores);
+            assertEquals(lotCount, index.getLotCount());
+            for (int query = 0; query < 2000; query++) {
+                double latitude = ORIGIN_LATITUDE + (random.nextDouble() - 0.05d) * 0.022;
+                double longitude = ORIGIN_LONGITUDE + (random.nextDouble() - 0.05d) * 0.022;
+                List<Integer> expected = bruteForceContaining(index, latitude, longitude);
+                int lot = index.findLotContaining(latitude, longitude);
+                String message = String.format(Locale.US, "%d lots query %d", lotCount, query);
+                if (expected.isEmpty()) {
+                    assertEquals(message, -1, lot);
+                } else {
+                    assertTrue(message, expected.contains(lot));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsEveryLotAfterKdOrdering() {
+        // Disjoint lots in a shuffled grid, the k-d ordering must keep each of them reachable
+        for (int lotCount : new int[]{1, 4, 5, 8, 13, 31, 32, 33, 100}) {
+            int columns = (int) Math.ceil(Math.sqrt(lotCount));
+            List<Integer> cells = new ArrayList<>();
+            for (int cell = 0; cell < lotCount; cell++) {
+                cells.add(cell);
+            }
+            Collections.shuffle(cells, random);
+            List<HashMap<String, Object>> lots = new ArrayList<>();
+            for (int lot = 0; lot < lotCount; lot++) {
+                int cell = cells.get(lot);
+                double latitude = ORIGIN_LATITUDE + (cell / columns) * 0.002;
+                double longitude = ORIGIN_LONGITUDE + (cell % columns) * 0.002;
+                lots.add(buildLot(lot, latitude, longitude, 20.0d + random.nextDouble() * 60.0d, 3 + random.nextInt(8)));
+            }
+            ParkingLotIndex index = ParkingLotIndex.build(MapExplore.listFromArgument(lots));
+            for (int lot = 0; lot < lotCount; lot++) {
+                MapExplore explore = index.getLot(lot);
+                // Lots are star shaped around their entrance
+                assertEquals(lotCount + " lots", lot, index.findLotContaining(explore.latitude, explore.longitude));
+            }
+            assertEquals(-1, index.findLotContaining(ORIGIN_LATITUDE + 0.001, ORIGIN_LONGITUDE + 0.001));
+        }
+    }
+
+    @Test
+    public void skipsOtherExploresAndDegenerateLots() {
+        List<HashMap<String, Object>> explores = new ArrayList<>();
+        explores.add(buildLot(0, ORIGIN_LATITUDE, ORIGIN_LONGITUDE, 50.0d, 6));
+        HashMap<String, Object> twoPointLot = buildLot(1, ORIGIN_LATITUDE, ORIGIN_LONGITUDE, 50.0d, 2);
+        explores.add(twoPointLot);
+        HashMap<String, Object> closedTriangle = buildLot(2, ORIGIN_LATITUDE + 0.01, ORIGIN_LONGITUDE, 50.0d, 3);
+        List<Object> polygon = new ArrayList<>(getPolygon(closedTriangle));
+        polygon.add(polygon.get(0));
+        closedTriangle.put("polygon", polygon);
+        explores.add(closedTriangle);
+        HashMap<String, Object> event = new HashMap<>();
+        event.put("eventId", "event");
+        explores.add(event);
+
+        ParkingLotIndex index = ParkingLotIndex.build(MapExplore.listFromArgument(explores));
+        assertEquals(2, index.getLotCount());
+        // The closing vertex is not part of the outline
+        assertEquals(3, index.getOutline(1, PolylineLevels.getLevelCount() - 1).size());
+        assertEquals(-1, ParkingLotIndex.build(null).findLotContaining(ORIGIN_LATITUDE, ORIGIN_LONGITUDE));
+    }
+
+    //endregion
+
+    //region Outlines
+
+    @Test
+    public void outlinesMatchDouglasPeucker() {
+        List<HashMap<String, Object>> lots = new ArrayList<>();
+        for (int lot = 0; lot < 40; lot++) {
+            double latitude = ORIGIN_LATITUDE + random.nextDouble() * 0.02;
+            double longitude = ORIGIN_LONGITUDE + random.nextDouble() * 0.02;
+            lots.add(buildLot(lot, latitude, longitude, 5.0d + random.nextDouble() * 500.0d, 3 + random.nextInt(60)));
+        }
+        ParkingLotIndex index = ParkingLotIndex.build(MapExplore.listFromArgument(lots));
+        int fullLevel = PolylineLevels.getLevelCount() - 1;
+        int simplifiedCount = 0;
+        for (int lot = 0; lot < index.getLotCount(); lot++) {
+            List<LatLng> fullOutline = index.getOutline(lot, fullLevel);
+            assertEquals(getPolygon(lots.get(lot)).size(), fullOutline.size());
+            for (int level = 0; level < fullLevel; level++) {
+                String message = String.format(Locale.US, "lot %d level %d", lot, level);
+                List<LatLng> expected = simplifyRing(fullOutline, PolylineLevels.getTolerance(level, fullOutline.get(0).latitude));
+                List<LatLng> outline = index.getOutline(lot, level);
+                if (expected.size() < 3) {
+                    assertNull(message, outline);
+                    continue;
+                }
+                assertNotNull(message, outline);
+                assertEquals(message, expected.size(), outline.size());
+                for (int vertex = 0; vertex < expected.size(); vertex++) {
+                    assertEquals(message, expected.get(vertex).latitude, outline.get(vertex).latitude, 0.0d);
+                    assertEquals(message, expected.get(vertex).longitude, outline.get(vertex).longitude, 0.0d);
+                }
+                if (outline.size() < fullOutline.size()) {
+                    simplifiedCount++;
+                }
+            }
+        }
+        assertTrue(simplifiedCount > 0);
+    }
+
+    @Test
+    public void tinyLotsHaveNoCoarseOutline() {
+        List<HashMap<String, Object>> lots = new ArrayList<>();
+        lots.add(buildLot(0, ORIGIN_LATITUDE, ORIGIN_LONGITUDE, 0.5d, 8)); // about a meter across
+        lots.add(buildLot(1, ORIGIN_LATITUDE + 0.01, ORIGIN_LONGITUDE, 3000.0d, 8));
+        ParkingLotIndex index = ParkingLotIndex.build(MapExplore.listFromArgument(lots));
+        int fullLevel = PolylineLevels.getLevelCount() - 1;
+        for (int level = 0; level < fullLevel; level++) {
+            assertNull("level " + level, index.getOutline(0, level));
+        }
+        assertEquals(8, index.getOutline(0, fullLevel).size());
+        assertNotNull(index.getOutline(1, 0));
+    }
+
+    //endregion
+
+    //region Helpers
+
+    // Polygon that is star shaped around its center, gaps between vertex angles stay below 180 degrees so the center
+    // is inside; the entrance is the center
+    private HashMap<String, Object> buildLot(int lot, double latitude, double longitude, double radius, int vertexCount) {
+        double longitudeScale = Math.cos(Math.toRadians(latitude)) * METERS_PER_DEGREE;
+        List<Object> polygon = new ArrayList<>();
+        double angleStep = 2 * Math.PI / vertexCount;
+        double angle = random.nextDouble() * angleStep;
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            double vertexRadius = radius * (0.3d + 0.7d * random.nextDouble());
+            double vertexAngle = angle + vertex * angleStep + random.nextDouble() * angleStep * 0.4d;
+            polygon.add(buildPoint(latitude + vertexRadius * Math.sin(vertexAngle) / METERS_PER_DEGREE,
+                    longitude + vertexRadius * Math.cos(vertexAngle) / longitudeScale));
+        }
+        HashMap<String, Object> lotMap = new HashMap<>();
+        lotMap.put("lot_id", "lot" + lot);
+        lotMap.put("entrance", buildPoint(latitude, longitude));
+        lotMap.put("polygon", polygon);
+        return lotMap;
+    }
+
+    private static HashMap<String, Object> buildPoint(double latitude, double longitude) {
+        HashMap<String, Object> point = new HashMap<>();
+        point.put("latitude", latitude);
+        point.put("longitude", longitude);
+        return point;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> getPolygon(HashMap<String, Object> lot) {
+        return (List<Object>) lot.get("polygon");
+    }
+
+    private static List<Integer> bruteForceContaining(ParkingLotIndex index, double latitude, double longitude) {
+        List<Integer> containing = new ArrayList<>();
+        for (int lot = 0; lot < index.getLotCount(); lot++) {
+            if (crossingCount(index.getOutline(lot, PolylineLevels.getLevelCount() - 1), latitude, longitude) % 2 == 1) {
+                containing.add(lot);
+            }
+        }
+        return containing;
+    }
+
+    // Number of outline edges crossed by the ray going east from the point
+    private static int crossingCount(List<LatLng> outline, double latitude, double longitude) {
+        int crossings = 0;
+        for (int vertex = 0; vertex < outline.size(); vertex++) {
+            LatLng a = outline.get(vertex);
+            LatLng b = outline.get((vertex + 1) % outline.size());
+            if ((a.latitude > latitude) == (b.latitude > latitude)) {
+                continue;
+            }
+            double crossingLongitude = a.longitude + (latitude - a.latitude) / (b.latitude - a.latitude) * (b.longitude - a.longitude);
+            if (longitude < crossingLongitude) {
+                crossings++;
+            }
+        }
+        return crossings;
+    }
+
+    // Douglas-Peucker on the ring opened at its first vertex, in meters
+    private static List<LatLng> simplifyRing(List<LatLng> ring, double tolerance) {
+        double longitudeScale = Math.cos(Math.toRadians(ring.get(0).latitude)) * METERS_PER_DEGREE;
+        double[] x = new double[ring.size() + 1];
+        double[] y = new double[ring.size() + 1];
+        for (int vertex = 0; vertex <= ring.size(); vertex++) {
+            LatLng point = ring.get(vertex % ring.size());
+            x[vertex] = point.longitude * longitudeScale;
+            y[vertex] = point.latitude * METERS_PER_DEGREE;
+        }
+        boolean[] kept = PolylineLevelsTest.douglasPeucker(x, y, tolerance);
+        List<LatLng> simplified = new ArrayList<>();
+        for (int vertex = 0; vertex < ring.size(); vertex++) {
+            if (kept[vertex]) {
+                simplified.add(ring.get(vertex));
+            }
+        }
+        return simplified;
+    }
+
+    //endregion
+}
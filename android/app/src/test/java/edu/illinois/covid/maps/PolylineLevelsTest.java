@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import com.google.android.gms.maps.model.LatLng;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PolylineLevelsTest {
+
+    private final Random random = new Random(20200915);
+
+    //region Significance
+
+    @Test
+    public void significanceMatchesDouglasPeucker() {
+        for (int polyline = 0; polyline < 50; polyline++) {
+            int pointCount = 3 + random.nextInt(200);
+            double[] x = new double[pointCount];
+            double[] y = new double[pointCount];
+            fillRandomWalk(x, y);
+            double[] significance = PolylineLevels.computeSignificance(x, y);
+
+            // Between any two consecutive significance values the kept points are those of a Douglas-Peucker run
+            double[] tolerances = significance.clone();
+            Arrays.sort(tolerances);
+            for (int index = 0; index + 1 < tolerances.length; index++) {
+                if (Double.isInfinite(tolerances[index + 1]) || (tolerances[index] == tolerances[index + 1])) {
+                    continue;
+                }
+                double tolerance = (tolerances[index] + tolerances[index + 1]) / 2;
+                boolean[] expected = douglasPeucker(x, y, tolerance);
+                for (int point = 0; point < pointCount; point++) {
+                    String message = String.format(Locale.US, "polyline %d tolerance %.3f point %d", polyline, tolerance, point);
+                    assertEquals(message, expected[point], significance[point] > tolerance);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void significanceOfSimpleShapes() {
+        assertEquals(0, PolylineLevels.computeSignificance(new double[0], new double[0]).length);
+        assertTrue(Double.isInfinite(PolylineLevels.computeSignificance(new double[]{1}, new double[]{2})[0]));
+
+        // End points are always kept, points on a straight line never
+        double[] significance = PolylineLevels.computeSignificance(new double[]{0, 1, 2, 3, 4}, new double[]{0, 0, 0, 0, 0});
+        assertTrue(Double.isInfinite(significance[0]));
+        assertTrue(Double.isInfinite(significance[4]));
+        assertEquals(0.0d, significance[1], 0.0d);
+        assertEquals(0.0d, significance[2], 0.0d);
+        assertEquals(0.0d, significance[3], 0.0d);
+
+        // The tip of a triangle carries its height, the point before it its distance to the new side
+        significance = PolylineLevels.computeSignificance(new double[]{0, 4, 5, 10}, new double[]{0, 4.5, 5, 0});
+        assertEquals(5.0d, significance[2], 1e-12);
+        assertEquals(0.5d / Math.sqrt(2.0d), significance[1], 1e-12);
+
+        // A point farther from the new side than the split point is capped, it is dropped together with the split point
+        significance = PolylineLevels.computeSignificance(new double[]{0, 5, 9, 10}, new double[]{0, -0.9, 1, 0});
+        assertEquals(1.0d, significance[2], 1e-12);
+        assertEquals(1.0d, significance[1], 1e-12);
+    }
+
+    @Test
+    public void significanceOfLongZigzag() {
+        // Deep splits must not overflow the explicit stack
+        int pointCount = 2000;
+        double[] x = new double[pointCount];
+        double[] y = new double[pointCount];
+        for (int index = 0; index < pointCount; index++) {
+            x[index] = index;
+            y[index] = (index % 2) * (1.0d + index * 1e-2);
+        }
+        double[] significance = PolylineLevels.computeSignificance(x, y);
+        boolean[] expected = douglasPeucker(x, y, 5.0d);
+        for (int point = 0; point < pointCount; point++) {
+            assertEquals("point " + point, expected[point], significance[point] > 5.0d);
+        }
+    }
+
+    //endregion
+
+    //region Levels
+
+    @Test
+    public void levelsGetFinerWithZoom() {
+        List<LatLng> points = new ArrayList<>();
+        double[] x = new double[2000];
+        double[] y = new double[2000];
+        fillRandomWalk(x, y);
+        for (int index = 0; index < x.length; index++) {
+            points.add(new LatLng(RouteGeometryIndexTest.ORIGIN_LATITUDE + y[index] / 111320.0d,
+                    RouteGeometryIndexTest.ORIGIN_LONGITUDE + x[index] / 85000.0d));
+        }
+        PolylineLevels polylineLevels = new PolylineLevels(points);
+        int lastLevel = PolylineLevels.getLevelCount() - 1;
+        assertSame(points, polylineLevels.getPoints(lastLevel));
+        for (int level = 0; level < lastLevel; level++) {
+            List<LatLng> levelPoints = polylineLevels.getPoints(level);
+            assertTrue(levelPoints.size() >= 2);
+            assertTrue(levelPoints.size() <= polylineLevels.getPoints(level + 1).size());
+            assertSame(points.get(0), levelPoints.get(0));
+            assertSame(points.get(points.size() - 1), levelPoints.get(levelPoints.size() - 1));
+        }
+        assertTrue(polylineLevels.getPoints(0).size() < points.size());
+    }
+
+    @Test
+    public void levelForZoom() {
+        assertEquals(0, PolylineLevels.levelForZoom(2.0f));
+        assertEquals(0, PolylineLevels.levelForZoom(8.0f));
+        assertEquals(1, PolylineLevels.levelForZoom(8.5f));
+        assertEquals(PolylineLevels.getLevelCount() - 1, PolylineLevels.levelForZoom(21.0f));
+        assertTrue(PolylineLevels.getTolerance(0, 40.0d) > PolylineLevels.getTolerance(1, 40.0d));
+    }
+
+    //endregion
+
+    //region Helpers
+
+    // Random walk in meters with steps of up to 50 m
+    private void fillRandomWalk(double[] x, double[] y) {
+        for (int index = 1; index < x.length; index++) {
+            x[index] = x[index - 1] + (random.nextDouble() - 0.5d) * 100.0d;
+            y[index] = y[index - 1] + (random.nextDouble() - 0.5d) * 100.0d;
+        }
+    }
+
+    // Straightforward recursive Douglas-Peucker
+    static boolean[] douglasPeucker(double[] x, double[] y, double tolerance) {
+        boolean[] kept = new boolean[x.length];
+        kept[0] = kept[x.length - 1] = true;
+        simplify(x, y, 0, x.length - 1, tolerance, kept);
+        return kept;
+    }
+
+    private static void simplify(double[] x, double[] y, int first, int last, double tolerance, boolean[] kept) {
+        int farthestIndex = -1;
+        double farthestDistance = tolerance;
+        for (int index = first + 1; index < last; index++) {
+            double distance = segmentDistance(x[index], y[index], x[first], y[first], x[last], y[last]);
+            if (distance > farthestDistance) {
+                farthestDistance = distance;
+                farthestIndex = index;
+            }
+        }
+        if (farthestIndex >= 0) {
+            kept[farthestIndex] = true;
+            simplify(x, y, first, farthestIndex, tolerance, kept);
+            simplify(x, y, farthestIndex, last, tolerance, kept);
+        }
+    }
+
+    private static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double length = Math.hypot(bx - ax, by - ay);
+        if (length == 0) {
+            return Math.hypot(px - ax, py - ay);
+        }
+        double fraction = ((px - ax) * (bx - ax) + (py - ay) * (by - ay)) / (length * length);
+        if (fraction <= 0) {
+            return Math.hypot(px - ax, py - ay);
+        }
+        if (fraction >= 1) {
+            return Math.hypot(px - bx, py - by);
+        }
+        return Math.hypot(px - (ax + fraction * (bx - ax)), py - (ay + fraction * (by - ay)));
+    }
+
+    //endregion
+}
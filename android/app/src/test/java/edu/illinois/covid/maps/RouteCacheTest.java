@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RouteCacheTest {
+
+    private static final long MINUTE = 60 * 1000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final long TIME = 1777778L * 15 * MINUTE; // start of a 15 minute time bucket
+
+    @Test
+    public void keepsRoutesPerTravelMode() {
+        RouteCache routeCache = new RouteCache();
+        NavRoute walkingRoute = buildRoute("WALKING", 3);
+        NavRoute drivingRoute = buildRoute("DRIVING", 12);
+        routeCache.put(buildKey("WALKING", TIME), walkingRoute, TIME);
+        routeCache.put(buildKey("DRIVING", TIME), drivingRoute, TIME);
+        assertSame(walkingRoute, routeCache.get(buildKey("WALKING", TIME), TIME + MINUTE));
+        assertSame(drivingRoute, routeCache.get(buildKey("DRIVING", TIME), TIME + MINUTE));
+        assertNull(routeCache.get(buildKey("BICYCLING", TIME), TIME + MINUTE));
+    }
+
+    //region Expiry
+
+    @Test
+    public void expiresAfterSevenDays() {
+        RouteCache routeCache = new RouteCache();
+        String key = buildKey("WALKING", TIME);
+        routeCache.put(key, buildRoute("WALKING", 2), TIME);
+        assertNotNull(routeCache.get(key, TIME + 6 * DAY));
+        assertNotNull(routeCache.get(key, TIME + 7 * DAY));
+        assertNull(routeCache.get(key, TIME + 7 * DAY + 1));
+        // Removed, not only hidden
+        assertNull(routeCache.get(key, TIME));
+    }
+
+    @Test
+    public void expiresWithTimeBucket() {
+        RouteCache routeCache = new RouteCache();
+        for (String travelMode : new String[]{"DRIVING", "TRANSIT"}) {
+            String key = buildKey(travelMode, TIME);
+            routeCache.put(key, buildRoute(travelMode, 2), TIME);
+            assertNotNull(travelMode, routeCache.get(key, TIME + 14 * MINUTE));
+            assertNull(travelMode, routeCache.get(key, TIME + 15 * MINUTE));
+        }
+        String walkingKey = buildKey("WALKING", TIME);
+        routeCache.put(walkingKey, buildRoute("WALKING", 2), TIME);
+        assertNotNull(routeCache.get(walkingKey, TIME + 15 * MINUTE));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        RouteCache routeCache = new RouteCache();
+        String[] keys = new String[25];
+        for (int index = 0; index < keys.length; index++) {
+            keys[index] = "key" + index;
+            routeCache.put(keys[index], buildRoute("WALKING", 2), TIME);
+            if (index == 20) {
+                assertNotNull(routeCache.get(keys[0], TIME)); // keeps the first one recent
+            }
+        }
+        assertNotNull(routeCache.get(keys[0], TIME));
+        assertNull(routeCache.get(keys[1], TIME));
+        assertNotNull(routeCache.get(keys[2], TIME));
+    }
+
+    @Test
+    public void keysShareOriginCells() {
+        assertEquals(RouteCache.buildKey(40.10920, -88.22720, 40.1125, -88.2269, "WALKING", TIME, "en"),
+                RouteCache.buildKey(40.10940, -88.22740, 40.1125, -88.2269, "WALKING", TIME + DAY, "en"));
+        assertNotEquals(RouteCache.buildKey(40.10920, -88.22720, 40.1125, -88.2269, "WALKING", TIME, "en"),
+                RouteCache.buildKey(40.11020, -88.22720, 40.1125, -88.2269, "WALKING", TIME, "en"));
+        assertNotEquals(RouteCache.buildKey(40.10920, -88.22720, 40.1125, -88.2269, "TRANSIT", TIME, "en"),
+                RouteCache.buildKey(40.10920, -88.22720, 40.1125, -88.2269, "TRANSIT", TIME + 15 * MINUTE, "en"));
+    }
+
+    @Test
+    public void keysIncludeLanguage() {
+        // Instructions are localized, a route found in one language is not reused in another
+        assertNotEquals(RouteCache.buildKey(40.10920, -88.22720, 40.1125, -88.2269, "WALKING", TIME, "en"),
+                RouteCache.buildKey(40.10920, -88.22720, 40.1125, -88.2269, "WALKING", TIME, "es"));
+    }
+
+    //endregion
+
+    //region Helpers
+
+    private static String buildKey(String travelMode, long time) {
+        return RouteCache.buildKey(40.1092, -88.2272, 40.1125, -88.2269, travelMode, time, "en");
+    }
+
+    private static NavRoute buildRoute(String travelMode, int stepCount) {
+        NavRoute.Step[] steps = new NavRoute.Step[stepCount];
+        for (int index = 0; index < stepCount; index++) {
+            double[] coordinates = {40.1092 + index * 0.001, -88.2272, 40.1092 + (index + 1) * 0.001, -88.2272 + 1e-7};
+            steps[index] = new NavRoute.Step("Head <b>north</b> \u2192 " + index, coordinates, 111 + index, 80 + index);
+        }
+        return new NavRoute(travelMode, Arrays.asList(
+                new NavRoute.Leg(Arrays.asList(steps), 111 * stepCount, 80 * stepCount),
+                new NavRoute.Leg(Arrays.asList(new NavRoute.Step(null, new double[]{40.2, -88.3}, 0, 0)), 0, 0)));
+    }
+
+    //endregion
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs only on request: ./gradlew testDebugUnitTest -Pbenchmarks
+ */
+public class RouteGeometryIndexBenchmark {
+
+    @Test
+    public void findNearestAgainstBruteForce() {
+        Random random = new Random(20200901);
+        NavRoute route = RouteGeometryIndexTest.buildRandomRoute(random, 1, 200, 40); // 7800 segments
+        RouteGeometryIndex index = new RouteGeometryIndex(route);
+        RouteGeometryIndex.Match match = new RouteGeometryIndex.Match();
+        int queries = 2000;
+        double[] latitudes = new double[queries];
+        double[] longitudes = new double[queries];
+        for (int query = 0; query < queries; query++) {
+            latitudes[query] = RouteGeometryIndexTest.ORIGIN_LATITUDE + random.nextDouble() * 0.05;
+            longitudes[query] = RouteGeometryIndexTest.ORIGIN_LONGITUDE + random.nextDouble() * 0.05;
+        }
+        double checksum = 0.0d;
+        for (int warmUp = 0; warmUp < 3; warmUp++) {
+            for (int query = 0; query < queries; query++) {
+                index.findNearest(latitudes[query], longitudes[query], -1, -1, match);
+                checksum += match.distance + RouteGeometryIndexTest.bruteForceNearest(route, latitudes[query], longitudes[query]).distance;
+            }
+        }
+        long startTime = System.nanoTime();
+        for (int query = 0; query < queries; query++) {
+            index.findNearest(latitudes[query], longitudes[query], -1, -1, match);
+            checksum += match.distance;
+        }
+        long indexTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        for (int query = 0; query < queries; query++) {
+            checksum += RouteGeometryIndexTest.bruteForceNearest(route, latitudes[query], longitudes[query]).distance;
+        }
+        long bruteForceTime = System.nanoTime() - startTime;
+        assertTrue(checksum > 0.0d);
+        System.out.println(String.format(Locale.US, "findNearest over %d segments: index %.1f us, brute force %.1f us per query",
+                index.getSegmentCount(), indexTime / 1000.0d / queries, bruteForceTime / 1000.0d / queries));
+    }
+}
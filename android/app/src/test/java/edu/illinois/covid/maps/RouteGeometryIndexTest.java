@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.illinois.covid.maps;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RouteGeometryIndexTest {
+
+    private static final double METERS_PER_DEGREE = 111320.0d;
+    static final double ORIGIN_LATITUDE = 40.1020;
+    static final double ORIGIN_LONGITUDE = -88.2272;
+
+    private final Random random = new Random(20200901);
+
+    @Test
+    public void findNearestMatchesBruteForce() {
+        for (int routeIndex = 0; routeIndex < 20; routeIndex++) {
+            NavRoute route = buildRandomRoute(random, 1 + random.nextInt(3), 1 + random.nextInt(20), 2 + random.nextInt(30));
+            RouteGeometryIndex index = new RouteGeometryIndex(route);
+            RouteGeometryIndex.Match match = new RouteGeometryIndex.Match();
+            for (int query = 0; query < 500; query++) {
+                double latitude = ORIGIN_LATITUDE + (random.nextDouble() - 0.3) * 0.02;
+                double longitude = ORIGIN_LONGITUDE + (random.nextDouble() - 0.3) * 0.02;
+                // Correct, wrong and invalid hints must all give the exact nearest segment
+                int hintLeg = random.nextInt(route.legs.size() + 1) - (random.nextBoolean() ? 1 : 0);
+                int hintStep = random.nextInt(25) - 1;
+
+                assertTrue(index.findNearest(latitude, longitude, hintLeg, hintStep, match));
+                BruteForceMatch expected = bruteForceNearest(route, latitude, longitude);
+                String message = String.format(Locale.US, "route %d query %d", routeIndex, query);
+                assertEquals(message, expected.distance, match.distance, 1e-6);
+                if (expected.unique) {
+                    assertEquals(message, expected.legIndex, match.legIndex);
+                    assertEquals(message, expected.stepIndex, match.stepIndex);
+                    assertEquals(message, expected.fraction, match.fraction, 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findNearestOnRoutePoints() {
+        NavRoute route = buildRandomRoute(random, 2, 5, 10);
+        RouteGeometryIndex index = new RouteGeometryIndex(route);
+        RouteGeometryIndex.Match match = new RouteGeometryIndex.Match();
+        for (NavRoute.Leg leg : route.legs) {
+            for (NavRoute.Step step : leg.steps) {
+                for (int point = 0; point < step.getPointCount(); point++) {
+                    assertTrue(index.findNearest(step.getLatitude(point), step.getLongitude(point), -1, -1, match));
+                    assertEquals(0.0d, match.distance, 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void emptyRouteHasNoMatch() {
+        NavRoute route = new NavRoute("WALKING", Collections.singletonList(
+                new NavRoute.Leg(Collections.singletonList(new NavRoute.Step("", new double[]{ORIGIN_LATITUDE, ORIGIN_LONGITUDE}, 0, 0)), 0, 0)));
+        RouteGeometryIndex index = new RouteGeometryIndex(route);
+        assertEquals(0, index.getSegmentCount());
+        assertFalse(index.findNearest(ORIGIN_LATITUDE, ORIGIN_LONGITUDE, 0, 0, new RouteGeometryIndex.Match()));
+    }
+
+    //region Helpers
+
+    // Random walk in steps of up to about 30 m, split into legs and steps that share their end points
+    static NavRoute buildRandomRoute(Random random, int legCount, int stepsPerLeg, int pointsPerStep) {
+        double latitude = ORIGIN_LATITUDE;
+        double longitude = ORIGIN_LONGITUDE;
+        List<NavRoute.Leg> legs = new ArrayList<>();
+        for (int legIndex = 0; legIndex < legCount; legIndex++) {
+            List<NavRoute.Step> steps = new ArrayList<>();
+            for (int stepIndex = 0; stepIndex < stepsPerLeg; stepIndex++) {
+                double[] coordinates = new double[pointsPerStep * 2];
+                for (int point = 0; point < pointsPerStep; point++) {
+                    if (point > 0) {
+                        latitude += (random.nextDouble() - 0.4) * 0.0003;
+                        longitude += (random.nextDouble() - 0.4) * 0.0003;
+                    }
+                    coordinates[point * 2] = latitude;
+                    coordinates[point * 2 + 1] = longitude;
+                }
+                steps.add(new NavRoute.Step("step " + stepIndex, coordinates, 0, 0));
+            }
+            legs.add(new NavRoute.Leg(steps, 0, 0));
+        }
+        return new NavRoute("WALKING", legs);
+    }
+
+    static final class BruteForceMatch {
+        int legIndex = -1;
+        int stepIndex = -1;
+        double distance = Double.POSITIVE_INFINITY;
+        double fraction;
+        boolean unique = true;
+    }
+
+    // Same local projection as the index: equirectangular around the first route point
+    static BruteForceMatch bruteForceNearest(NavRoute route, double latitude, double longitude) {
+        NavRoute.Step firstStep = route.legs.get(0).steps.get(0);
+        double originLatitude = firstStep.getLatitude(0);
+        double originLongitude = firstStep.getLongitude(0);
+        double longitudeScale = Math.cos(Math.toRadians(originLatitude));
+        double x = (longitude - originLongitude) * longitudeScale * METERS_PER_DEGREE;
+        double y = (latitude - originLatitude) * METERS_PER_DEGREE;
+
+        BruteForceMatch best = new BruteForceMatch();
+        for (int legIndex = 0; legIndex < route.legs.size(); legIndex++) {
+            List<NavRoute.Step> steps = route.legs.get(legIndex).steps;
+            for (int stepIndex = 0; stepIndex < steps.size(); stepIndex++) {
+                NavRoute.Step step = steps.get(stepIndex);
+                for (int point = 1; point < step.getPointCount(); point++) {
+                    double ax = (step.getLongitude(point - 1) - originLongitude) * longitudeScale * METERS_PER_DEGREE;
+                    double ay = (step.getLatitude(point - 1) - originLatitude) * METERS_PER_DEGREE;
+                    double bx = (step.getLongitude(point) - originLongitude) * longitudeScale * METERS_PER_DEGREE;
+                    double by = (step.getLatitude(point) - originLatitude) * METERS_PER_DEGREE;
+                    double dx = bx - ax;
+                    double dy = by - ay;
+                    double lengthSquared = dx * dx + dy * dy;
+                    double fraction = (lengthSquared > 0) ? (((x - ax) * dx + (y - ay) * dy) / lengthSquared) : 0.0d;
+                    fraction = Math.max(0.0d, Math.min(1.0d, fraction));
+                    double distance = Math.hypot(ax + fraction * dx - x, ay + fraction * dy - y);
+                    if (Math.abs(distance - best.distance) < 1e-6) {
+                        best.unique = false; // shared step end points and overlapping segments
+                    } else if (distance < best.distance) {
+                        best.distance = distance;
+                        best.fraction = fraction;
+                        best.legIndex = legIndex;
+                        best.stepIndex = stepIndex;
+                        best.unique = true;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    //endregion
+}
@@ -48,6 +48,7 @@ void main() async {
   WidgetsFlutterBinding.ensureInitialized();
 
   await _init();
+  NativeCommunicator().startupMark('services_initialized');
 
   // do not show the red error widget when release mode
   if (kReleaseMode) {
@@ -14,6 +14,7 @@
  * limitations under the License.
  */
 
+import 'dart:io';
 import 'dart:typed_data';
 import 'package:flutter/services.dart';
 
@@ -22,10 +23,34 @@ class Gallery{
 
   static const MethodChannel _channel = const MethodChannel("edu.illinois.covid/gallery");
 
-  static const String _storeMethodName  = 'store';
+  static const String _storeMethodName         = 'store';
+  static const String _storeBatchMethodName    = 'storeBatch';
+  static const String _storeBeginMethodName    = 'storeBegin';
+  static const String _storeChunkMethodName    = 'storeChunk';
+  static const String _storeEndMethodName      = 'storeEnd';
+  static const String _storeProgressMethodName = 'store.progress';
+  static const String _transcodeMethodName     = 'transcode';
 
-  static const String _bytesParamName   = 'bytes';
-  static const String _nameParamName    = 'name';
+  static const String _bytesParamName      = 'bytes';
+  static const String _pathParamName       = 'path';
+  static const String _nameParamName       = 'name';
+  static const String _imagesParamName     = 'images';
+  static const String _transferIdParamName = 'transferId';
+  static const String _writtenParamName    = 'written';
+  static const String _lengthParamName     = 'length';
+  static const String _transcodeParamName  = 'transcode';
+  static const String _outputPathParamName = 'outputPath';
+  static const String _minWidthParamName   = 'minWidth';
+  static const String _minHeightParamName  = 'minHeight';
+  static const String _maxWidthParamName   = 'maxWidth';
+  static const String _maxHeightParamName  = 'maxHeight';
+  static const String _formatParamName     = 'format';
+  static const String _qualityParamName    = 'quality';
+
+  // Android accepts images in chunks, so that large images do not need a single giant channel message.
+  static const int _chunkSize = 256 * 1024;
+
+  final Map<String, void Function(int written, int length)> _progressListeners = Map();
 
   static final Gallery _instance = Gallery._internal();
 
@@ -33,12 +58,118 @@ class Gallery{
     return _instance;
   }
 
-  Gallery._internal();
+  Gallery._internal() {
+    _channel.setMethodCallHandler(_handleMethodCall);
+  }
 
-  Future<bool> storeImage({Uint8List imageBytes, String name}) async{
+  Future<bool> storeImage({Uint8List imageBytes, String name, void Function(int written, int length) onProgress}) async{
+    if (Platform.isAndroid && (imageBytes != null) && (_chunkSize < imageBytes.length)) {
+      return await _storeImageInChunks(imageBytes: imageBytes, name: name, onProgress: onProgress);
+    }
     return await _channel.invokeMethod(_storeMethodName,{
       _bytesParamName: imageBytes,
       _nameParamName: name
     });
   }
+
+  Future<List<bool>> storeImages({List<Uint8List> imagesBytes, List<String> names}) async {
+    if (imagesBytes == null) {
+      return null;
+    }
+    if (Platform.isAndroid) {
+      List<Map<String, dynamic>> images = [];
+      for (int index = 0; index < imagesBytes.length; index++) {
+        images.add({
+          _bytesParamName: imagesBytes[index],
+          _nameParamName: ((names != null) && (index < names.length)) ? names[index] : null,
+        });
+      }
+      List<dynamic> results = await _channel.invokeMethod(_storeBatchMethodName, {
+        _imagesParamName: images
+      });
+      return results?.cast<bool>();
+    }
+    List<bool> results = [];
+    for (int index = 0; index < imagesBytes.length; index++) {
+      results.add(await storeImage(imageBytes: imagesBytes[index], name: ((names != null) && (index < names.length)) ? names[index] : null));
+    }
+    return results;
+  }
+
+  // Downscales the image to fit in maxWidth x maxHeight, applies its EXIF orientation and re-encodes it natively ('jpeg', 'webp' or 'png').
+  // Pass imagePath for files, so that the file content is read natively instead of being sent over the channel.
+  // Returns null on platforms without native transcoding, callers should fall back to their own processing.
+  Future<Uint8List> transcodeImage({Uint8List imageBytes, String imagePath, int maxWidth, int maxHeight, String format = 'jpeg', int quality = 90}) async {
+    if (!Platform.isAndroid || ((imageBytes == null) && (imagePath == null))) {
+      return null;
+    }
+    return await _channel.invokeMethod(_transcodeMethodName, {
+      _bytesParamName: imageBytes,
+      _pathParamName: imagePath,
+      _maxWidthParamName: maxWidth,
+      _maxHeightParamName: maxHeight,
+      _formatParamName: format,
+      _qualityParamName: quality,
+    });
+  }
+
+  // Transcodes the image file into outputPath natively, so that neither image is sent over the channel.
+  // minWidth and minHeight follow flutter_image_compress: the image shrinks until one side reaches its minimum.
+  // Returns null on platforms without native transcoding, callers should fall back to their own processing.
+  Future<bool> transcodeImageFile({String imagePath, String outputPath, int minWidth, int minHeight, int maxWidth, int maxHeight, String format = 'jpeg', int quality = 90}) async {
+    if (!Platform.isAndroid || (imagePath == null) || (outputPath == null)) {
+      return null;
+    }
+    return await _channel.invokeMethod(_transcodeMethodName, {
+      _pathParamName: imagePath,
+      _outputPathParamName: outputPath,
+      _minWidthParamName: minWidth,
+      _minHeightParamName: minHeight,
+      _maxWidthParamName: maxWidth,
+      _maxHeightParamName: maxHeight,
+      _formatParamName: format,
+      _qualityParamName: quality,
+    });
+  }
+
+  Future<bool> _storeImageInChunks({Uint8List imageBytes, String name, void Function(int written, int length) onProgress}) async {
+    String transferId = await _channel.invokeMethod(_storeBeginMethodName, {
+      _nameParamName: name
+    });
+    if (transferId == null) {
+      return false;
+    }
+    for (int offset = 0; offset < imageBytes.length; offset += _chunkSize) {
+      int end = (offset + _chunkSize < imageBytes.length) ? (offset + _chunkSize) : imageBytes.length;
+      bool chunkStored = await _channel.invokeMethod(_storeChunkMethodName, {
+        _transferIdParamName: transferId,
+        _bytesParamName: Uint8List.sublistView(imageBytes, offset, end),
+      });
+      if (chunkStored != true) {
+        return false;
+      }
+    }
+    if (onProgress != null) {
+      _progressListeners[transferId] = onProgress;
+    }
+    try {
+      return await _channel.invokeMethod(_storeEndMethodName, {
+        _transferIdParamName: transferId
+      });
+    }
+    finally {
+      _progressListeners.remove(transferId);
+    }
+  }
+
+  Future<dynamic> _handleMethodCall(MethodCall call) async {
+    if (call.method == _storeProgressMethodName) {
+      Map<dynamic, dynamic> arguments = call.arguments;
+      void Function(int written, int length) listener = (arguments != null) ? _progressListeners[arguments[_transferIdParamName]] : null;
+      if (listener != null) {
+        listener(arguments[_writtenParamName], arguments[_lengthParamName]);
+      }
+    }
+    return null;
+  }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@
  */
 
 import 'dart:convert';
+import 'dart:io';
 import 'dart:typed_data';
 
 import 'package:flutter/services.dart';
@@ -35,6 +36,9 @@ class NativeCommunicator with Service {
   
   final MethodChannel _platformChannel = const MethodChannel("edu.illinois.covid/core");
 
+  Future<Map<String, dynamic>> _deviceSnapshot;
+  final Set<String> _consumedSnapshotKeys = Set<String>();
+
   // Singletone
   static final NativeCommunicator _communicator = new NativeCommunicator._internal();
 
@@ -63,6 +67,7 @@ class NativeCommunicator with Service {
   }
 
   Future<void> _nativeInit() async {
+    _loadDeviceSnapshot(); // prefetch, do not wait
     try {
       await _platformChannel.invokeMethod('init', { "keys": Config().secretKeys });
     } on PlatformException catch (e) {
@@ -88,6 +93,18 @@ class NativeCommunicator with Service {
     }
   }
 
+  // Prepares the native map SDK ahead of launchMap / launchMapDirections. Android only, does nothing when called again.
+  Future<void> warmUpMap() async {
+    if (!Platform.isAndroid) {
+      return;
+    }
+    try {
+      await _platformChannel.invokeMethod('mapWarmUp');
+    } on PlatformException catch (e) {
+      print(e.message);
+    }
+  }
+
   Future<void> launchMap({dynamic target, dynamic markers}) async {
     try {
       String lastPageName = Analytics().currentPageName;
@@ -154,8 +171,42 @@ class NativeCommunicator with Service {
     return result;
   }
 
+  // Device snapshot
+
+  // Loads device id, firebase info and the startup authorization statuses in a single call.
+  // Resolves to null on platforms that do not support it, callers fall back to the separate calls.
+  Future<Map<String, dynamic>> _loadDeviceSnapshot() {
+    if (_deviceSnapshot == null) {
+      _deviceSnapshot = _platformChannel.invokeMethod('deviceSnapshot').then((dynamic result) {
+        return (result is Map) ? result.cast<String, dynamic>() : null;
+      }).catchError((e) {
+        print(e?.toString());
+        return null;
+      });
+    }
+    return _deviceSnapshot;
+  }
+
+  // Returns a snapshot value that does not change while the app is running.
+  Future<dynamic> _snapshotValue(String key) async {
+    Map<String, dynamic> snapshot = await _loadDeviceSnapshot();
+    return (snapshot != null) ? snapshot[key] : null;
+  }
+
+  // Returns a snapshot status value only for its first query, later queries must reach the native side for the current status.
+  Future<dynamic> _startupSnapshotValue(String key) async {
+    if (_consumedSnapshotKeys.contains(key)) {
+      return null;
+    }
+    _consumedSnapshotKeys.add(key);
+    return await _snapshotValue(key);
+  }
+
   Future<String> queryFirebaseInfo() async {
-    String result;
+    String result = await _snapshotValue('firebaseInfo');
+    if (result != null) {
+      return result;
+    }
     try {
       result = await _platformChannel.invokeMethod('firebaseInfo');
     } on PlatformException catch (e) {
@@ -165,6 +216,12 @@ class NativeCommunicator with Service {
   }
 
   Future<bool> queryNotificationsAuthorization(String method) async {
+    if (method == 'query') {
+      bool snapshotResult = await _startupSnapshotValue('notificationsAuthorization');
+      if (snapshotResult != null) {
+        return snapshotResult;
+      }
+    }
     bool result = false;
     try {
       result = await _platformChannel.invokeMethod('notifications_authorization', {"method": method });
@@ -175,7 +232,10 @@ class NativeCommunicator with Service {
   }
 
   Future<String> queryLocationServicesPermission(String method) async {
-    String result;
+    String result = (method == 'query') ? await _startupSnapshotValue('locationServices') : null;
+    if (result != null) {
+      return result;
+    }
     try {
       result = await _platformChannel.invokeMethod('location_services_permission', {"method": method });
     } on PlatformException catch (e) {
@@ -185,7 +245,10 @@ class NativeCommunicator with Service {
   }
 
   Future<String> getDeviceId() async {
-    String result;
+    String result = await _snapshotValue('deviceId');
+    if ((result != null) && result.isNotEmpty) {
+      return result;
+    }
     try {
       result = await _platformChannel.invokeMethod('deviceId');
     }on PlatformException catch (e) {
@@ -262,6 +325,33 @@ class NativeCommunicator with Service {
     return null;
   }
 
+  // Startup timeline
+
+  // Adds a named point to the native startup timeline. Android only.
+  Future<void> startupMark(String name) async {
+    if (!Platform.isAndroid) {
+      return;
+    }
+    try {
+      await _platformChannel.invokeMethod('startupMark', { "name": name });
+    } on PlatformException catch (e) {
+      print(e.message);
+    }
+  }
+
+  // Returns the recorded startup phases as a list of { "name", "start", "duration" } maps, times are in ms since process start.
+  Future<List<dynamic>> startupTimeline() async {
+    if (!Platform.isAndroid) {
+      return null;
+    }
+    try {
+      return await _platformChannel.invokeMethod('startupTimeline');
+    } on PlatformException catch (e) {
+      print(e.message);
+    }
+    return null;
+  }
+
   Future<void> launchTest() async {
     try {
       await _platformChannel.invokeMethod('test');
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Board of Trustees of the University of Illinois.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import 'dart:io';
+import 'package:flutter/services.dart';
+
+// Android only: SQLite backed key-value storage, every write touches only the changed keys.
+class NativeStorage {
+
+  static const MethodChannel _channel = const MethodChannel("edu.illinois.covid/storage");
+
+  static const String _getMethodName    = 'get';
+  static const String _putMethodName    = 'put';
+  static const String _deleteMethodName = 'delete';
+  static const String _batchMethodName  = 'batch';
+  static const String _scanMethodName   = 'scan';
+
+  static const String _namespaceParamName  = 'namespace';
+  static const String _keysParamName       = 'keys';
+  static const String _entriesParamName    = 'entries';
+  static const String _operationsParamName = 'operations';
+  static const String _prefixParamName     = 'prefix';
+  static const String _maxBytesParamName   = 'maxBytes';
+
+  static final NativeStorage _instance = NativeStorage._internal();
+
+  factory NativeStorage() {
+    return _instance;
+  }
+
+  NativeStorage._internal();
+
+  bool get isSupported {
+    return Platform.isAndroid;
+  }
+
+  // Reads all keys in a single call, missing keys are not present in the result.
+  Future<Map<String, dynamic>> get(List<String> keys, {String namespace}) async {
+    Map<dynamic, dynamic> result = await _channel.invokeMethod(_getMethodName, {
+      _namespaceParamName: namespace,
+      _keysParamName: keys,
+    });
+    return result?.cast<String, dynamic>();
+  }
+
+  // Null values delete their keys. When maxBytes is set, the oldest entries of the namespace are evicted down to it.
+  Future<bool> put(Map<String, dynamic> entries, {String namespace, int maxBytes}) async {
+    return await _channel.invokeMethod(_putMethodName, {
+      _namespaceParamName: namespace,
+      _entriesParamName: entries,
+      _maxBytesParamName: maxBytes,
+    });
+  }
+
+  Future<int> delete(List<String> keys, {String namespace}) async {
+    return await _channel.invokeMethod(_deleteMethodName, {
+      _namespaceParamName: namespace,
+      _keysParamName: keys,
+    });
+  }
+
+  // Operations like {'op': 'put', 'namespace': 'settings', 'key': 'theme', 'value': 'dark'}, executed in one transaction.
+  Future<Map<String, dynamic>> batch(List<Map<String, dynamic>> operations, {String namespace, int maxBytes}) async {
+    Map<dynamic, dynamic> result = await _channel.invokeMethod(_batchMethodName, {
+      _namespaceParamName: namespace,
+      _operationsParamName: operations,
+      _maxBytesParamName: maxBytes,
+    });
+    return result?.cast<String, dynamic>();
+  }
+
+  Future<Map<String, dynamic>> scan({String prefix, String namespace}) async {
+    Map<dynamic, dynamic> result = await _channel.invokeMethod(_scanMethodName, {
+      _namespaceParamName: namespace,
+      _prefixParamName: prefix,
+    });
+    return result?.cast<String, dynamic>();
+  }
+}
@@ -21,6 +21,7 @@ import 'package:illinois/model/Health.dart';
 import 'package:illinois/model/Organization.dart';
 import 'package:illinois/model/UserProfile.dart';
 import 'package:illinois/service/NativeCommunicator.dart';
+import 'package:illinois/service/NativeStorage.dart';
 import 'package:illinois/service/NotificationService.dart';
 import 'package:illinois/service/Service.dart';
 import 'package:illinois/utils/Crypt.dart';
@@ -43,6 +44,15 @@ class Storage with Service {
   SharedPreferences _sharedPreferences;
   Uint8List _encryptionKey;
 
+  // Cached health payloads are kept in the native storage where available, so updating one of them
+  // does not rewrite the whole preferences file. They are all read with a single call on init.
+  static const String _nativeNamespace = 'health';
+  static const List<String> _nativeKeys = [
+    _lastHealthProviderKey, _healthUserKey, _healthUserStatusKey, _healthUserOverrideKey,
+    _healthCountyKey, _healthBuildingAccessRulesKey, _healthFamilyMembersKey,
+  ];
+  Map<String, dynamic> _nativeValues;
+
   @override
   Future<void> initService() async {
     if (_sharedPreferences == null) {
@@ -51,6 +61,9 @@ class Storage with Service {
     if (_encryptionKey == null) {
       _encryptionKey = await NativeCommunicator().encryptionKey(name: 'storage', size: AESCrypt.kCCBlockSizeAES128);
     }
+    if ((_nativeValues == null) && NativeStorage().isSupported) {
+      await _initNativeValues();
+    }
   }
 
   @override
@@ -58,14 +71,57 @@ class Storage with Service {
     if (_sharedPreferences != null) {
       await _sharedPreferences.clear();
     }
+    if (_nativeValues != null) {
+      _nativeValues.clear();
+      await NativeStorage().delete(_nativeKeys, namespace: _nativeNamespace);
+    }
+  }
+
+  Future<void> _initNativeValues() async {
+    try {
+      Map<String, dynamic> values = await NativeStorage().get(_nativeKeys, namespace: _nativeNamespace) ?? Map();
+      // Move over values stored by previous versions. They are removed from the preferences only once the
+      // native storage holds them, if anything fails they keep being read from the preferences.
+      Map<String, dynamic> migratedValues = Map();
+      List<String> migratedKeys = [];
+      for (String key in _nativeKeys) {
+        String value = _sharedPreferences.getString(key);
+        if (value != null) {
+          if (!values.containsKey(key)) {
+            migratedValues[key] = value;
+          }
+          migratedKeys.add(key);
+        }
+      }
+      if (migratedValues.isNotEmpty) {
+        await NativeStorage().put(migratedValues, namespace: _nativeNamespace);
+        values.addAll(migratedValues);
+      }
+      for (String key in migratedKeys) {
+        await _sharedPreferences.remove(key);
+      }
+      _nativeValues = values;
+    }
+    catch (e) {
+      print(e?.toString());
+    }
   }
 
   String getString(String key, {String defaultValue}) {
+    if ((_nativeValues != null) && _nativeKeys.contains(key)) {
+      return _nativeValues[key] ?? defaultValue;
+    }
     return _sharedPreferences.getString(key) ?? defaultValue;
   }
 
   void setString(String key, String value) {
-    if(value != null) {
+    if ((_nativeValues != null) && _nativeKeys.contains(key)) {
+      _nativeValues[key] = value;
+      NativeStorage().put({key: value}, namespace: _nativeNamespace).catchError((e) {
+        print('Failed to store $key: ${e?.toString()}');
+        return false;
+      });
+    } else if(value != null) {
       _sharedPreferences.setString(key, value);
     } else {
       _sharedPreferences.remove(key);
@@ -51,6 +51,9 @@ class _HealthTestLocationsPanelState extends State<HealthTestLocationsPanel>{
   @override
   void initState() {
     
+    // Locations open in the native map
+    NativeCommunicator().warmUpMap();
+
     _selectedCounty = Health().county;
     
     _loadCounties();
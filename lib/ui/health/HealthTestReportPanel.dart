@@ -23,6 +23,7 @@ import 'package:flutter/cupertino.dart';
 import 'package:flutter/material.dart';
 import 'package:illinois/model/Health.dart';
 import 'package:illinois/service/Analytics.dart';
+import 'package:illinois/service/Gallery.dart';
 import 'package:illinois/utils/AppDateTime.dart';
 import 'package:illinois/service/Health.dart';
 import 'package:illinois/service/Localization.dart';
@@ -677,7 +678,15 @@ class _HealthTestReportPanelState extends State<HealthTestReportPanel>{
     double reducedQuality = 100 - reducedCoefficient; //reduces the bytes size of 1 pixel // 80 - give us 20 times smaller, 60 give us 40 times smaller
     File result;
     try {
-      result = await FlutterImageCompress.compressAndGetFile(
+      bool transcoded = await Gallery().transcodeImageFile(imagePath: image.absolute.path, outputPath: imagePath, minWidth: 720, minHeight: 1280, quality: reducedQuality?.toInt() ?? 90);
+      if (transcoded == true) {
+        result = File(imagePath);
+      }
+    } catch(e){
+      print(e);
+    }
+    try {
+      result = result ?? await FlutterImageCompress.compressAndGetFile(
       image.absolute.path, imagePath,
       quality: reducedQuality?.toInt() ?? 90,
       minHeight: 1280,
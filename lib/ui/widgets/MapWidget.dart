@@ -14,6 +14,8 @@
  * limitations under the License.
  */
 
+import 'dart:io';
+
 import 'package:flutter/foundation.dart';
 import 'package:flutter/material.dart';
 import 'package:flutter/services.dart';
@@ -82,6 +84,15 @@ class MapController {
     return _channel.invokeMethod('placePOIs', { "explores": jsonData});
   }
 
+  /// Applies live attribute changes keyed by explore id, e.g. {"<lot_id>": {"spots_sold": 12}}.
+  /// Returns false where patching is not supported, callers should place the updated explores again.
+  Future<bool> patchPOIs(Map<String, Map<String, dynamic>> patches) async {
+    if (!Platform.isAndroid) {
+      return false;
+    }
+    return await _channel.invokeMethod('patchPOIs', { "patches": patches});
+  }
+
   Future<void>enable(bool enable) async {
     return _channel.invokeMethod('enable', enable);
   }
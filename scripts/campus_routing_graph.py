@@ -0,0 +1,155 @@
+#!/usr/bin/env python3
+"""
+Builds the campus routing graph used by the Android app for offline walking and cycling directions.
+
+Usage: ./scripts/campus_routing_graph.py {OSM_FILE} [{OUTPUT_FILE}]
+{OSM_FILE}    OpenStreetMap XML export of the campus area, e.g. from the Overpass API:
+              https://overpass-api.de/api/map?bbox=-88.2500,40.0850,-88.2050,40.1200
+{OUTPUT_FILE} Default: android/app/src/main/assets/campus_routing.graph
+
+The output format is documented in android/app/src/main/java/edu/illinois/covid/maps/CampusRouter.java
+"""
+
+import math
+import struct
+import sys
+import xml.etree.ElementTree as ElementTree
+
+MAGIC = 0x31475243  # "CRG1"
+VERSION = 1
+
+MODE_WALKING = 1
+MODE_BICYCLING = 2
+
+EARTH_RADIUS = 6371008.8  # meters
+
+WALKING_HIGHWAYS = {
+    'footway', 'pedestrian', 'path', 'steps', 'corridor', 'living_street', 'residential', 'service', 'unclassified',
+    'track', 'cycleway', 'tertiary', 'tertiary_link', 'secondary', 'secondary_link', 'primary', 'primary_link',
+}
+BICYCLING_HIGHWAYS = {
+    'cycleway', 'path', 'living_street', 'residential', 'service', 'unclassified', 'track',
+    'tertiary', 'tertiary_link', 'secondary', 'secondary_link', 'primary', 'primary_link',
+}
+ALLOWED = {'yes', 'designated', 'permissive'}
+
+
+def way_modes(tags):
+    highway = tags.get('highway')
+    if (highway is None) or (tags.get('area') == 'yes') or (tags.get('access') in ('no', 'private')):
+        return 0
+    modes = 0
+    foot = tags.get('foot')
+    if (foot in ALLOWED) or ((highway in WALKING_HIGHWAYS) and (foot != 'no')):
+        modes |= MODE_WALKING
+    bicycle = tags.get('bicycle')
+    if (bicycle in ALLOWED) or ((highway in BICYCLING_HIGHWAYS) and (bicycle not in ('no', 'dismount'))):
+        modes |= MODE_BICYCLING
+    return modes
+
+
+# 1 forward only, -1 backward only, 0 both directions. Walking ignores one way streets.
+def bicycling_direction(tags):
+    if tags.get('oneway:bicycle') == 'no' or tags.get('cycleway') in ('opposite', 'opposite_lane', 'opposite_track'):
+        return 0
+    oneway = tags.get('oneway')
+    if oneway in ('yes', 'true', '1'):
+        return 1
+    if oneway == '-1':
+        return -1
+    return 0
+
+
+def distance(from_coordinates, to_coordinates):
+    latitude1, longitude1 = map(math.radians, from_coordinates)
+    latitude2, longitude2 = map(math.radians, to_coordinates)
+    a = (math.sin((latitude2 - latitude1) / 2) ** 2 +
+         math.cos(latitude1) * math.cos(latitude2) * math.sin((longitude2 - longitude1) / 2) ** 2)
+    return 2 * EARTH_RADIUS * math.asin(math.sqrt(a))
+
+
+def read_osm(path):
+    coordinates = {}
+    ways = []
+    for _, element in ElementTree.iterparse(path):
+        if element.tag == 'node':
+            coordinates[element.get('id')] = (float(element.get('lat')), float(element.get('lon')))
+        elif element.tag == 'way':
+            tags = {tag.get('k'): tag.get('v') for tag in element.iter('tag')}
+            node_ids = [node.get('ref') for node in element.iter('nd')]
+            modes = way_modes(tags)
+            if (modes != 0) and (len(node_ids) > 1):
+                ways.append((node_ids, modes, bicycling_direction(tags)))
+        if element.tag in ('node', 'way', 'relation'):
+            element.clear()
+    return coordinates, ways
+
+
+def build_graph(coordinates, ways):
+    node_indexes = {}
+    nodes = []
+    edges = {}  # (source, target) -> [length, modes]
+
+    def node_index(node_id):
+        index = node_indexes.get(node_id)
+        if index is None:
+            index = node_indexes[node_id] = len(nodes)
+            nodes.append(coordinates[node_id])
+        return index
+
+    def add_edge(source, target, length, modes):
+        edge = edges.get((source, target))
+        if edge is None:
+            edges[(source, target)] = [length, modes]
+        else:
+            edge[0] = min(edge[0], length)
+            edge[1] |= modes
+
+    for node_ids, modes, direction in ways:
+        node_ids = [node_id for node_id in node_ids if node_id in coordinates]
+        for from_id, to_id in zip(node_ids, node_ids[1:]):
+            if from_id == to_id:
+                continue
+            source, target = node_index(from_id), node_index(to_id)
+            length = distance(nodes[source], nodes[target])
+            forward_modes = modes & ~(MODE_BICYCLING if direction == -1 else 0)
+            backward_modes = modes & ~(MODE_BICYCLING if direction == 1 else 0)
+            if forward_modes:
+                add_edge(source, target, length, forward_modes)
+            if backward_modes:
+                add_edge(target, source, length, backward_modes)
+    return nodes, sorted((source, target, length, modes) for (source, target), (length, modes) in edges.items())
+
+
+def write_graph(path, nodes, edges):
+    offsets = [0] * (len(nodes) + 1)
+    for source, _, _, _ in edges:
+        offsets[source + 1] += 1
+    for index in range(len(nodes)):
+        offsets[index + 1] += offsets[index]
+    with open(path, 'wb') as output:
+        output.write(struct.pack('<4i', MAGIC, VERSION, len(nodes), len(edges)))
+        for latitude, longitude in nodes:
+            output.write(struct.pack('<2i', int(round(latitude * 1000000)), int(round(longitude * 1000000))))
+        output.write(struct.pack('<%di' % len(offsets), *offsets))
+        output.write(struct.pack('<%di' % len(edges), *[edge[1] for edge in edges]))
+        output.write(struct.pack('<%df' % len(edges), *[edge[2] for edge in edges]))
+        output.write(struct.pack('<%dB' % len(edges), *[edge[3] for edge in edges]))
+
+
+def main():
+    if len(sys.argv) < 2:
+        print(__doc__)
+        sys.exit(1)
+    output_path = sys.argv[2] if len(sys.argv) > 2 else 'android/app/src/main/assets/campus_routing.graph'
+    coordinates, ways = read_osm(sys.argv[1])
+    nodes, edges = build_graph(coordinates, ways)
+    if not nodes:
+        print('No routable ways found in ' + sys.argv[1])
+        sys.exit(1)
+    write_graph(output_path, nodes, edges)
+    print('Wrote %d nodes and %d edges to %s' % (len(nodes), len(edges), output_path))
+
+
+if __name__ == '__main__':
+    main()